@@ -0,0 +1,55 @@
+package it.unibz.auction;
+
+import it.unibz.auction.engine.AuctionEngine;
+import it.unibz.auction.rmi.RMIAuctionServer;
+
+import java.rmi.registry.Registry;
+
+/**
+ * Avvia nella stessa JVM il server TCP e il server RMI sopra un unico
+ * {@link AuctionEngine}: offerenti TCP e RMI competono sugli stessi lotti.
+ * <p>
+ * Argomenti: {@code --tcp-port=N} (default 5000), {@code --rmi-port=N}
+ * (default 5099), {@code --binding=NOME} (default {@code AuctionService}),
+ * {@code --virtual} oppure {@code --nio}. Articoli, lotti concorrenti e
+ * journal sono quelli del server RMI, configurati dalle proprietà di sistema
+ * {@code auction.*}.
+ */
+public final class AuctionHost {
+
+    private AuctionHost() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int tcpPort = 5000;
+        int rmiPort = 5099;
+        String bindingName = "AuctionService";
+        Server.IoMode mode = Server.IoMode.PLATFORM;
+        for (String arg : args) {
+            if (arg.startsWith("--tcp-port=")) tcpPort = Integer.parseInt(arg.substring("--tcp-port=".length()));
+            else if (arg.startsWith("--rmi-port=")) rmiPort = Integer.parseInt(arg.substring("--rmi-port=".length()));
+            else if (arg.startsWith("--binding=")) bindingName = arg.substring("--binding=".length());
+            else if (arg.equals("--nio")) mode = Server.IoMode.NIO;
+            else if (arg.equals("--virtual")) mode = Server.IoMode.VIRTUAL;
+            else throw new IllegalArgumentException("Argomento sconosciuto: " + arg);
+        }
+
+        AuctionEngine engine = new AuctionEngine(RMIAuctionServer.defaultItems());
+        RMIAuctionServer rmi = new RMIAuctionServer(engine);
+        Server tcp = new Server(tcpPort, mode, Runtime.getRuntime().availableProcessors(),
+                Server.DEFAULT_HIGH_WATER, OutboundQueue.Policy.DISCONNECT, engine);
+
+        Registry registry = RMIAuctionServer.createRegistryWithFallback(rmiPort, 5);
+        registry.rebind(bindingName, rmi);
+        System.out.printf("✅ Registry RMI attivo sulla porta %d. Servizio bindato come '%s'%n",
+                RMIAuctionServer.registryPort(registry), bindingName);
+
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            tcp.stop();
+            rmi.shutdown();
+            engine.shutdown();
+        }));
+        rmi.start(); // avvia il motore condiviso
+        tcp.start(); // accetta connessioni TCP su questo thread
+    }
+}
@@ -0,0 +1,344 @@
+package it.unibz.auction;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Protocollo binario del server TCP, pensato per gli offerenti automatici.
+ * <p>
+ * Si negozia sulla stessa porta del protocollo testuale: il client invia come
+ * primi byte {@link #HELLO} e il server risponde con gli stessi cinque byte,
+ * dopo eventuali righe di testo già spedite (il saluto iniziale, broadcast);
+ * il primo byte non può aprire una riga UTF-8, quindi il client scarta le
+ * righe finché non lo incontra. Da lì in poi, in entrambe le direzioni, ogni
+ * messaggio è un frame
+ * <pre>
+ * u16 lunghezza | u8 opcode | campi interi (i64) | [u8 lunghezza | etichetta] | testo
+ * </pre>
+ * con interi big-endian, lotti identificati da un {@code long} e prezzi in
+ * centesimi. La lunghezza conta opcode e payload; l'etichetta esiste solo per
+ * {@link #INFO} (nome dell'oggetto) e {@link #CHAT} (mittente), il testo
+ * occupa il resto del frame. {@link Frame} legge i campi direttamente dal
+ * buffer di ricezione senza allocare; solo le stringhe richieste vengono
+ * decodificate.
+ */
+final class BinaryProtocol {
+
+    static final byte MAGIC = (byte) 0xAB;
+    static final int VERSION = 1;
+    private static final byte[] HELLO_BYTES = {MAGIC, 'A', 'U', 'B', VERSION};
+    /** apertura della connessione binaria, identica nelle due direzioni */
+    static final ByteBuffer HELLO = ByteBuffer.wrap(HELLO_BYTES).asReadOnlyBuffer();
+
+    // client -> server
+    static final int JOIN = 0x01;          // testo: nickname
+    static final int BID = 0x02;           // lotto, centesimi (lotto 0 = lotto corrente)
+    static final int MSG = 0x03;           // testo
+    static final int INFO_REQUEST = 0x04;
+    static final int QUIT = 0x05;
+    static final int MAXBID = 0x06;        // lotto, centesimi: offerta massima (lotto 0 = lotto corrente)
+
+    // server -> client
+    static final int SYSTEM = 0x41;        // testo
+    static final int INFO = 0x42;          // lotto, prezzo, incremento, etichetta: oggetto, testo: miglior offerente
+    static final int BIDOK = 0x43;         // lotto, prezzo, testo: offerente
+    static final int BIDFAIL = 0x44;       // lotto, minimo richiesto, testo: motivo
+    static final int WIN = 0x45;           // lotto, prezzo, testo: vincitore (vuoto se nessuno)
+    static final int CHAT = 0x46;          // etichetta: mittente, testo
+
+    /** lunghezza massima di un frame, campo lunghezza escluso */
+    static final int MAX_FRAME = 0xFFFF;
+    /** lunghezza massima di un frame inviato da un client */
+    static final int MAX_CLIENT_FRAME = 1 + NioFrontEnd.MAX_LINE;
+
+    private static final int[] LONGS = new int[128];
+    private static final boolean[] LABEL = new boolean[128];
+    private static final boolean[] KNOWN = new boolean[128];
+
+    static {
+        define(JOIN, 0, false);
+        define(BID, 2, false);
+        define(MSG, 0, false);
+        define(INFO_REQUEST, 0, false);
+        define(QUIT, 0, false);
+        define(MAXBID, 2, false);
+        define(SYSTEM, 0, false);
+        define(INFO, 3, true);
+        define(BIDOK, 2, false);
+        define(BIDFAIL, 2, false);
+        define(WIN, 2, false);
+        define(CHAT, 0, true);
+    }
+
+    private static void define(int opcode, int longs, boolean label) {
+        LONGS[opcode] = longs;
+        LABEL[opcode] = label;
+        KNOWN[opcode] = true;
+    }
+
+    private BinaryProtocol() {
+    }
+
+    /** copia dei byte di {@link #HELLO}, per chi scrive su uno stream */
+    static byte[] helloBytes() {
+        return HELLO_BYTES.clone();
+    }
+
+    /**
+     * Verifica l'apertura ricevuta all'inizio della connessione.
+     *
+     * @throws ProtocolException se i byte non corrispondono a {@link #HELLO}
+     */
+    static void checkHello(ByteBuffer in) throws ProtocolException {
+        for (byte expected : HELLO_BYTES) {
+            if (in.get() != expected) {
+                throw new ProtocolException("Apertura binaria non valida");
+            }
+        }
+    }
+
+    /**
+     * Vista di un frame ricevuto. I campi vengono letti su richiesta dal
+     * buffer sorgente, che non va modificato finché il frame è in uso.
+     */
+    static final class Frame {
+        private ByteBuffer in;
+        private int start; // indice dell'opcode
+        private int end;
+        private int labelEnd;
+
+        /**
+         * Riconosce il frame che inizia alla posizione corrente e sposta la
+         * posizione dopo di esso.
+         *
+         * @param maxLength lunghezza massima accettata, campo lunghezza escluso
+         * @return false se il buffer non contiene ancora il frame completo
+         * @throws ProtocolException se il frame è malformato
+         */
+        boolean next(ByteBuffer in, int maxLength) throws ProtocolException {
+            int position = in.position();
+            if (in.limit() - position < 2) {
+                return false;
+            }
+            int length = in.getShort(position) & 0xFFFF;
+            if (length == 0 || length > maxLength) {
+                throw new ProtocolException("Lunghezza del frame non valida: " + length);
+            }
+            if (in.limit() - position - 2 < length) {
+                return false;
+            }
+            int opcode = in.get(position + 2) & 0xFF;
+            if (opcode >= KNOWN.length || !KNOWN[opcode]) {
+                throw new ProtocolException("Opcode sconosciuto: " + opcode);
+            }
+            int fixed = 1 + 8 * LONGS[opcode];
+            int labelEnd = position + 2 + fixed;
+            if (length < fixed + (LABEL[opcode] ? 1 : 0)) {
+                throw new ProtocolException("Frame troppo corto per l'opcode " + opcode);
+            }
+            if (LABEL[opcode]) {
+                labelEnd += 1 + (in.get(labelEnd) & 0xFF);
+                if (labelEnd > position + 2 + length) {
+                    throw new ProtocolException("Etichetta oltre la fine del frame");
+                }
+            }
+            this.in = in;
+            this.start = position + 2;
+            this.end = position + 2 + length;
+            this.labelEnd = labelEnd;
+            in.position(end);
+            return true;
+        }
+
+        int opcode() {
+            return in.get(start) & 0xFF;
+        }
+
+        /** i-esimo campo intero del frame, a partire da 0 */
+        long longAt(int index) {
+            return in.getLong(start + 1 + 8 * index);
+        }
+
+        String label() {
+            int from = start + 1 + 8 * LONGS[opcode()];
+            return decode(from + 1, labelEnd);
+        }
+
+        String text() {
+            return decode(labelEnd, end);
+        }
+
+        /**
+         * Copia i byte UTF-8 del testo in {@code dst}, troncandoli se non ci stanno.
+         *
+         * @return il numero di byte copiati
+         */
+        int copyText(byte[] dst) {
+            int length = Math.min(end - labelEnd, dst.length);
+            in.get(labelEnd, dst, 0, length);
+            return length;
+        }
+
+        private String decode(int from, int to) {
+            if (from == to) {
+                return "";
+            }
+            byte[] bytes = new byte[to - from];
+            in.get(from, bytes);
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+    }
+
+    /**
+     * Scrive frame in un buffer, che viene ingrandito se necessario. Con un
+     * buffer riutilizzato e stringhe già note la codifica non alloca.
+     */
+    static final class Encoder {
+        private ByteBuffer out;
+        private int frameStart;
+
+        Encoder() {
+            this(ByteBuffer.allocate(128));
+        }
+
+        Encoder(ByteBuffer out) {
+            this.out = out;
+        }
+
+        Encoder join(CharSequence nickname) {
+            return begin(JOIN, nickname.length()).text(nickname).end();
+        }
+
+        Encoder bid(long lotId, long cents) {
+            return begin(BID, 0).putLong(lotId).putLong(cents).end();
+        }
+
+        Encoder maxBid(long lotId, long maxCents) {
+            return begin(MAXBID, 0).putLong(lotId).putLong(maxCents).end();
+        }
+
+        Encoder msg(CharSequence text) {
+            return begin(MSG, text.length()).text(text).end();
+        }
+
+        Encoder infoRequest() {
+            return begin(INFO_REQUEST, 0).end();
+        }
+
+        Encoder quit() {
+            return begin(QUIT, 0).end();
+        }
+
+        Encoder system(CharSequence text) {
+            return begin(SYSTEM, text.length()).text(text).end();
+        }
+
+        Encoder info(long lotId, long priceCents, long minIncrementCents, CharSequence item, CharSequence topBidder) {
+            return begin(INFO, item.length() + topBidder.length())
+                    .putLong(lotId).putLong(priceCents).putLong(minIncrementCents)
+                    .label(item).text(topBidder).end();
+        }
+
+        Encoder bidOk(long lotId, long priceCents, CharSequence bidder) {
+            return begin(BIDOK, bidder.length()).putLong(lotId).putLong(priceCents).text(bidder).end();
+        }
+
+        Encoder bidFail(long lotId, long minimumCents, CharSequence reason) {
+            return begin(BIDFAIL, reason.length()).putLong(lotId).putLong(minimumCents).text(reason).end();
+        }
+
+        Encoder win(long lotId, long priceCents, CharSequence winner) {
+            return begin(WIN, winner.length()).putLong(lotId).putLong(priceCents).text(winner).end();
+        }
+
+        Encoder chat(CharSequence sender, CharSequence text) {
+            return begin(CHAT, sender.length() + text.length()).label(sender).text(text).end();
+        }
+
+        /** buffer di lavoro: i frame scritti stanno tra 0 e la posizione corrente */
+        ByteBuffer buffer() {
+            return out;
+        }
+
+        /** copia in sola lettura dei frame scritti, pronta da accodare */
+        ByteBuffer toReadOnlyBuffer() {
+            byte[] bytes = new byte[out.position()];
+            out.get(0, bytes);
+            return ByteBuffer.wrap(bytes).asReadOnlyBuffer();
+        }
+
+        Encoder reset() {
+            out.clear();
+            return this;
+        }
+
+        private Encoder begin(int opcode, int chars) {
+            // caso peggiore: tre byte UTF-8 per char, più lunghezza, opcode, interi ed etichetta
+            ensure(3 + 8 * LONGS[opcode] + 1 + 3 * chars);
+            frameStart = out.position();
+            out.putShort((short) 0).put((byte) opcode);
+            return this;
+        }
+
+        private Encoder end() {
+            int length = out.position() - frameStart - 2;
+            if (length > MAX_FRAME) {
+                out.position(frameStart);
+                throw new IllegalArgumentException("Frame troppo lungo: " + length + " byte");
+            }
+            out.putShort(frameStart, (short) length);
+            return this;
+        }
+
+        private Encoder putLong(long value) {
+            out.putLong(value);
+            return this;
+        }
+
+        private Encoder label(CharSequence text) {
+            int lengthAt = out.position();
+            out.put((byte) 0);
+            text(text);
+            int length = out.position() - lengthAt - 1;
+            if (length > 0xFF) {
+                out.position(frameStart);
+                throw new IllegalArgumentException("Etichetta troppo lunga: " + length + " byte");
+            }
+            out.put(lengthAt, (byte) length);
+            return this;
+        }
+
+        /** UTF-8 scritto carattere per carattere, senza array intermedi */
+        private Encoder text(CharSequence text) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (c < 0x80) {
+                    out.put((byte) c);
+                } else if (c < 0x800) {
+                    out.put((byte) (0xC0 | c >> 6)).put((byte) (0x80 | c & 0x3F));
+                } else if (Character.isHighSurrogate(c) && i + 1 < text.length()
+                        && Character.isLowSurrogate(text.charAt(i + 1))) {
+                    int cp = Character.toCodePoint(c, text.charAt(++i));
+                    out.put((byte) (0xF0 | cp >> 18)).put((byte) (0x80 | cp >> 12 & 0x3F))
+                            .put((byte) (0x80 | cp >> 6 & 0x3F)).put((byte) (0x80 | cp & 0x3F));
+                } else if (Character.isSurrogate(c)) {
+                    out.put((byte) '?'); // surrogato isolato, come String.getBytes
+                } else {
+                    out.put((byte) (0xE0 | c >> 12)).put((byte) (0x80 | c >> 6 & 0x3F)).put((byte) (0x80 | c & 0x3F));
+                }
+            }
+            return this;
+        }
+
+        private void ensure(int bytes) {
+            if (out.remaining() >= bytes) {
+                return;
+            }
+            ByteBuffer bigger = ByteBuffer.allocate(Math.max(out.capacity() * 2, out.position() + bytes));
+            out.flip();
+            bigger.put(out);
+            out = bigger;
+        }
+    }
+}
@@ -1,33 +1,61 @@
 package it.unibz.auction;
 
+import it.unibz.auction.rmi.dto.Money;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
 import java.util.Scanner;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
+/**
+ * Client a riga di comando del server TCP. Con {@code --binary} usa il
+ * {@link BinaryProtocol}: i comandi digitati restano gli stessi e le offerte
+ * vengono rivolte al lotto annunciato dall'ultimo INFO.
+ */
 public class Client {
     private static final AtomicReference<String> currentItem = new AtomicReference<>("N/D");
-    private static final AtomicReference<String> currentPrice = new AtomicReference<>("0.00");
+    private static final AtomicLong currentPriceCents = new AtomicLong();
     private static final AtomicReference<String> currentTopBidder = new AtomicReference<>("Nessuno");
     private static final AtomicReference<String> nickname = new AtomicReference<>("Anonimo");
 
+    // protocollo binario, solo thread di lettura salvo currentLot
+    private static volatile long currentLot;
+    private static final byte[] bidderScratch = new byte[BinaryProtocol.MAX_FRAME];
+    private static byte[] bidderBytes = new byte[0];
+
     public static void main(String[] args) throws Exception {
-        String host = (args.length > 0) ? args[0] : "127.0.0.1";
-        int port = (args.length > 1) ? Integer.parseInt(args[1]) : 5000;
+        boolean binary = Arrays.asList(args).contains("--binary");
+        String[] positional = Arrays.stream(args).filter(a -> !a.startsWith("--")).toArray(String[]::new);
+        String host = (positional.length > 0) ? positional[0] : "127.0.0.1";
+        int port = (positional.length > 1) ? Integer.parseInt(positional[1]) : 5000;
 
         try (Socket socket = new Socket(host, port)) {
-            System.out.println("Connesso al server " + host + ":" + port);
+            System.out.println("Connesso al server " + host + ":" + port + (binary ? " (protocollo binario)" : ""));
 
-            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream()));
-            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream()), true);
+            InputStream input = new BufferedInputStream(socket.getInputStream());
+            OutputStream output = socket.getOutputStream();
+            BufferedReader in = new BufferedReader(new InputStreamReader(input, StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(output, StandardCharsets.UTF_8), true);
+            BinaryProtocol.Encoder encoder = new BinaryProtocol.Encoder(ByteBuffer.allocate(2048));
+            if (binary) {
+                output.write(BinaryProtocol.helloBytes());
+            }
 
             // Thread per la lettura dei messaggi dal server
             Thread reader = new Thread(() -> {
                 try {
-                    String line;
-                    while ((line = in.readLine()) != null) {
-                        processServerMessage(line);
+                    if (binary) {
+                        readFrames(input);
+                    } else {
+                        String line;
+                        while ((line = in.readLine()) != null) {
+                            processServerMessage(line);
+                        }
                     }
                 } catch (IOException ignored) {}
                 System.out.println("Connessione chiusa dal server.");
@@ -55,7 +83,8 @@ public class Client {
 
                     // --- /info locale ---
                     if (cmd.equalsIgnoreCase("/info")) {
-                        out.println("INFO_REQUEST");
+                        if (binary) send(output, encoder.reset().infoRequest());
+                        else out.println("INFO_REQUEST");
                         continue;
                     }
 
@@ -65,7 +94,8 @@ public class Client {
                         if (parts.length > 1) nickname.set(parts[1]);
                     }
 
-                    out.println(cmd);
+                    if (binary) sendCommand(output, encoder.reset(), cmd);
+                    else out.println(cmd);
                     if ("QUIT".equalsIgnoreCase(cmd)) {
                         scheduler.shutdownNow(); // ferma l’aggiornamento automatico
                         break;
@@ -75,6 +105,109 @@ public class Client {
         }
     }
 
+    /**
+     * Traduce un comando digitato nel frame corrispondente.
+     */
+    private static void sendCommand(OutputStream output, BinaryProtocol.Encoder encoder, String cmd) throws IOException {
+        String upper = cmd.toUpperCase();
+        if (upper.startsWith("JOIN ")) {
+            encoder.join(cmd.substring(5).trim());
+        } else if (upper.startsWith("MSG ")) {
+            encoder.msg(cmd.substring(4));
+        } else if (upper.startsWith("BID ")) {
+            try {
+                encoder.bid(currentLot, Money.parse(cmd.substring(4)));
+            } catch (NumberFormatException e) {
+                System.out.println("Valore non numerico");
+                return;
+            }
+        } else if (upper.startsWith("MAXBID ")) {
+            try {
+                encoder.maxBid(currentLot, Money.parse(cmd.substring(7)));
+            } catch (NumberFormatException e) {
+                System.out.println("Valore non numerico");
+                return;
+            }
+        } else if (upper.equals("QUIT")) {
+            encoder.quit();
+        } else {
+            System.out.println("Comando sconosciuto");
+            return;
+        }
+        send(output, encoder);
+    }
+
+    private static void send(OutputStream output, BinaryProtocol.Encoder encoder) throws IOException {
+        ByteBuffer frames = encoder.buffer();
+        output.write(frames.array(), 0, frames.position());
+        output.flush();
+    }
+
+    /**
+     * Scarta le righe di testo arrivate prima della risposta all'apertura
+     * binaria, poi legge i frame in un buffer riutilizzato.
+     */
+    private static void readFrames(InputStream input) throws IOException {
+        DataInputStream data = new DataInputStream(input);
+        int b;
+        while ((b = data.read()) != (BinaryProtocol.MAGIC & 0xFF)) {
+            if (b < 0) return;
+            while (b != '\n') {
+                b = data.read();
+                if (b < 0) return;
+            }
+        }
+        byte[] bytes = new byte[2 + BinaryProtocol.MAX_FRAME];
+        bytes[0] = BinaryProtocol.MAGIC;
+        int helloLength = BinaryProtocol.HELLO.capacity();
+        data.readFully(bytes, 1, helloLength - 1);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        buffer.limit(helloLength);
+        BinaryProtocol.checkHello(buffer);
+
+        BinaryProtocol.Frame frame = new BinaryProtocol.Frame();
+        while (true) {
+            int length = data.readUnsignedShort();
+            data.readFully(bytes, 2, length);
+            buffer.clear().limit(2 + length);
+            buffer.putShort(0, (short) length);
+            frame.next(buffer, BinaryProtocol.MAX_FRAME);
+            processFrame(frame);
+        }
+    }
+
+    /**
+     * Come {@link #processServerMessage(String)} per i frame binari: prezzi e
+     * lotti si leggono come interi, il nome dell'oggetto si decodifica solo
+     * quando cambia il lotto e il miglior offerente solo quando cambia.
+     */
+    private static void processFrame(BinaryProtocol.Frame frame) {
+        switch (frame.opcode()) {
+            case BinaryProtocol.INFO -> {
+                long lot = frame.longAt(0);
+                if (lot != currentLot) {
+                    currentLot = lot;
+                    currentItem.set(frame.label());
+                }
+                currentPriceCents.set(frame.longAt(1));
+                int length = frame.copyText(bidderScratch);
+                if (!Arrays.equals(bidderScratch, 0, length, bidderBytes, 0, bidderBytes.length)) {
+                    bidderBytes = Arrays.copyOf(bidderScratch, length);
+                    currentTopBidder.set(length == 0 ? "Nessuno" : new String(bidderBytes, StandardCharsets.UTF_8));
+                }
+                printStatusBar();
+            }
+            case BinaryProtocol.SYSTEM -> System.out.println("SYSTEM " + frame.text());
+            case BinaryProtocol.BIDOK ->
+                    System.out.println("BIDOK " + Money.format(frame.longAt(1)) + "|" + frame.text());
+            case BinaryProtocol.BIDFAIL -> System.out.println("BIDFAIL " + frame.text());
+            case BinaryProtocol.WIN -> System.out.println("WIN " + currentItem.get() + "|"
+                    + Money.format(frame.longAt(1)) + "|" + (frame.text().isEmpty() ? "Nessuno" : frame.text()));
+            case BinaryProtocol.CHAT -> System.out.println(frame.label() + ": " + frame.text());
+            default -> System.out.println("Frame inatteso: " + frame.opcode());
+        }
+    }
+
     /**
      * Gestisce i messaggi provenienti dal server e aggiorna la barra di stato
      */
@@ -86,7 +219,9 @@ public class Client {
 
             if (parts.length >= 3) {
                 currentItem.set(parts[0].trim());
-                currentPrice.set(parts[1].trim());
+                try {
+                    currentPriceCents.set(Money.parse(parts[1]));
+                } catch (NumberFormatException ignored) {}
                 if (parts.length >= 4)
                     currentTopBidder.set(parts[3].trim());
                 else
@@ -108,6 +243,7 @@ public class Client {
         System.out.println("JOIN <nick>       → Entra nell'asta con un nickname unico");
         System.out.println("MSG <testo>       → Invia un messaggio nella chat pubblica");
         System.out.println("BID <valore>      → Fai un'offerta (>= prezzo attuale + incremento)");
+        System.out.println("MAXBID <valore>   → Offerta massima: il server rilancia per te fino a <valore>");
         System.out.println("/info             → Mostra le informazioni sull'asta e la porta attiva");
         System.out.println("/help             → Mostra questa guida dei comandi");
         System.out.println("QUIT              → Esci dal server e chiudi il client");
@@ -121,7 +257,7 @@ public class Client {
         System.out.println("──────────────────────────────");
         System.out.printf("Utente: %s\n", nickname.get());
         System.out.printf("Oggetto in asta: %s\n", currentItem.get());
-        System.out.printf("Prezzo attuale: %s\n", currentPrice.get());
+        System.out.printf("Prezzo attuale: %s\n", Money.format(currentPriceCents.get()));
         System.out.printf("Miglior offerente: %s\n", currentTopBidder.get());
         System.out.println("──────────────────────────────");
     }
@@ -0,0 +1,372 @@
+package it.unibz.auction;
+
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.ClosedSelectorException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Front end non bloccante del server TCP.
+ * <p>
+ * Un thread accetta le connessioni e le distribuisce a rotazione tra un numero
+ * fisso di cicli di I/O, ognuno con il proprio {@link Selector}: le connessioni
+ * inattive non occupano thread né stack. Ogni ciclo legge in un buffer di
+ * appoggio condiviso; una connessione alloca un buffer proprio solo per
+ * conservare una riga o un frame ricevuti a metà. Il protocollo (testo o
+ * {@link BinaryProtocol}) si riconosce dal primo byte ricevuto. I frame in uscita vengono accodati
+ * sulla {@link OutboundQueue} della connessione e scritti soltanto dal ciclo di
+ * I/O che la possiede: chi accoda da un altro thread (ad esempio un broadcast
+ * sotto il lock dell'asta) al più risveglia il selettore, una volta per giro.
+ * Se il socket non accetta tutto, {@code OP_WRITE} resta attivo finché la coda
+ * non si svuota.
+ */
+final class NioFrontEnd {
+
+    /** lunghezza massima di una riga del protocollo, terminatore escluso */
+    static final int MAX_LINE = 1024;
+
+    /** spazio per un frame binario incompleto, campo lunghezza compreso */
+    private static final int MAX_PARTIAL = 2 + BinaryProtocol.MAX_CLIENT_FRAME;
+
+    private static final int UNKNOWN = 0;
+    private static final int TEXT = 1;
+    private static final int BINARY = 2;
+
+    private final Server server;
+    private final ServerSocketChannel acceptor;
+    private final IoLoop[] loops;
+
+    NioFrontEnd(Server server, ServerSocketChannel acceptor, int ioThreads) throws IOException {
+        this.server = server;
+        this.acceptor = acceptor;
+        this.loops = new IoLoop[ioThreads];
+        for (int i = 0; i < ioThreads; i++) {
+            loops[i] = new IoLoop("auction-nio-" + i);
+        }
+    }
+
+    /**
+     * Avvia i cicli di I/O e accetta connessioni sul thread chiamante fino alla
+     * chiusura del canale di ascolto.
+     */
+    void run() throws IOException {
+        for (IoLoop loop : loops) {
+            loop.start();
+        }
+        acceptor.configureBlocking(true);
+        int next = 0;
+        while (acceptor.isOpen()) {
+            SocketChannel channel = acceptor.accept();
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            loops[next].register(channel);
+            next = (next + 1) % loops.length;
+        }
+    }
+
+    private final class IoLoop extends Thread {
+        private final Selector selector;
+        private final Queue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final Queue<NioConnection> writeReady = new ConcurrentLinkedQueue<>();
+        private final AtomicBoolean wakeupPending = new AtomicBoolean();
+        private final ByteBuffer scratch = ByteBuffer.allocateDirect(16 * 1024);
+
+        IoLoop(String name) throws IOException {
+            super(name);
+            setDaemon(true);
+            this.selector = Selector.open();
+        }
+
+        void register(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        /**
+         * Chiede lo svuotamento della coda di una connessione di questo ciclo.
+         */
+        void schedule(NioConnection connection) {
+            writeReady.add(connection);
+            if (Thread.currentThread() != this && wakeupPending.compareAndSet(false, true)) {
+                selector.wakeup();
+            }
+        }
+
+        @Override
+        public void run() {
+            try {
+                while (selector.isOpen()) {
+                    // azzerato prima di svuotare writeReady: chi accoda dopo risveglia la select
+                    wakeupPending.set(false);
+                    NioConnection ready;
+                    while ((ready = writeReady.poll()) != null) {
+                        ready.flushOutbound();
+                    }
+                    selector.select();
+                    SocketChannel channel;
+                    while ((channel = pending.poll()) != null) {
+                        accept(channel);
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        NioConnection connection = (NioConnection) key.attachment();
+                        if (!key.isValid()) {
+                            connection.terminate();
+                            continue;
+                        }
+                        if (key.isWritable()) {
+                            connection.flushOutbound();
+                        }
+                        if (key.isValid() && key.isReadable()) {
+                            connection.onReadable(scratch);
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException | ClosedSelectorException ex) {
+                System.err.println("Ciclo di I/O terminato: " + ex.getMessage());
+            }
+        }
+
+        private void accept(SocketChannel channel) {
+            try {
+                SelectionKey key = channel.register(selector, SelectionKey.OP_READ);
+                NioConnection connection = new NioConnection(channel, key, this, server.newOutboundQueue());
+                key.attach(connection);
+                connection.attach(server.connect(connection));
+            } catch (ClosedChannelException ex) {
+                // il client ha chiuso prima della registrazione
+            }
+        }
+    }
+
+    /**
+     * Stato di una connessione non bloccante: riga in lettura e coda di scrittura.
+     * Letture, scritture e chiusura avvengono sul thread del ciclo di I/O.
+     */
+    private static final class NioConnection implements Server.Connection {
+        private final SocketChannel channel;
+        private final SelectionKey key;
+        private final IoLoop loop;
+        private final OutboundQueue outbound;
+        private Server.ClientHandler handler;
+
+        // solo thread del ciclo di I/O
+        private int protocol = UNKNOWN;
+        private BinaryProtocol.Frame frame;
+        private ByteBuffer partial;
+        private boolean writeArmed;
+
+        private volatile boolean closing;
+        private volatile boolean closed;
+        private volatile boolean overflowed;
+
+        NioConnection(SocketChannel channel, SelectionKey key, IoLoop loop, OutboundQueue outbound) {
+            this.channel = channel;
+            this.key = key;
+            this.loop = loop;
+            this.outbound = outbound;
+        }
+
+        void attach(Server.ClientHandler handler) {
+            this.handler = handler;
+        }
+
+        void onReadable(ByteBuffer scratch) {
+            if (closing) {
+                return;
+            }
+            scratch.clear();
+            int read;
+            try {
+                read = channel.read(scratch);
+            } catch (IOException ex) {
+                read = -1;
+            }
+            if (read < 0) {
+                terminate();
+                return;
+            }
+            scratch.flip();
+            try {
+                // completa il frammento in sospeso con quanto entra, poi prosegue sul resto
+                while (partial != null && scratch.hasRemaining()) {
+                    int n = Math.min(partial.remaining(), scratch.remaining());
+                    partial.put(partial.position(), scratch, scratch.position(), n);
+                    partial.position(partial.position() + n);
+                    scratch.position(scratch.position() + n);
+                    partial.flip();
+                    dispatch(partial);
+                    if (closing || closed) {
+                        return;
+                    }
+                    if (!partial.hasRemaining()) {
+                        partial = null;
+                    } else if (tooLong(partial.remaining())) {
+                        tooLong();
+                        return;
+                    } else {
+                        partial.compact();
+                    }
+                }
+                if (partial == null && scratch.hasRemaining()) {
+                    dispatch(scratch);
+                    if (closing || closed || !scratch.hasRemaining()) {
+                        return;
+                    }
+                    if (tooLong(scratch.remaining())) {
+                        tooLong();
+                        return;
+                    }
+                    partial = ByteBuffer.allocate(MAX_PARTIAL);
+                    partial.put(scratch);
+                }
+            } catch (ProtocolException ex) {
+                handler.system(ex.getMessage());
+                close();
+            }
+        }
+
+        /** true se un frammento incompleto di questa lunghezza supera i limiti del protocollo */
+        private boolean tooLong(int pending) {
+            return protocol == BINARY ? pending >= MAX_PARTIAL : pending > MAX_LINE;
+        }
+
+        /**
+         * Riconosce il protocollo al primo byte e consuma i messaggi completi
+         * del buffer, lasciando la posizione sull'inizio di quello incompleto.
+         */
+        private void dispatch(ByteBuffer input) throws ProtocolException {
+            if (protocol == UNKNOWN) {
+                if (input.get(input.position()) != BinaryProtocol.MAGIC) {
+                    protocol = TEXT;
+                } else if (input.remaining() < BinaryProtocol.HELLO.capacity()) {
+                    return;
+                } else {
+                    BinaryProtocol.checkHello(input);
+                    protocol = BINARY;
+                    frame = new BinaryProtocol.Frame();
+                    handler.upgrade();
+                }
+            }
+            if (protocol == BINARY) {
+                while (!closing && !closed && frame.next(input, BinaryProtocol.MAX_CLIENT_FRAME)) {
+                    handler.handle(frame);
+                }
+            } else {
+                dispatchLines(input);
+            }
+        }
+
+        /**
+         * Consuma le righe complete del buffer, lasciando la posizione sull'inizio della riga incompleta.
+         */
+        private void dispatchLines(ByteBuffer input) {
+            int start = input.position();
+            for (int i = start; i < input.limit() && !closing && !closed; i++) {
+                if (input.get(i) != '\n') {
+                    continue;
+                }
+                int end = i > start && input.get(i - 1) == '\r' ? i - 1 : i;
+                byte[] bytes = new byte[end - start];
+                input.get(start, bytes);
+                start = i + 1;
+                input.position(start);
+                handler.handle(new String(bytes, StandardCharsets.UTF_8).trim());
+            }
+        }
+
+        private void tooLong() {
+            handler.system(protocol == BINARY ? "Frame troppo lungo" : "Riga troppo lunga");
+            close();
+        }
+
+        @Override
+        public void send(ByteBuffer frame, OutboundQueue.Lane lane) {
+            if (closing || closed) {
+                return;
+            }
+            switch (outbound.offer(frame, lane)) {
+                case SCHEDULE -> loop.schedule(this);
+                case OVERFLOW -> {
+                    overflowed = true;
+                    loop.schedule(this);
+                }
+                default -> {
+                }
+            }
+        }
+
+        /**
+         * Scrive quanto il socket accetta senza bloccare; se resta qualcosa
+         * attende {@code OP_WRITE}, altrimenti chiude lo svuotamento (e la
+         * connessione, se richiesto).
+         */
+        void flushOutbound() {
+            if (closed) {
+                return;
+            }
+            if (overflowed) {
+                terminate(); // client troppo lento: i frame accodati si perdono
+                return;
+            }
+            try {
+                do {
+                    ByteBuffer head;
+                    while ((head = outbound.peek()) != null) {
+                        int written = channel.write(head);
+                        outbound.written(head, written);
+                        if (head.hasRemaining()) {
+                            key.interestOps(closing ? SelectionKey.OP_WRITE : SelectionKey.OP_READ | SelectionKey.OP_WRITE);
+                            writeArmed = true;
+                            return;
+                        }
+                    }
+                } while (!outbound.finishDrain());
+                if (closing) {
+                    terminate();
+                } else if (writeArmed) {
+                    key.interestOps(SelectionKey.OP_READ);
+                    writeArmed = false;
+                }
+            } catch (IOException | CancelledKeyException ex) {
+                terminate();
+            }
+        }
+
+        /**
+         * Chiude dopo aver consegnato le risposte già accodate (ad esempio il
+         * saluto di QUIT); nel frattempo non legge altri comandi.
+         */
+        @Override
+        public void close() {
+            closing = true;
+            loop.schedule(this);
+        }
+
+        private void terminate() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            outbound.clear();
+            key.cancel();
+            try {
+                channel.close();
+            } catch (IOException ignored) {
+            }
+            if (handler != null) {
+                handler.disconnected();
+            }
+        }
+    }
+}
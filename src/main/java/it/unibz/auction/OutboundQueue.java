@@ -0,0 +1,171 @@
+package it.unibz.auction;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
+/**
+ * Coda di uscita di una connessione TCP, limitata in byte.
+ * <p>
+ * I frame accodati sono viste ({@link ByteBuffer#duplicate()}) di un buffer in
+ * sola lettura codificato una volta per tutti i destinatari: la coda tiene solo
+ * la posizione di scrittura di questa connessione. Chi accoda non scrive mai sul
+ * socket; la prima offerta su una coda inattiva chiede al chiamante di
+ * programmarne lo svuotamento, che avviene fuori dal lock dell'asta. Oltre la
+ * soglia massima il client viene considerato in ritardo e, secondo la
+ * {@link Policy}, disconnesso oppure privato dei messaggi in eccesso.
+ * <p>
+ * I frame d'asta e i testi viaggiano in corsie separate ({@link Lane}): un
+ * frame iniziato viene sempre completato, poi si scrive prima la corsia
+ * d'asta. I testi oltre metà della soglia vengono scartati senza mai
+ * disconnettere il client.
+ */
+final class OutboundQueue {
+
+    /**
+     * Trattamento di un client che non smaltisce i messaggi.
+     */
+    enum Policy {
+        /** chiude la connessione al superamento della soglia */
+        DISCONNECT,
+        /** scarta i frame che non entrano nella soglia */
+        SKIP
+    }
+
+    /**
+     * Corsia di un frame.
+     */
+    enum Lane {
+        /** stati dei lotti ed esiti delle offerte */
+        AUCTION,
+        /** messaggi di sistema e chat: cedono il passo alla corsia d'asta */
+        TEXT,
+        /** scritto dopo tutto ciò che è già in coda in entrambe le corsie (HELLO, chiusura) */
+        BARRIER
+    }
+
+    /**
+     * Esito di {@link #offer(ByteBuffer, Lane)}.
+     */
+    enum Result {
+        /** accodato, uno svuotamento è già in corso */
+        QUEUED,
+        /** accodato su una coda inattiva: il chiamante deve avviarne lo svuotamento */
+        SCHEDULE,
+        /** frame scartato per {@link Policy#SKIP}, oppure testo oltre metà soglia */
+        SKIPPED,
+        /** soglia superata con {@link Policy#DISCONNECT}: la connessione va chiusa */
+        OVERFLOW
+    }
+
+    private final ArrayDeque<ByteBuffer> frames = new ArrayDeque<>(); // corsia AUCTION
+    private final ArrayDeque<ByteBuffer> text = new ArrayDeque<>();
+    private ByteBuffer current; // frame in scrittura, completato prima di cambiare corsia
+    private final long highWaterBytes;
+    private final Policy policy;
+    private long queuedBytes;
+    private boolean draining;
+    private long skipped;
+
+    OutboundQueue(long highWaterBytes, Policy policy) {
+        if (highWaterBytes <= 0) {
+            throw new IllegalArgumentException("soglia non positiva: " + highWaterBytes);
+        }
+        this.highWaterBytes = highWaterBytes;
+        this.policy = policy;
+    }
+
+    /**
+     * Accoda un frame nella corsia d'asta.
+     */
+    Result offer(ByteBuffer frame) {
+        return offer(frame, Lane.AUCTION);
+    }
+
+    /**
+     * Accoda un frame; su una coda vuota il frame entra anche se supera da solo la soglia.
+     */
+    synchronized Result offer(ByteBuffer frame, Lane lane) {
+        int size = frame.remaining();
+        if (size > 0 && !isEmpty()) {
+            if (lane == Lane.TEXT && queuedBytes + size > highWaterBytes / 2) {
+                skipped++;
+                return Result.SKIPPED;
+            }
+            if (queuedBytes + size > highWaterBytes) {
+                if (policy == Policy.DISCONNECT) {
+                    return Result.OVERFLOW;
+                }
+                skipped++;
+                return Result.SKIPPED;
+            }
+        }
+        switch (lane) {
+            case AUCTION -> frames.add(frame);
+            case TEXT -> text.add(frame);
+            case BARRIER -> {
+                frames.addAll(text);
+                text.clear();
+                frames.add(frame);
+            }
+        }
+        queuedBytes += size;
+        if (draining) {
+            return Result.QUEUED;
+        }
+        draining = true;
+        return Result.SCHEDULE;
+    }
+
+    /**
+     * Primo frame da scrivere, eventualmente già scritto in parte; null se la coda è vuota.
+     */
+    synchronized ByteBuffer peek() {
+        if (current == null) {
+            current = frames.isEmpty() ? text.poll() : frames.poll();
+        }
+        return current;
+    }
+
+    /**
+     * Registra i byte scritti del frame in testa e lo rimuove quando è completo.
+     */
+    synchronized void written(ByteBuffer head, int bytes) {
+        queuedBytes -= bytes;
+        if (!head.hasRemaining() && current == head) {
+            current = null;
+        }
+    }
+
+    /**
+     * Chiude un ciclo di svuotamento.
+     *
+     * @return true se la coda era vuota e lo svuotamento è terminato; false se
+     *         nel frattempo sono arrivati altri frame da scrivere
+     */
+    synchronized boolean finishDrain() {
+        if (!isEmpty()) {
+            return false;
+        }
+        draining = false;
+        return true;
+    }
+
+    synchronized void clear() {
+        current = null;
+        frames.clear();
+        text.clear();
+        queuedBytes = 0;
+    }
+
+    synchronized long queuedBytes() {
+        return queuedBytes;
+    }
+
+    synchronized long skipped() {
+        return skipped;
+    }
+
+    private boolean isEmpty() {
+        return current == null && frames.isEmpty() && text.isEmpty();
+    }
+}
@@ -1,47 +1,165 @@
 package it.unibz.auction;
 
+import it.unibz.auction.engine.AuctionEngine;
+import it.unibz.auction.engine.AuctionListener;
+import it.unibz.auction.engine.Lot;
+import it.unibz.auction.engine.RoundState;
+import it.unibz.auction.engine.TokenBucket;
+import it.unibz.auction.rmi.dto.AuctionItem;
+import it.unibz.auction.rmi.dto.AuctionState;
+import it.unibz.auction.rmi.dto.BidOutcome;
+import it.unibz.auction.rmi.dto.Money;
+import it.unibz.auction.rmi.exceptions.AuctionException;
+
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.*;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Server d'asta su TCP, con protocollo testuale per le persone e protocollo
+ * binario ({@link BinaryProtocol}) per gli offerenti automatici, negoziato
+ * sulla stessa porta dai primi byte della connessione.
+ * <p>
+ * Di default ogni connessione ha un thread di piattaforma dedicato con I/O
+ * bloccante; con {@code --virtual} lo stesso codice gira su un virtual thread
+ * per connessione; con {@code --nio} le connessioni sono servite da un
+ * {@link NioFrontEnd} con un numero fisso di thread di I/O
+ * ({@code --io-threads=N}, default uno per core).
+ * <p>
+ * Regole delle offerte e ciclo dei lotti sono quelli dell'{@link AuctionEngine},
+ * eventualmente condiviso con il server RMI: il server TCP ne traduce le
+ * transizioni nei due protocolli. Il BID testuale è rivolto al primo lotto
+ * attivo, quello binario al lotto indicato; MAXBID registra allo stesso modo
+ * un'offerta massima, su cui il motore rilancia automaticamente.
+ * <p>
+ * Ogni broadcast viene codificato una sola volta per protocollo in un buffer in
+ * sola lettura e accodato a tutte le connessioni; le scritture sui socket avvengono fuori
+ * da {@code broadcastLock}. Un client che accumula più di {@code --high-water=KB}
+ * byte non ancora scritti viene disconnesso, oppure con {@code --skip-slow}
+ * perde i messaggi in eccesso.
+ */
+public class Server implements AuctionListener {
+    /**
+     * Modalità di esecuzione delle connessioni.
+     */
+    enum IoMode { PLATFORM, VIRTUAL, NIO }
 
-public class Server {
     private final int port;
-    private int activePort; // Porta effettivamente in uso
+    private final IoMode mode;
+    private final int ioThreads;
+    private final long highWaterBytes;
+    private final OutboundQueue.Policy slowClients;
+    private final ExecutorService writers; // svuota le code delle connessioni bloccanti
+    private volatile int activePort; // Porta effettivamente in uso
+    private volatile Closeable listener;
+    private volatile boolean stopped;
     private final Set<ClientHandler> clients = ConcurrentHashMap.newKeySet();
-    private final Queue<AuctionItem> items = new ArrayDeque<>();
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
+    private final AuctionEngine engine;
+    private final boolean ownsEngine;
+
+    // ordina i broadcast: tutte le connessioni ricevono i messaggi nello stesso ordine.
+    // ReentrantLock e non synchronized: un virtual thread che attende il lock
+    // non blocca il proprio carrier thread
+    private final ReentrantLock broadcastLock = new ReentrantLock();
+
+    /** soglia di default della coda di uscita di una connessione */
+    static final long DEFAULT_HIGH_WATER = 256 * 1024;
 
-    private final Object auctionLock = new Object();
-    private AuctionItem currentItem;
-    private double currentPrice;
-    private String topBidder;
+    public Server(int port) throws IOException { this(port, IoMode.PLATFORM, 1, defaultItems()); }
 
-    public Server(int port) { this.port = port; }
+    Server(int port, IoMode mode, int ioThreads, Iterable<AuctionItem> seedItems) throws IOException {
+        this(port, mode, ioThreads, DEFAULT_HIGH_WATER, OutboundQueue.Policy.DISCONNECT, seedItems);
+    }
+
+    /**
+     * Server con un proprio motore configurato dalle proprietà di sistema
+     * ({@code auction.lots.concurrent}, {@code auction.journal.dir}, ...). Gli
+     * articoli passano dal costruttore del motore, così dopo un riavvio quelli
+     * già messi all'asta secondo il journal non vengono riproposti.
+     *
+     * @throws IOException se il journal configurato non può essere aperto
+     */
+    Server(int port, IoMode mode, int ioThreads, long highWaterBytes, OutboundQueue.Policy slowClients,
+           Iterable<AuctionItem> seedItems) throws IOException {
+        this(port, mode, ioThreads, highWaterBytes, slowClients, new AuctionEngine(seedItems), true);
+    }
+
+    /**
+     * Server che condivide il motore con altri front end; {@link #stop()} non lo arresta.
+     */
+    Server(int port, IoMode mode, int ioThreads, long highWaterBytes, OutboundQueue.Policy slowClients,
+           AuctionEngine engine) {
+        this(port, mode, ioThreads, highWaterBytes, slowClients, engine, false);
+    }
+
+    private Server(int port, IoMode mode, int ioThreads, long highWaterBytes, OutboundQueue.Policy slowClients,
+                   AuctionEngine engine, boolean ownsEngine) {
+        this.port = port;
+        this.mode = mode;
+        this.ioThreads = ioThreads;
+        this.highWaterBytes = highWaterBytes;
+        this.slowClients = slowClients;
+        this.writers = switch (mode) {
+            case PLATFORM -> Executors.newCachedThreadPool(Thread.ofPlatform().name("auction-writer-", 0).daemon().factory());
+            case VIRTUAL -> Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("auction-writer-", 0).factory());
+            case NIO -> null; // scrivono i cicli di I/O
+        };
+        this.engine = engine;
+        this.ownsEngine = ownsEngine;
+    }
 
     public static void main(String[] args) throws Exception {
-        int port = (args.length > 0) ? Integer.parseInt(args[0]) : 5000;
-        Server s = new Server(port);
-        s.loadItems(); //
+        int port = 5000;
+        IoMode mode = IoMode.PLATFORM;
+        int ioThreads = Runtime.getRuntime().availableProcessors();
+        long highWater = DEFAULT_HIGH_WATER;
+        OutboundQueue.Policy slowClients = OutboundQueue.Policy.DISCONNECT;
+        for (String arg : args) {
+            if (arg.equals("--nio")) mode = IoMode.NIO;
+            else if (arg.equals("--virtual")) mode = IoMode.VIRTUAL;
+            else if (arg.startsWith("--io-threads=")) ioThreads = Integer.parseInt(arg.substring("--io-threads=".length()));
+            else if (arg.startsWith("--high-water=")) highWater = Long.parseLong(arg.substring("--high-water=".length())) * 1024;
+            else if (arg.equals("--skip-slow")) slowClients = OutboundQueue.Policy.SKIP;
+            else port = Integer.parseInt(arg);
+        }
+        Server s = new Server(port, mode, Math.max(1, ioThreads), highWater, slowClients, defaultItems());
         s.start();
     }
 
-    private void loadItems() {
-        items.add(new AuctionItem("Laptop", "Ultrabook 14\"", 500.00, 10.00));
-        items.add(new AuctionItem("Cuffie", "Over-ear", 50.00, 5.00));
-        // Taggiungi altri
+    static List<AuctionItem> defaultItems() {
+        return List.of(
+                new AuctionItem("Laptop", "Ultrabook 14\"", 50_000L, 1_000L, 120), // ~2 minuti
+                new AuctionItem("Cuffie", "Over-ear", 5_000L, 500L, 120)
+                // Taggiungi altri
+        );
     }
 
-    private void start() throws IOException{
+    /**
+     * Apre la porta, si registra sul motore e lo avvia, poi accetta connessioni
+     * sul thread chiamante fino a {@link #stop()}.
+     */
+    void start() throws IOException{
         int maxRetries = 10; // Prova fino a 10 porte consecutive
         int attempts = 0;
-        ServerSocket serverSocket = null;
+        Closeable listener = null;
 
         while (attempts < maxRetries) {
             try {
-                serverSocket = new ServerSocket(port + attempts);
-                activePort = port + attempts; // salva la porta effettiva
-                System.out.println("✅ Server avviato sulla porta " + activePort);
+                if (mode == IoMode.NIO) {
+                    ServerSocketChannel channel = ServerSocketChannel.open().bind(new InetSocketAddress(port + attempts), 1024);
+                    listener = channel;
+                    activePort = ((InetSocketAddress) channel.getLocalAddress()).getPort(); // salva la porta effettiva
+                } else {
+                    ServerSocket serverSocket = new ServerSocket(port + attempts, 1024);
+                    listener = serverSocket;
+                    activePort = serverSocket.getLocalPort(); // salva la porta effettiva
+                }
+                System.out.println("✅ Server avviato sulla porta " + activePort + " (" + describeMode() + ")");
                 break;
             } catch (IOException e) {
                 System.out.println("⚠️ Porta " + (port + attempts) + " occupata, provo la successiva...");
@@ -49,159 +167,518 @@ public class Server {
             }
         }
 
-        if (serverSocket == null) {
+        if (listener == null) {
             System.err.println("❌ Nessuna porta disponibile nelle prossime " + maxRetries + " porte. Uscita.");
             return;
         }
 
-        startNextRound();
+        engine.addListener(this);
+        engine.start();
 
         try {
-            while (true) {
-                Socket socket = serverSocket.accept();
-                ClientHandler h = new ClientHandler(socket, this);
-                clients.add(h);
-                new Thread(h).start();
+            if (listener instanceof ServerSocketChannel channel) {
+                new NioFrontEnd(this, channel, ioThreads).run();
+            } else {
+                ServerSocket serverSocket = (ServerSocket) listener;
+                Thread.Builder threads = mode == IoMode.VIRTUAL
+                        ? Thread.ofVirtual().name("auction-conn-", 0)
+                        : Thread.ofPlatform().name("auction-conn-", 0);
+                while (true) {
+                    Socket socket = serverSocket.accept();
+                    threads.start(new BlockingConnection(socket));
+                }
             }
         } catch (IOException e) {
-            System.err.println("Errore durante l'accettazione delle connessioni: " + e.getMessage());
+            if (!stopped) System.err.println("Errore durante l'accettazione delle connessioni: " + e.getMessage());
         }
     }
 
+    /**
+     * Smette di accettare connessioni e, se il motore non è condiviso, lo
+     * arresta; le connessioni aperte restano attive.
+     */
+    void stop() {
+        stopped = true;
+        if (ownsEngine) engine.shutdown();
+        Closeable l = listener;
+        if (l != null) {
+            try { l.close(); } catch (IOException ignored) {}
+        }
+    }
 
+    /** porta effettiva, 0 finché il server non è in ascolto */
+    int port() { return activePort; }
 
-    private void startNextRound() {
-        synchronized (auctionLock) {
-            currentItem = items.poll();
-            if (currentItem == null) {
-                broadcast("SYSTEM Fine oggetti. Asta terminata.");
-                scheduler.shutdown();
-                return;
-            }
-            currentPrice = currentItem.startPrice;
-            topBidder = null;
-            broadcast("SYSTEM Nuova asta: " + currentItem.name + " — " + currentItem.desc);
-            sendInfoToAll();
-            scheduler.schedule(this::endRound, 120, TimeUnit.SECONDS); // ~2 minuti
+    int connectionCount() { return clients.size(); }
+
+    private String describeMode() {
+        return switch (mode) {
+            case PLATFORM -> "un thread per connessione";
+            case VIRTUAL -> "un virtual thread per connessione";
+            case NIO -> "NIO, " + ioThreads + " thread di I/O";
+        };
+    }
+
+    /** coda di uscita per una nuova connessione, con la soglia configurata */
+    OutboundQueue newOutboundQueue() {
+        return new OutboundQueue(highWaterBytes, slowClients);
+    }
+
+    /**
+     * Registra una nuova connessione e le invia il saluto iniziale.
+     */
+    ClientHandler connect(Connection connection) {
+        ClientHandler h = new ClientHandler(connection);
+        clients.add(h);
+        h.system("Benvenuto! Inserisci: JOIN <nickname>");
+        return h;
+    }
+
+
+
+    @Override
+    public void lotOpened(Lot lot, RoundState opened, boolean resumed) {
+        String announce = (resumed ? "Asta ripresa: " : "Nuova asta: ") + lot.item().name() + " — " + lot.item().description();
+        broadcastLock.lock();
+        try {
+            broadcast(OutboundQueue.Lane.AUCTION, info(new BinaryProtocol.Encoder().system(announce), opened),
+                    "SYSTEM " + announce, infoLine(opened));
+        } finally {
+            broadcastLock.unlock();
+        }
+    }
+
+    @Override
+    public void bidAccepted(Lot lot, RoundState accepted) {
+        broadcastLock.lock();
+        try {
+            // le offerte vengono notificate senza lock e possono arrivare fuori
+            // ordine: INFO riporta lo stato più recente del lotto
+            RoundState latest = lot.state();
+            broadcast(OutboundQueue.Lane.AUCTION, info(new BinaryProtocol.Encoder().bidOk(lot.id(), accepted.currentPriceCents(), accepted.topBidder()), latest),
+                    "BIDOK " + Money.format(accepted.currentPriceCents()) + "|" + accepted.topBidder(), infoLine(latest));
+        } finally {
+            broadcastLock.unlock();
         }
     }
 
-    private void endRound() {
-        synchronized (auctionLock) {
-            String winner = (topBidder == null) ? "Nessuno" : topBidder;
-            broadcast("WIN " + currentItem.name + "|" + String.format("%.2f", currentPrice) + "|" + winner);
+    @Override
+    public void lotClosed(Lot lot, RoundState closed) {
+        String winner = (closed.topBidder() == null) ? "Nessuno" : closed.topBidder();
+        broadcastLock.lock();
+        try {
+            broadcast(OutboundQueue.Lane.AUCTION, new BinaryProtocol.Encoder().win(lot.id(), closed.currentPriceCents(), closed.topBidder() == null ? "" : closed.topBidder()),
+                    "WIN " + lot.item().name() + "|" + Money.format(closed.currentPriceCents()) + "|" + winner);
+        } finally {
+            broadcastLock.unlock();
         }
-        startNextRound();
+    }
+
+    @Override
+    public void auctionFinished(RoundState idle, AuctionState snapshot) {
+        broadcastSystem("Fine oggetti. Asta terminata.");
+    }
+
+    @Override
+    public Collection<String> participants() {
+        List<String> nicknames = new ArrayList<>();
+        for (ClientHandler c : clients) {
+            String nick = c.nickname;
+            if (nick != null) nicknames.add(nick);
+        }
+        return nicknames;
     }
 
     void sendInfoToAll() {
-        synchronized (auctionLock) {
-            String info = String.format("INFO %s|%.2f|%.2f",
-                    currentItem.name, currentPrice, currentItem.minInc);
-            broadcast(info);
+        broadcastLock.lock();
+        try {
+            for (Lot lot : engine.activeLots()) {
+                RoundState state = lot.state();
+                broadcast(OutboundQueue.Lane.AUCTION, info(new BinaryProtocol.Encoder(), state), infoLine(state));
+            }
+        } finally {
+            broadcastLock.unlock();
         }
     }
 
-    void broadcast(String line) {
-        for (ClientHandler c : clients) c.send(line);
+    /** riga INFO di un lotto */
+    private static String infoLine(RoundState state) {
+        return String.format("INFO %s|%s|%s",
+                state.item().name(), Money.format(state.currentPriceCents()), Money.format(state.item().minIncrementCents()));
     }
 
-    boolean registerBid(String bidder, double value, ClientHandler src) {
-        synchronized (auctionLock) {
-            double min = currentPrice + currentItem.minInc;
-            if (value >= min) {
-                currentPrice = value;
-                topBidder = bidder;
-                broadcast("BIDOK " + String.format("%.2f", currentPrice) + "|" + topBidder);
-                sendInfoToAll();
-                return true;
-            } else {
-                src.send("BIDFAIL Offerta minima " + String.format("%.2f", min));
+    /** aggiunge il frame INFO di un lotto */
+    private static BinaryProtocol.Encoder info(BinaryProtocol.Encoder binary, RoundState state) {
+        return binary.info(state.lotId(), state.currentPriceCents(), state.item().minIncrementCents(), state.item().name(),
+                state.topBidder() == null ? "" : state.topBidder());
+    }
+
+    /**
+     * Codifica il messaggio una volta sola per protocollo e lo accoda a ogni
+     * connessione come un'unica scrittura; nessuna scrittura sui socket avviene
+     * nel thread chiamante.
+     *
+     * @param lane   corsia della coda di uscita: i testi cedono il passo all'asta
+     * @param binary i frame per i client binari
+     * @param lines  le stesse informazioni come righe di testo
+     */
+    void broadcast(OutboundQueue.Lane lane, BinaryProtocol.Encoder binary, String... lines) {
+        ByteBuffer text = encode(lines);
+        ByteBuffer frames = binary.toReadOnlyBuffer();
+        for (ClientHandler c : clients) c.deliver(lane, text, frames);
+    }
+
+    void broadcastSystem(String message) {
+        broadcastLock.lock();
+        try {
+            broadcast(OutboundQueue.Lane.TEXT, new BinaryProtocol.Encoder().system(message), "SYSTEM " + message);
+        } finally {
+            broadcastLock.unlock();
+        }
+    }
+
+    /** righe terminate da newline in un buffer UTF-8 in sola lettura */
+    static ByteBuffer encode(String... lines) {
+        StringBuilder sb = new StringBuilder();
+        for (String line : lines) sb.append(line).append('\n');
+        return ByteBuffer.wrap(sb.toString().getBytes(StandardCharsets.UTF_8)).asReadOnlyBuffer();
+    }
+
+    /**
+     * Passa l'offerta al motore; la conferma arriva a tutti tramite {@link #bidAccepted}.
+     *
+     * @param lotId lotto a cui è rivolta l'offerta, 0 per il primo lotto attivo
+     * @param proxy true per un'offerta massima nascosta, su cui il motore rilancia automaticamente
+     */
+    boolean registerBid(String bidder, long lotId, long value, boolean proxy, ClientHandler src) {
+        try {
+            engine.admission().throttle(src.bidLimit);
+        } catch (AuctionException ex) {
+            src.bidFail(lotId, 0, ex.getMessage());
+            return false;
+        }
+        if (lotId == 0) {
+            Lot featured = engine.featuredLot();
+            if (featured == null) {
+                src.bidFail(0, 0, "Nessuna asta in corso");
                 return false;
             }
+            lotId = featured.id();
+        }
+        try {
+            Lot.Decision decision = proxy ? engine.proxyBid(bidder, lotId, value) : engine.bid(bidder, lotId, value);
+            BidOutcome outcome = decision.outcome();
+            if (!outcome.accepted()) {
+                long minimum = decision.accepted() != null ? decision.accepted().minimumRequired() : outcome.minimumRequiredCents();
+                if (decision.accepted() != null) {
+                    // superata da un massimo nascosto: il rilancio è già stato notificato a tutti
+                    src.bidFail(lotId, minimum, outcome.message() + " " + Money.format(minimum));
+                } else if (value < minimum) {
+                    src.bidFail(lotId, minimum, "Offerta minima " + Money.format(minimum));
+                } else {
+                    // il miglior offerente non ha superato il proprio massimo
+                    src.bidFail(lotId, minimum, outcome.message());
+                }
+            } else if (decision.accepted() == null) {
+                src.system(outcome.message()); // massimo alzato dal miglior offerente, prezzo invariato
+            }
+            return outcome.accepted();
+        } catch (AuctionException ex) {
+            src.bidFail(lotId, 0, ex.getMessage());
+            return false;
         }
     }
 
     void remove(ClientHandler h, String nickname) {
         clients.remove(h);
-        if (nickname != null) broadcast("SYSTEM " + nickname + " ha lasciato l'asta");
+        if (nickname != null) broadcastSystem(nickname + " ha lasciato l'asta");
     }
 
-    static class AuctionItem {
-        final String name, desc;
-        final double startPrice, minInc;
-        AuctionItem(String n, String d, double s, double m){ name=n; desc=d; startPrice=s; minInc=m; }
+    /**
+     * Trasporto di una connessione.
+     */
+    interface Connection {
+        /**
+         * Accoda un frame già codificato (righe terminate da newline); il
+         * buffer è una vista propria della connessione su dati condivisi in
+         * sola lettura e va scritto senza bloccare il chiamante.
+         */
+        void send(ByteBuffer frame, OutboundQueue.Lane lane);
+
+        /** chiude dopo aver consegnato i frame già accodati */
+        void close();
     }
 
-    class ClientHandler implements Runnable {
+    /**
+     * Connessione con I/O bloccante: il thread dedicato legge i comandi, la coda
+     * di uscita viene svuotata da un writer di {@code writers}.
+     */
+    class BlockingConnection implements Connection, Runnable {
+        private static final int CHUNK = 4096;
+
         private final Socket socket;
-        private final Server server;
-        private PrintWriter out;
-        private BufferedReader in;
-        private String nickname;
+        private final OutboundQueue outbound = newOutboundQueue();
+        private volatile boolean closing;
 
-        ClientHandler(Socket s, Server srv) { this.socket = s; this.server = srv; }
+        BlockingConnection(Socket socket) { this.socket = socket; }
 
         public void run() {
+            ClientHandler h = null;
             try (Socket s = socket) {
-                out = new PrintWriter(new OutputStreamWriter(s.getOutputStream()), true);
-                in  = new BufferedReader(new InputStreamReader(s.getInputStream()));
-                out.println("SYSTEM Benvenuto! Inserisci: JOIN <nickname>");
-                String line;
-                while ((line = in.readLine()) != null) {
-                    handle(line.trim());
+                BufferedInputStream in = new BufferedInputStream(s.getInputStream());
+                h = connect(this);
+                in.mark(1);
+                int first = in.read();
+                if (first < 0) return;
+                in.reset();
+                try {
+                    if (first == (BinaryProtocol.MAGIC & 0xFF)) readFrames(in, h);
+                    else readLines(in, h);
+                } catch (ProtocolException e) {
+                    h.system(e.getMessage());
+                    close();
+                    in.transferTo(OutputStream.nullOutputStream()); // fino alla chiusura da parte del writer
                 }
             } catch (IOException ignored) {
             } finally {
-                server.remove(this, nickname);
+                if (h != null) h.disconnected();
+            }
+        }
+
+        private void readLines(InputStream in, ClientHandler h) throws IOException {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                // dopo QUIT il socket lo chiude il writer, una volta consegnato il saluto
+                if (!closing) h.handle(line.trim());
+            }
+        }
+
+        /**
+         * Legge i frame binari in un unico buffer riutilizzato.
+         */
+        private void readFrames(InputStream in, ClientHandler h) throws IOException {
+            DataInputStream data = new DataInputStream(in);
+            byte[] bytes = new byte[2 + BinaryProtocol.MAX_CLIENT_FRAME];
+            data.readFully(bytes, 0, BinaryProtocol.HELLO.capacity());
+            ByteBuffer buffer = ByteBuffer.wrap(bytes);
+            BinaryProtocol.checkHello(buffer);
+            h.upgrade();
+            BinaryProtocol.Frame frame = new BinaryProtocol.Frame();
+            while (true) {
+                int length = data.readUnsignedShort();
+                if (length == 0 || length > BinaryProtocol.MAX_CLIENT_FRAME) {
+                    throw new ProtocolException("Lunghezza del frame non valida: " + length);
+                }
+                data.readFully(bytes, 2, length);
+                buffer.clear().limit(2 + length);
+                buffer.putShort(0, (short) length);
+                frame.next(buffer, BinaryProtocol.MAX_CLIENT_FRAME);
+                if (!closing) h.handle(frame);
+            }
+        }
+
+        public void send(ByteBuffer frame, OutboundQueue.Lane lane) {
+            switch (outbound.offer(frame, lane)) {
+                case SCHEDULE -> writers.execute(this::drain);
+                case OVERFLOW -> closeNow(); // il thread di lettura esce e notifica l'uscita
+                default -> { }
+            }
+        }
+
+        /**
+         * Scrive la coda a blocchi, unendo i frame piccoli in un'unica scrittura,
+         * finché non resta vuota.
+         */
+        private void drain() {
+            byte[] chunk = new byte[CHUNK];
+            try {
+                OutputStream out = socket.getOutputStream();
+                do {
+                    int used = 0;
+                    ByteBuffer head;
+                    while ((head = outbound.peek()) != null) {
+                        int n = Math.min(head.remaining(), CHUNK - used);
+                        head.get(chunk, used, n);
+                        used += n;
+                        outbound.written(head, n);
+                        if (used == CHUNK) {
+                            out.write(chunk, 0, used);
+                            used = 0;
+                        }
+                    }
+                    if (used > 0) out.write(chunk, 0, used);
+                } while (!outbound.finishDrain());
+                if (closing) closeNow();
+            } catch (IOException e) {
+                closeNow();
+            }
+        }
+
+        public void close() {
+            closing = true;
+            // un frame vuoto fa passare la chiusura dal writer, dopo quelli già accodati
+            send(ByteBuffer.allocate(0), OutboundQueue.Lane.BARRIER);
+        }
+
+        private void closeNow() {
+            outbound.clear();
+            try { socket.close(); } catch (IOException ignored) {}
+        }
+    }
+
+    /**
+     * Protocollo di una connessione, indipendente dal trasporto. Parte in
+     * modalità testo e passa al binario con {@link #upgrade()}.
+     */
+    class ClientHandler {
+        private static final int MAX_NICK = 32;
+
+        private final Connection connection;
+        private final Server server = Server.this;
+        private volatile String nickname;
+        private volatile boolean binary;
+        private final TokenBucket chatLimit = engine.chat().newSenderLimit();
+        private final TokenBucket bidLimit = engine.admission().newSenderLimit();
+
+        ClientHandler(Connection connection) { this.connection = connection; }
+
+        void disconnected() {
+            server.remove(this, nickname);
+        }
+
+        /**
+         * Passa al protocollo binario: da qui in poi la connessione riceve solo frame.
+         */
+        void upgrade() {
+            // il monitor ordina il cambio rispetto a deliver(): nessuna riga di testo dopo HELLO
+            synchronized (this) {
+                binary = true;
+                connection.send(BinaryProtocol.HELLO.duplicate(), OutboundQueue.Lane.BARRIER);
+            }
+            system("Benvenuto! Invia JOIN <nickname>");
+        }
+
+        /** accoda la resa del broadcast adatta al protocollo della connessione */
+        void deliver(OutboundQueue.Lane lane, ByteBuffer text, ByteBuffer frames) {
+            synchronized (this) {
+                connection.send((binary ? frames : text).duplicate(), lane);
             }
         }
 
         void handle(String line) {
             if (line.isEmpty()) return;
             if (line.startsWith("JOIN ")) {
-                String nick = line.substring(5).trim();
-                if (nick.isEmpty() || nick.contains("|")) { out.println("SYSTEM Nick non valido"); return; }
-                // verifica unicità
-                boolean exists = clients.stream().anyMatch(c -> c != this && nick.equals(c.nickname));
-                if (exists) { out.println("SYSTEM Nick in uso"); return; }
-                this.nickname = nick;
-                out.println("SYSTEM Ciao " + nickname);
-                sendInfoToAll();
-                broadcast("SYSTEM " + nickname + " è entrato");
+                join(line.substring(5).trim());
             } else if ("QUIT".equals(line)) {
-                send("SYSTEM Arrivederci");
-                try { socket.close(); } catch (IOException ignored) {}
+                quit();
             } else if (line.startsWith("MSG ")) {
-                if (nickname == null) { out.println("SYSTEM Fai prima JOIN"); return; }
-                broadcast(nickname + ": " + line.substring(4));
+                chat(line.substring(4));
             } else if (line.startsWith("BID ")) {
-                if (nickname == null) { out.println("SYSTEM Fai prima JOIN"); return; }
+                if (nickname == null) { system("Fai prima JOIN"); return; }
                 try {
-                    double val = Double.parseDouble(line.substring(4).trim());
-                    registerBid(nickname, val, this);
-                } catch (NumberFormatException e) { out.println("BIDFAIL Valore non numerico"); }
+                    long val = Money.parse(line.substring(4));
+                    registerBid(nickname, 0, val, false, this);
+                } catch (NumberFormatException e) { bidFail(0, 0, "Valore non numerico"); }
+            } else if (line.startsWith("MAXBID ")) {
+                if (nickname == null) { system("Fai prima JOIN"); return; }
+                try {
+                    long val = Money.parse(line.substring(7));
+                    registerBid(nickname, 0, val, true, this);
+                } catch (NumberFormatException e) { bidFail(0, 0, "Valore non numerico"); }
             } else if (line.equalsIgnoreCase("INFO_REQUEST")) {
-                // Risponde al client con le informazioni correnti sull’asta e la porta attiva
-                send("SYSTEM Informazioni attuali:");
-                send("SYSTEM Porta server: " + server.activePort);
-
-                synchronized (server.auctionLock) {
-                    if (server.currentItem != null) {
-                        send(String.format("INFO %s | Prezzo: %.2f | Incremento minimo: %.2f | Miglior offerente: %s",
-                                server.currentItem.name,
-                                server.currentPrice,
-                                server.currentItem.minInc,
-                                (server.topBidder != null ? server.topBidder : "Nessuno")));
-                    } else {
-                        send("SYSTEM Nessuna asta in corso.");
-                    }
-                }
+                infoRequest();
             } else {
-                out.println("SYSTEM Comando sconosciuto");
+                system("Comando sconosciuto");
+            }
+        }
+
+        /**
+         * Gestisce un frame binario; i campi numerici si leggono dal buffer di
+         * ricezione senza allocazioni.
+         */
+        void handle(BinaryProtocol.Frame frame) {
+            switch (frame.opcode()) {
+                case BinaryProtocol.JOIN -> join(frame.text().trim());
+                case BinaryProtocol.BID -> {
+                    if (nickname == null) system("Fai prima JOIN");
+                    else registerBid(nickname, frame.longAt(0), frame.longAt(1), false, this);
+                }
+                case BinaryProtocol.MAXBID -> {
+                    if (nickname == null) system("Fai prima JOIN");
+                    else registerBid(nickname, frame.longAt(0), frame.longAt(1), true, this);
+                }
+                case BinaryProtocol.MSG -> chat(frame.text());
+                case BinaryProtocol.INFO_REQUEST -> infoRequest();
+                case BinaryProtocol.QUIT -> quit();
+                default -> system("Comando sconosciuto");
+            }
+        }
+
+        private void join(String nick) {
+            if (nick.isEmpty() || nick.contains("|") || nick.length() > MAX_NICK) { system("Nick non valido"); return; }
+            // verifica unicità
+            boolean exists = clients.stream().anyMatch(c -> c != this && nick.equals(c.nickname));
+            if (exists) { system("Nick in uso"); return; }
+            this.nickname = nick;
+            system("Ciao " + nickname);
+            sendInfoToAll();
+            broadcastSystem(nickname + " è entrato");
+        }
+
+        private void quit() {
+            system("Arrivederci");
+            connection.close();
+        }
+
+        private void chat(String text) {
+            if (nickname == null) { system("Fai prima JOIN"); return; }
+            switch (engine.chat().admit(chatLimit)) {
+                case BROADCAST -> broadcast(OutboundQueue.Lane.TEXT, new BinaryProtocol.Encoder().chat(nickname, text), nickname + ": " + text);
+                // chat campionata: la vede solo il mittente
+                case SENDER_ONLY -> deliver(OutboundQueue.Lane.TEXT, encode(nickname + ": " + text),
+                        new BinaryProtocol.Encoder().chat(nickname, text).toReadOnlyBuffer());
+                case REJECTED -> system("Troppi messaggi: riprova tra qualche secondo");
             }
         }
 
-        void send(String msg) { if (out != null) out.println(msg); }
+        /**
+         * Risponde con le informazioni correnti sui lotti e la porta attiva, in
+         * un'unica scrittura nella corsia d'asta.
+         */
+        private void infoRequest() {
+            Collection<Lot> lots = engine.activeLots();
+            String port = "Porta server: " + server.activePort;
+            if (binary) {
+                BinaryProtocol.Encoder reply = new BinaryProtocol.Encoder().system(port);
+                if (lots.isEmpty()) reply.system("Nessuna asta in corso.");
+                for (Lot lot : lots) info(reply, lot.state());
+                connection.send(reply.toReadOnlyBuffer(), OutboundQueue.Lane.AUCTION);
+                return;
+            }
+            List<String> reply = new ArrayList<>();
+            reply.add("SYSTEM Informazioni attuali:");
+            reply.add("SYSTEM " + port);
+            if (lots.isEmpty()) reply.add("SYSTEM Nessuna asta in corso.");
+            for (Lot lot : lots) {
+                RoundState state = lot.state();
+                reply.add(String.format("INFO %s | Prezzo: %s | Incremento minimo: %s | Miglior offerente: %s",
+                        state.item().name(),
+                        Money.format(state.currentPriceCents()),
+                        Money.format(state.item().minIncrementCents()),
+                        (state.topBidder() != null ? state.topBidder() : "Nessuno")));
+            }
+            connection.send(encode(reply.toArray(String[]::new)), OutboundQueue.Lane.AUCTION);
+        }
+
+        void system(String message) {
+            if (binary) connection.send(new BinaryProtocol.Encoder().system(message).toReadOnlyBuffer(), OutboundQueue.Lane.TEXT);
+            else connection.send(encode("SYSTEM " + message), OutboundQueue.Lane.TEXT);
+        }
+
+        void bidFail(long lotId, long minimumCents, String reason) {
+            if (binary) connection.send(new BinaryProtocol.Encoder().bidFail(lotId, minimumCents, reason).toReadOnlyBuffer(), OutboundQueue.Lane.AUCTION);
+            else connection.send(encode("BIDFAIL " + reason), OutboundQueue.Lane.AUCTION);
+        }
     }
 }
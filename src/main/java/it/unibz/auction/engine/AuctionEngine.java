@@ -0,0 +1,668 @@
+package it.unibz.auction.engine;
+
+import it.unibz.auction.rmi.dto.AuctionItem;
+import it.unibz.auction.rmi.dto.AuctionState;
+import it.unibz.auction.rmi.dto.BidOutcome;
+import it.unibz.auction.rmi.exceptions.AuctionException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.ToLongFunction;
+
+/**
+ * Motore d'asta indipendente dal trasporto: coda degli articoli, lotti aperti,
+ * regole delle offerte, ciclo di vita dei round, journal e fotografie.
+ * <p>
+ * Il server TCP e il server RMI ne sono front end: traducono i comandi dei
+ * client in chiamate al motore e ne ricevono le transizioni tramite
+ * {@link AuctionListener}. Più front end possono condividere la stessa
+ * istanza, e quindi gli stessi lotti, nella stessa JVM.
+ * <p>
+ * Le offerte non prendono lock: ogni {@link Lot} pubblica il proprio stato via
+ * compare-and-set. {@code roundLock} serializza solo apertura e chiusura dei lotti.
+ * <p>
+ * In alternativa all'asta continua, in cui ogni offerta viene valutata appena
+ * arriva, il motore può compensare le offerte a cicli fissi
+ * ({@link #useBatchClearing(Duration)}): le offerte si accodano senza lock nel
+ * lotto e il timer dei round, a ogni ciclo, le valuta tutte in un solo passo.
+ * Una raffica diventa così una sequenza di passi, con al più un journal e una
+ * notifica per ciclo e per lotto.
+ */
+public final class AuctionEngine {
+
+    private static final int DEFAULT_CONCURRENT_LOTS = Integer.getInteger("auction.lots.concurrent", 1);
+    private static final Duration SOFT_CLOSE = Duration.ofSeconds(Integer.getInteger("auction.softclose.seconds", 0));
+    private static final Path JOURNAL_DIR = Optional.ofNullable(System.getProperty("auction.journal.dir"))
+            .map(Path::of)
+            .orElse(null);
+    private static final boolean JOURNAL_FSYNC =
+            Boolean.parseBoolean(System.getProperty("auction.journal.fsync", "true"));
+    private static final Duration SNAPSHOT_INTERVAL =
+            Duration.ofSeconds(Integer.getInteger("auction.snapshot.intervalSeconds", 60));
+    private static final String SUSPENDED = "Offerte sospese: persistenza non disponibile";
+    private static final Duration CLEARING_INTERVAL =
+            Duration.ofMillis(Integer.getInteger("auction.clearing.intervalMillis", 0));
+
+    /**
+     * Journal aperto e stato riletto prima della costruzione del motore.
+     */
+    private record OpenedJournal(BidJournal journal, BidJournal.Recovery recovery, long startedNanos) {
+
+        static OpenedJournal open(Path directory) throws IOException {
+            long started = System.nanoTime();
+            BidJournal.Recovery recovery = BidJournal.replay(directory);
+            return new OpenedJournal(new BidJournal(directory, JOURNAL_FSYNC), recovery, started);
+        }
+    }
+
+    private final Deque<AuctionItem> itemsQueue = new ArrayDeque<>();
+    private final TimingWheel timer = new TimingWheel("auction-timer", 10, TimeUnit.MILLISECONDS, 256);
+    private final Lock roundLock = new ReentrantLock();
+    private final Lock snapshotLock = new ReentrantLock();
+    private final ConcurrentSkipListMap<Long, Lot> activeLots = new ConcurrentSkipListMap<>();
+    private final List<AuctionListener> listeners = new CopyOnWriteArrayList<>();
+    private final ChatThrottle chat = new ChatThrottle();
+    private final BidAdmission admission = new BidAdmission();
+    private final int maxConcurrentLots;
+    private final BidJournal journal;
+    private final RoundState idleState = RoundState.idle();
+    private final AuctionState idleSnapshot = idleState.toSnapshot();
+    /** intervallo tra due compensazioni, zero per l'asta continua */
+    private volatile Duration clearingInterval = CLEARING_INTERVAL;
+    /** impostato al primo errore del journal: da lì in poi nessuna offerta viene applicata */
+    private volatile boolean bidsSuspended;
+
+    // protetti da roundLock
+    private Map<Long, Lot.Durable> recoveredLots = Map.of(); // riletti dal journal, riaperti da start()
+    private long nextLotId = 1;
+    private boolean started;
+    private boolean stopped;
+    private boolean auctionFinished;
+
+    /**
+     * Motore configurato dalle proprietà di sistema {@code auction.lots.concurrent}
+     * e {@code auction.journal.dir}.
+     */
+    public AuctionEngine(Iterable<AuctionItem> seedItems) throws IOException {
+        this(seedItems, DEFAULT_CONCURRENT_LOTS, JOURNAL_DIR);
+    }
+
+    /**
+     * @param seedItems         articoli da mettere all'asta, nell'ordine di apertura
+     * @param maxConcurrentLots numero massimo di lotti aperti contemporaneamente
+     */
+    public AuctionEngine(Iterable<AuctionItem> seedItems, int maxConcurrentLots) {
+        this(seedItems, maxConcurrentLots, (OpenedJournal) null);
+    }
+
+    /**
+     * @param seedItems         articoli da mettere all'asta, nell'ordine di apertura
+     * @param maxConcurrentLots numero massimo di lotti aperti contemporaneamente
+     * @param journalDir        directory del journal delle offerte, null per non
+     *                          persistere nulla; se contiene un journal, i lotti
+     *                          ancora aperti vengono ripresi con la scadenza originale
+     */
+    public AuctionEngine(Iterable<AuctionItem> seedItems, int maxConcurrentLots, Path journalDir) throws IOException {
+        this(seedItems, maxConcurrentLots, journalDir != null ? OpenedJournal.open(journalDir) : null);
+    }
+
+    private AuctionEngine(Iterable<AuctionItem> seedItems, int maxConcurrentLots, OpenedJournal opened) {
+        if (maxConcurrentLots < 1) {
+            throw new IllegalArgumentException("Numero di lotti concorrenti non valido: " + maxConcurrentLots);
+        }
+        this.maxConcurrentLots = maxConcurrentLots;
+        seedItems.forEach(itemsQueue::offer);
+        this.journal = opened != null ? opened.journal() : null;
+        if (opened != null) {
+            recover(opened);
+        }
+        timer.start();
+        if (journal != null) {
+            scheduleSnapshot();
+        }
+    }
+
+    /**
+     * Applica l'ultima fotografia e i segmenti di journal successivi. Gli id
+     * dei lotti seguono l'ordine degli articoli, quindi gli articoli aperti
+     * dopo la fotografia (o dall'avvio, se non ce n'è una) vengono scartati dalla coda.
+     */
+    private void recover(OpenedJournal opened) {
+        BidJournal.Recovery recovery = opened.recovery();
+        long baseLotId = 0;
+        AuctionSnapshot snapshot = recovery.snapshot();
+        if (snapshot != null) {
+            itemsQueue.clear();
+            itemsQueue.addAll(snapshot.pendingItems());
+            baseLotId = snapshot.lastLotId();
+            if (!snapshot.sessions().isEmpty()) {
+                System.out.printf("💾 %d client registrati prima del riavvio: %s%n",
+                        snapshot.sessions().size(), String.join(", ", snapshot.sessions()));
+            }
+        }
+        long skipped = baseLotId;
+        while (skipped < recovery.lastLotId() && itemsQueue.poll() != null) {
+            skipped++;
+        }
+        nextLotId = recovery.lastLotId() + 1;
+        recoveredLots = recovery.openLots();
+        if (recovery.lastLotId() > 0) {
+            System.out.printf("💾 Stato ripristinato in %d ms: %d lotti aperti da riprendere, ultimo lotto %d%n",
+                    TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - opened.startedNanos()),
+                    recoveredLots.size(), recovery.lastLotId());
+        }
+    }
+
+    /**
+     * Passa alla compensazione a cicli: ogni {@code interval} le offerte accodate
+     * su un lotto vengono valutate insieme, dalla più alta, e il risultato viene
+     * pubblicato una volta sola. Chi offre attende la fine del ciclo. Va invocato
+     * prima di {@link #start()}; {@link Duration#ZERO} ripristina l'asta continua.
+     * Il valore predefinito viene da {@code auction.clearing.intervalMillis}.
+     */
+    public void useBatchClearing(Duration interval) {
+        if (interval.isNegative()) {
+            throw new IllegalArgumentException("Intervallo di compensazione non valido: " + interval);
+        }
+        clearingInterval = interval;
+    }
+
+    /**
+     * Registra un front end; va fatto prima di {@link #start()} per ricevere anche le prime aperture.
+     */
+    public void addListener(AuctionListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Riprende i lotti riletti dal journal e apre i primi articoli. Le chiamate
+     * successive alla prima non hanno effetto, così ogni front end può
+     * avviare il motore condiviso.
+     */
+    public void start() {
+        roundLock.lock();
+        try {
+            if (started) {
+                return;
+            }
+            started = true;
+            recoveredLots.values().forEach(this::resumeLot);
+            recoveredLots = Map.of();
+            openPendingLots();
+        } finally {
+            roundLock.unlock();
+        }
+    }
+
+    public void shutdown() {
+        roundLock.lock();
+        try {
+            if (stopped) {
+                return;
+            }
+            stopped = true;
+        } finally {
+            roundLock.unlock();
+        }
+        timer.shutdown();
+        activeLots.values().forEach(lot -> lot.rejectPending("Il lotto " + lot.id() + " non accetta più offerte"));
+        if (journal != null) {
+            writeSnapshot();
+            journal.close();
+        }
+    }
+
+    /**
+     * Accoda altri articoli; se il motore è avviato apre subito quelli che
+     * rientrano nel numero di lotti concorrenti.
+     */
+    public void addItems(Iterable<AuctionItem> items) {
+        roundLock.lock();
+        try {
+            items.forEach(itemsQueue::offer);
+            if (started) {
+                openPendingLots();
+            }
+        } finally {
+            roundLock.unlock();
+        }
+    }
+
+    /**
+     * @return lotto attivo, null se il lotto non esiste o è già chiuso
+     */
+    public Lot lot(long lotId) {
+        return activeLots.get(lotId);
+    }
+
+    public Lot requireLot(long lotId) throws AuctionException {
+        Lot lot = activeLots.get(lotId);
+        if (lot == null) {
+            throw new AuctionException("Lotto " + lotId + " non attivo");
+        }
+        return lot;
+    }
+
+    /**
+     * @return il lotto attivo aperto per primo, null se non ci sono lotti attivi
+     */
+    public Lot featuredLot() {
+        Map.Entry<Long, Lot> featured = activeLots.firstEntry();
+        return featured != null ? featured.getValue() : null;
+    }
+
+    /** lotti attivi in ordine di apertura */
+    public Collection<Lot> activeLots() {
+        return activeLots.values();
+    }
+
+    /**
+     * Limiti della chat condivisi dai front end, configurati dalle proprietà {@code auction.chat.*}.
+     */
+    public ChatThrottle chat() {
+        return chat;
+    }
+
+    /**
+     * Limiti delle offerte condivisi dai front end, configurati dalle proprietà {@code auction.bids.*}.
+     */
+    public BidAdmission admission() {
+        return admission;
+    }
+
+    public RoundState idleState() {
+        return idleState;
+    }
+
+    public AuctionState idleSnapshot() {
+        return idleSnapshot;
+    }
+
+    /**
+     * Valuta un'offerta; se cambia lo stato pubblicato lo rende durevole e lo notifica ai front end.
+     * <p>
+     * Un importo sotto il minimo corrente viene rifiutato con una sola lettura
+     * dello stato pubblicato, senza occupare posti di {@link BidAdmission}.
+     * <p>
+     * Il nuovo stato è visibile appena pubblicato, prima che il journal lo
+     * renda durevole. Se la scrittura fallisce l'offerta resta applicata (il
+     * record può essere già su disco): viene confermata con un avviso, notificata
+     * come le altre, e da quel momento il motore rifiuta ogni nuova offerta.
+     * Un'offerta non viene mai rifiutata dopo essere stata applicata.
+     *
+     * @throws AuctionException importo non positivo, lotto non attivo, server
+     *                          saturo o offerte sospese; l'offerta non è stata applicata
+     */
+    public Lot.Decision bid(String bidder, long lotId, long amountCents) throws AuctionException {
+        return submit(bidder, lotId, amountCents, false);
+    }
+
+    /**
+     * Registra un'offerta massima nascosta (vedi {@link Lot#proxyBid(String, long)}):
+     * il confronto con il massimo del miglior offerente avviene nel motore e
+     * ai front end arriva una sola transizione con il prezzo risultante.
+     *
+     * @throws AuctionException importo non positivo, lotto non attivo, server
+     *                          saturo o offerte sospese; l'offerta non è stata applicata
+     */
+    public Lot.Decision proxyBid(String bidder, long lotId, long maxCents) throws AuctionException {
+        return submit(bidder, lotId, maxCents, true);
+    }
+
+    private Lot.Decision submit(String bidder, long lotId, long amountCents, boolean proxy) throws AuctionException {
+        if (amountCents <= 0) {
+            throw new AuctionException("Importo non valido");
+        }
+        Lot lot = requireLot(lotId);
+        RoundState current = lot.state();
+        if (current.active() && amountCents < current.minimumRequired()) {
+            return lot.underbid(current, amountCents);
+        }
+        if (bidsSuspended) {
+            throw new AuctionException(SUSPENDED);
+        }
+        if (!admission.tryEnter()) {
+            throw new AuctionException("Server sovraccarico: riprova tra qualche istante");
+        }
+        try {
+            if (!clearingInterval.isZero()) {
+                // il posto resta occupato fino al ciclo: la coda del lotto è limitata da BidAdmission
+                return await(lot.enqueue(bidder, amountCents, proxy));
+            }
+            Lot.Decision decision = proxy ? lot.proxyBid(bidder, amountCents) : lot.bid(bidder, amountCents);
+            if (!accepted(lot, decision.accepted(), decision.durable())) {
+                return new Lot.Decision(notDurable(decision.outcome()), decision.accepted(), decision.durable());
+            }
+            return decision;
+        } finally {
+            admission.exit();
+        }
+    }
+
+    /**
+     * Valuta un gruppo di offerte dello stesso offerente sullo stesso lotto
+     * con un solo compare-and-set (vedi {@link Lot#bidAll(String, long[])}).
+     * Con la compensazione a cicli le offerte entrano nel ciclo successivo
+     * insieme a quelle degli altri. A server saturo tutte le offerte del
+     * gruppo vengono rifiutate, così come a offerte sospese.
+     *
+     * @return esiti, null se il lotto non è attivo
+     */
+    public Lot.BatchDecision bidAll(String bidder, long lotId, long[] amountsCents) {
+        Lot lot = activeLots.get(lotId);
+        if (lot == null) {
+            return null;
+        }
+        if (bidsSuspended) {
+            return rejectAll(lot, amountsCents, SUSPENDED);
+        }
+        if (!admission.tryEnter()) {
+            return rejectAll(lot, amountsCents, "Server sovraccarico: riprova tra qualche istante");
+        }
+        try {
+            if (!clearingInterval.isZero()) {
+                return awaitAll(lot, bidder, amountsCents);
+            }
+            Lot.BatchDecision decision = lot.bidAll(bidder, amountsCents);
+            if (!accepted(lot, decision.accepted(), decision.durable())) {
+                BidOutcome[] outcomes = decision.outcomes();
+                for (int i = 0; i < outcomes.length; i++) {
+                    outcomes[i] = notDurable(outcomes[i]);
+                }
+            }
+            return decision;
+        } finally {
+            admission.exit();
+        }
+    }
+
+    private static Lot.BatchDecision rejectAll(Lot lot, long[] amountsCents, String reason) {
+        RoundState current = lot.state();
+        AuctionState snapshot = lot.snapshot(current);
+        BidOutcome[] outcomes = new BidOutcome[amountsCents.length];
+        for (int i = 0; i < outcomes.length; i++) {
+            outcomes[i] = new BidOutcome(false, amountsCents[i], current.minimumRequired(), reason, snapshot);
+        }
+        return new Lot.BatchDecision(outcomes, null, null);
+    }
+
+    /**
+     * Conferma di un'offerta applicata ma non resa durevole dal journal.
+     */
+    private static BidOutcome notDurable(BidOutcome outcome) {
+        if (!outcome.accepted()) {
+            return outcome;
+        }
+        return new BidOutcome(true, outcome.amountCents(), outcome.minimumRequiredCents(),
+                "Offerta accettata, ma non registrata su disco: le offerte sono sospese", outcome.stateSnapshot());
+    }
+
+    /**
+     * Attende la fine del ciclo senza lasciarsi interrompere: un'offerta in
+     * coda può ancora essere applicata, quindi non la si può dare per rifiutata.
+     */
+    private static Lot.Decision await(CompletableFuture<Lot.Decision> decision) throws AuctionException {
+        try {
+            return decision.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof AuctionException auction) {
+                throw new AuctionException(auction.getMessage());
+            }
+            throw ex;
+        }
+    }
+
+    private static Lot.BatchDecision awaitAll(Lot lot, String bidder, long[] amountsCents) {
+        List<CompletableFuture<Lot.Decision>> pending = new ArrayList<>(amountsCents.length);
+        for (long amount : amountsCents) {
+            pending.add(lot.enqueue(bidder, amount, false));
+        }
+        BidOutcome[] outcomes = new BidOutcome[amountsCents.length];
+        RoundState accepted = null;
+        Lot.Durable durable = null;
+        for (int i = 0; i < outcomes.length; i++) {
+            Lot.Decision decision;
+            try {
+                decision = await(pending.get(i));
+            } catch (AuctionException ex) {
+                RoundState current = lot.state();
+                decision = new Lot.Decision(new BidOutcome(false, amountsCents[i], current.minimumRequired(),
+                        ex.getMessage(), lot.snapshot(current)), null, null);
+            }
+            outcomes[i] = decision.outcome();
+            if (decision.accepted() != null) {
+                accepted = decision.accepted();
+            }
+            if (decision.durable() != null) {
+                durable = decision.durable();
+            }
+        }
+        return new Lot.BatchDecision(outcomes, accepted, durable);
+    }
+
+    /**
+     * Un ciclo di compensazione del lotto: il nuovo stato viene reso durevole
+     * e notificato una volta sola, poi gli offerenti ricevono gli esiti. A
+     * offerte sospese le offerte in coda vengono rifiutate senza valutarle.
+     */
+    private void clear(Lot lot) {
+        if (bidsSuspended) {
+            lot.rejectPending(SUSPENDED);
+            return;
+        }
+        Lot.Clearing clearing = lot.clear();
+        if (clearing == null) {
+            return;
+        }
+        if (!accepted(lot, clearing.accepted(), clearing.durable())) {
+            BidOutcome[] outcomes = clearing.outcomes();
+            for (int i = 0; i < outcomes.length; i++) {
+                outcomes[i] = notDurable(outcomes[i]);
+            }
+        }
+        clearing.complete();
+    }
+
+    /**
+     * Pianifica il prossimo ciclo finché il lotto è aperto, più un ultimo
+     * ciclo dopo la chiusura che rifiuta le offerte rimaste in coda. La
+     * compensazione può attendere il journal: non deve occupare il thread del timer.
+     */
+    private void scheduleClearing(Lot lot) {
+        Duration interval = clearingInterval;
+        timer.schedule(() -> Thread.ofVirtual().name("auction-clearing").start(() -> {
+            boolean open = lot.state().active();
+            clear(lot);
+            if (open) {
+                scheduleClearing(lot);
+            }
+        }), interval.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Rende durevole una transizione già applicata e, se lo stato pubblicato
+     * è cambiato, lo notifica. Lo stato viene notificato anche se il journal
+     * fallisce, perché resta quello del lotto. Un massimo alzato dal miglior
+     * offerente cambia solo lo stato durevole e non viene notificato.
+     *
+     * @param accepted nuovo stato pubblicato, null se è cambiato solo il massimo
+     * @param changed  stato da rendere durevole, null se nulla è cambiato
+     * @return false se il journal non l'ha reso durevole
+     */
+    private boolean accepted(Lot lot, RoundState accepted, Lot.Durable changed) {
+        if (changed == null) {
+            return true;
+        }
+        boolean durable = persist(j -> accepted != null ? j.lotUpdated(changed) : j.maximumRaised(changed));
+        if (accepted != null) {
+            for (AuctionListener listener : listeners) {
+                listener.bidAccepted(lot, accepted);
+            }
+        }
+        return durable;
+    }
+
+    /**
+     * Scrive una fotografia dello stato e compatta il journal. La rotazione del
+     * segmento e la cattura dello stato avvengono sotto {@code roundLock}, così
+     * che aperture e chiusure dei lotti non possano cadere tra le due; le
+     * offerte concorrenti finiscono nel nuovo segmento e vengono rilette al
+     * riavvio. La scrittura su disco avviene fuori dal lock.
+     */
+    public void writeSnapshot() {
+        snapshotLock.lock();
+        try {
+            AuctionSnapshot snapshot;
+            roundLock.lock();
+            try {
+                long covered = journal.rotate();
+                snapshot = new AuctionSnapshot(covered, nextLotId - 1, List.copyOf(itemsQueue),
+                        activeLots.values().stream().map(Lot::durable).toList(),
+                        listeners.stream().flatMap(l -> l.participants().stream()).toList());
+            } finally {
+                roundLock.unlock();
+            }
+            journal.writeSnapshot(snapshot);
+        } catch (IOException ex) {
+            System.err.printf("⚠️ Fotografia dello stato non scritta: %s%n", ex.getMessage());
+        } finally {
+            snapshotLock.unlock();
+        }
+    }
+
+    private void scheduleSnapshot() {
+        // la scrittura è bloccante: non deve occupare il thread del timer
+        timer.schedule(() -> Thread.ofVirtual().name("auction-snapshot").start(() -> {
+            writeSnapshot();
+            scheduleSnapshot();
+        }), SNAPSHOT_INTERVAL.toMillis(), TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Apre nuovi lotti dalla coda finché non si raggiunge il numero massimo di
+     * lotti concorrenti. Va invocato con {@code roundLock} acquisito.
+     */
+    private void openPendingLots() {
+        while (activeLots.size() < maxConcurrentLots) {
+            AuctionItem nextItem = itemsQueue.poll();
+            if (nextItem == null) {
+                break;
+            }
+            openLot(nextItem);
+        }
+        if (activeLots.isEmpty() && !auctionFinished) {
+            auctionFinished = true;
+            for (AuctionListener listener : listeners) {
+                listener.auctionFinished(idleState, idleSnapshot);
+            }
+        } else if (!activeLots.isEmpty()) {
+            auctionFinished = false;
+        }
+    }
+
+    private void openLot(AuctionItem item) {
+        Lot lot = new Lot(nextLotId++, item, Instant.now(), SOFT_CLOSE);
+        RoundState opened = lot.state();
+        persist(j -> j.lotOpened(opened));
+        activeLots.put(lot.id(), lot);
+        for (AuctionListener listener : listeners) {
+            listener.lotOpened(lot, opened, false);
+        }
+        scheduleCompletion(lot, TimeUnit.SECONDS.toMillis(item.durationSeconds()));
+        if (!clearingInterval.isZero()) {
+            scheduleClearing(lot);
+        }
+    }
+
+    /**
+     * Riapre un lotto riletto dal journal mantenendo la scadenza originale: se
+     * è già trascorsa, il lotto viene chiuso al primo tick del timer.
+     */
+    private void resumeLot(Lot.Durable durable) {
+        RoundState restored = durable.round();
+        Lot lot = new Lot(durable, SOFT_CLOSE);
+        activeLots.put(lot.id(), lot);
+        for (AuctionListener listener : listeners) {
+            listener.lotOpened(lot, restored, true);
+        }
+        long remaining = Math.max(0, Duration.between(Instant.now(), restored.roundEnd()).toMillis());
+        scheduleCompletion(lot, remaining);
+        if (!clearingInterval.isZero()) {
+            scheduleClearing(lot);
+        }
+    }
+
+    /**
+     * Pianifica la chiusura del lotto. La chiusura prende {@code roundLock} e
+     * attende il journal, anche per il lotto che apre: il timer si limita ad
+     * avviarla su un thread virtuale.
+     */
+    private void scheduleCompletion(Lot lot, long delayMillis) {
+        timer.schedule(() -> Thread.ofVirtual().name("auction-round").start(() -> completeLot(lot)),
+                delayMillis, TimeUnit.MILLISECONDS);
+    }
+
+    private void completeLot(Lot lot) {
+        roundLock.lock();
+        try {
+            RoundState closed = lot.closeIfDue(Instant.now());
+            if (closed == null) {
+                return;
+            }
+            if (closed.active()) {
+                // scadenza prorogata da offerte nella finestra di chiusura morbida
+                long remaining = Math.max(1, Duration.between(Instant.now(), closed.roundEnd()).toMillis());
+                scheduleCompletion(lot, remaining);
+                return;
+            }
+            persist(j -> j.lotClosed(closed));
+            activeLots.remove(lot.id());
+            for (AuctionListener listener : listeners) {
+                listener.lotClosed(lot, closed);
+            }
+            openPendingLots();
+        } finally {
+            roundLock.unlock();
+        }
+    }
+
+    /**
+     * Registra una transizione sul journal e attende il group commit che la
+     * rende durevole. Senza journal non fa nulla. Al primo errore il motore
+     * sospende le offerte: uno stato non durevole non deve diventare la base
+     * di altre offerte.
+     *
+     * @return false se la scrittura è fallita
+     */
+    private boolean persist(ToLongFunction<BidJournal> record) {
+        if (journal == null) {
+            return true;
+        }
+        try {
+            journal.awaitDurable(record.applyAsLong(journal));
+            return true;
+        } catch (IOException | IllegalStateException ex) {
+            if (!bidsSuspended) {
+                bidsSuspended = true;
+                System.err.printf("⛔ Journal non disponibile, offerte sospese: %s%n", ex.getMessage());
+            }
+            return false;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package it.unibz.auction.engine;
+
+import it.unibz.auction.rmi.dto.AuctionState;
+
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Osservatore delle transizioni del {@link AuctionEngine}, implementato da
+ * ciascun front end per tradurle nel proprio protocollo.
+ * <p>
+ * Apertura, chiusura e fine dell'asta vengono notificate in ordine, sotto il
+ * lock dei round; le offerte accettate dal thread dell'offerente, senza lock e
+ * quindi anche in ordine diverso da quello delle versioni. Nessun metodo deve
+ * bloccare: i front end accodano e consegnano altrove.
+ */
+public interface AuctionListener {
+
+    /**
+     * @param resumed true se il lotto è stato ripreso dal journal dopo un riavvio
+     */
+    default void lotOpened(Lot lot, RoundState opened, boolean resumed) {
+    }
+
+    default void bidAccepted(Lot lot, RoundState accepted) {
+    }
+
+    default void lotClosed(Lot lot, RoundState closed) {
+    }
+
+    /**
+     * Non restano lotti aperti né articoli in coda.
+     */
+    default void auctionFinished(RoundState idle, AuctionState snapshot) {
+    }
+
+    /**
+     * Nickname dei partecipanti collegati a questo front end, salvati nelle fotografie dello stato.
+     */
+    default Collection<String> participants() {
+        return List.of();
+    }
+}
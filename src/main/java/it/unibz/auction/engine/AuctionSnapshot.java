@@ -0,0 +1,152 @@
+package it.unibz.auction.engine;
+
+import it.unibz.auction.rmi.dto.AuctionItem;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.CRC32;
+
+/**
+ * Fotografia binaria dello stato dell'asta, scritta periodicamente accanto al journal.
+ * <p>
+ * Riflette tutti i record dei segmenti di journal fino a {@code coveredSegment}
+ * compreso: al riavvio basta caricarla e rileggere i segmenti successivi.
+ *
+ * @param coveredSegment ultimo segmento di journal incluso nella fotografia
+ * @param lastLotId      id più alto assegnato al momento della fotografia
+ * @param pendingItems   articoli ancora in coda, nell'ordine di apertura
+ * @param openLots       stato dei lotti aperti, con i massimi nascosti
+ * @param sessions       nickname dei client registrati (le callback remote non
+ *                       sopravvivono al riavvio: i client si registrano di nuovo)
+ */
+record AuctionSnapshot(
+        long coveredSegment,
+        long lastLotId,
+        List<AuctionItem> pendingItems,
+        List<Lot.Durable> openLots,
+        List<String> sessions
+) {
+
+    private static final int MAGIC = 0x41534E50; // "ASNP"
+    /** la versione 3 aggiunge il massimo nascosto dei lotti aperti; la 2 si legge ancora */
+    private static final int FORMAT_VERSION = 3;
+
+    /**
+     * Scrive la fotografia su un file temporaneo, lo forza su disco e lo rinomina
+     * atomicamente: un crash a metà scrittura lascia intatta la fotografia precedente.
+     */
+    void writeTo(Path file) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(4096);
+        DataOutputStream out = new DataOutputStream(bytes);
+        out.writeInt(MAGIC);
+        out.writeInt(FORMAT_VERSION);
+        out.writeLong(coveredSegment);
+        out.writeLong(lastLotId);
+        out.writeInt(pendingItems.size());
+        for (AuctionItem item : pendingItems) {
+            writeItem(out, item);
+        }
+        out.writeInt(openLots.size());
+        for (Lot.Durable lot : openLots) {
+            RoundState round = lot.round();
+            out.writeLong(round.lotId());
+            out.writeLong(round.version());
+            out.writeLong(round.currentPriceCents());
+            out.writeUTF(round.topBidder() != null ? round.topBidder() : "");
+            out.writeLong(round.roundEnd().toEpochMilli());
+            writeItem(out, round.item());
+            out.writeLong(lot.proxyMaxCents());
+        }
+        out.writeInt(sessions.size());
+        for (String nickname : sessions) {
+            out.writeUTF(nickname);
+        }
+        out.flush();
+        CRC32 crc = new CRC32();
+        crc.update(bytes.toByteArray());
+        out.writeInt((int) crc.getValue());
+
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.CREATE,
+                StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+            channel.force(true);
+        }
+        Files.move(tmp, file, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @throws IOException se il file è illeggibile o il checksum non corrisponde
+     */
+    static AuctionSnapshot readFrom(Path file) throws IOException {
+        byte[] bytes = Files.readAllBytes(file);
+        if (bytes.length < Integer.BYTES) {
+            throw new IOException("Fotografia troncata: " + file);
+        }
+        CRC32 crc = new CRC32();
+        crc.update(bytes, 0, bytes.length - Integer.BYTES);
+        if ((int) crc.getValue() != ByteBuffer.wrap(bytes, bytes.length - Integer.BYTES, Integer.BYTES).getInt()) {
+            throw new IOException("Checksum della fotografia non valido: " + file);
+        }
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int format = in.readInt() == MAGIC ? in.readInt() : -1;
+        if (format != FORMAT_VERSION && format != 2) {
+            throw new IOException("Formato della fotografia non riconosciuto: " + file);
+        }
+        long coveredSegment = in.readLong();
+        long lastLotId = in.readLong();
+        int itemCount = in.readInt();
+        List<AuctionItem> items = new ArrayList<>(itemCount);
+        for (int i = 0; i < itemCount; i++) {
+            items.add(readItem(in));
+        }
+        int lotCount = in.readInt();
+        List<Lot.Durable> lots = new ArrayList<>(lotCount);
+        for (int i = 0; i < lotCount; i++) {
+            long lotId = in.readLong();
+            long version = in.readLong();
+            long price = in.readLong();
+            String bidder = in.readUTF();
+            Instant roundEnd = Instant.ofEpochMilli(in.readLong());
+            RoundState round = new RoundState(lotId, version, readItem(in), price,
+                    bidder.isEmpty() ? null : bidder, roundEnd, true);
+            lots.add(new Lot.Durable(round, format >= 3 ? in.readLong() : 0));
+        }
+        int sessionCount = in.readInt();
+        List<String> sessions = new ArrayList<>(sessionCount);
+        for (int i = 0; i < sessionCount; i++) {
+            sessions.add(in.readUTF());
+        }
+        return new AuctionSnapshot(coveredSegment, lastLotId, List.copyOf(items), List.copyOf(lots),
+                List.copyOf(sessions));
+    }
+
+    static void writeItem(DataOutput out, AuctionItem item) throws IOException {
+        out.writeUTF(item.name());
+        out.writeUTF(item.description());
+        out.writeLong(item.startPriceCents());
+        out.writeLong(item.minIncrementCents());
+        out.writeInt(item.durationSeconds());
+    }
+
+    static AuctionItem readItem(DataInput in) throws IOException {
+        return new AuctionItem(in.readUTF(), in.readUTF(), in.readLong(), in.readLong(), in.readInt());
+    }
+}
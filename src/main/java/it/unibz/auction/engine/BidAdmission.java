@@ -0,0 +1,80 @@
+package it.unibz.auction.engine;
+
+import it.unibz.auction.rmi.exceptions.AuctionException;
+
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Controllo di ammissione delle offerte, comune a tutti i front end di un
+ * {@link AuctionEngine}.
+ * <p>
+ * Ogni offerente ha il proprio {@link TokenBucket}: chi lo esaurisce viene
+ * respinto prima ancora di leggere lo stato del lotto. Le offerte che
+ * superano il minimo corrente occupano poi uno dei posti disponibili fino a
+ * quando il journal le ha rese durevoli e i front end le hanno notificate:
+ * quando i posti sono esauriti l'offerta viene rifiutata subito invece di
+ * accodarsi, così la latenza delle offerte ammesse resta limitata anche a
+ * saturazione. Le offerte sotto il minimo non occupano posti.
+ */
+public final class BidAdmission {
+
+    private static final double SENDER_RATE = Double.parseDouble(System.getProperty("auction.bids.ratePerSecond", "10"));
+    private static final int SENDER_BURST = Integer.getInteger("auction.bids.burst", 20);
+    private static final int MAX_IN_FLIGHT = Integer.getInteger("auction.bids.maxInFlight", 256);
+
+    private final double senderRate;
+    private final int senderBurst;
+    private final int maxInFlight;
+    private final AtomicInteger inFlight = new AtomicInteger();
+
+    BidAdmission() {
+        this(SENDER_RATE, SENDER_BURST, MAX_IN_FLIGHT);
+    }
+
+    /**
+     * @param senderRate  offerte al secondo per offerente
+     * @param senderBurst raffica consentita a un offerente
+     * @param maxInFlight offerte ammesse contemporaneamente in attesa di journal e notifica
+     */
+    public BidAdmission(double senderRate, int senderBurst, int maxInFlight) {
+        if (!(senderRate > 0) || senderBurst < 1 || maxInFlight < 1) {
+            throw new IllegalArgumentException("Limiti delle offerte non validi");
+        }
+        this.senderRate = senderRate;
+        this.senderBurst = senderBurst;
+        this.maxInFlight = maxInFlight;
+    }
+
+    /**
+     * Limite di un nuovo offerente, da conservare nella sua sessione.
+     */
+    public TokenBucket newSenderLimit() {
+        return new TokenBucket(senderRate, senderBurst);
+    }
+
+    /**
+     * Consuma un gettone dell'offerente; una chiamata con più offerte ne consuma uno solo.
+     *
+     * @throws AuctionException se l'offerente ha superato il proprio limite
+     */
+    public void throttle(TokenBucket sender) throws AuctionException {
+        if (!sender.tryAcquire()) {
+            throw new AuctionException("Troppe offerte: riprova tra qualche secondo");
+        }
+    }
+
+    /**
+     * @return true se un posto era libero; va restituito con {@link #exit()}
+     */
+    boolean tryEnter() {
+        if (inFlight.incrementAndGet() > maxInFlight) {
+            inFlight.decrementAndGet();
+            return false;
+        }
+        return true;
+    }
+
+    void exit() {
+        inFlight.decrementAndGet();
+    }
+}
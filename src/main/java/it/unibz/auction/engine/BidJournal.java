@@ -0,0 +1,497 @@
+package it.unibz.auction.engine;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.stream.Stream;
+import java.util.zip.CRC32;
+
+/**
+ * Journal append-only delle transizioni di stato dei lotti (write-ahead log).
+ * <p>
+ * Ogni record contiene lo stato completo del lotto dopo la transizione, quindi
+ * il replay non deve rieseguire la logica d'asta: per ogni lotto vale il record
+ * con versione più alta. Gli aggiornamenti riportano anche il massimo nascosto
+ * del miglior offerente; quando questi alza il proprio massimo lo stato
+ * pubblicato non cambia e un record dedicato registra il solo massimo, che a
+ * parità di versione può solo crescere. Le scritture sono raggruppate (group commit): i thread
+ * che offrono accodano il proprio record in un buffer condiviso e attendono che
+ * il thread di flush abbia eseguito un'unica {@code fsync} per tutti i record
+ * accumulati nel frattempo.
+ * <p>
+ * Il journal è diviso in segmenti numerati ({@code journal-NNNNNN.log}). Una
+ * {@link AuctionSnapshot fotografia} copre tutti i segmenti fino a un certo
+ * numero, che dopo la sua scrittura vengono eliminati: il replay parte
+ * dall'ultima fotografia e rilegge solo i segmenti successivi.
+ * <p>
+ * Formato di un record: {@code int lunghezza, int crc32, byte tipo, payload}.
+ * Un record troncato o corrotto in coda a un segmento (crash durante la
+ * scrittura) viene scartato al replay.
+ */
+final class BidJournal implements AutoCloseable {
+
+    private static final String SEGMENT_PREFIX = "journal-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String SNAPSHOT_PREFIX = "snapshot-";
+    private static final String SNAPSHOT_SUFFIX = ".bin";
+
+    private static final byte LOT_OPENED = 1;
+    private static final byte LOT_STATE = 2;
+    private static final byte LOT_CLOSED = 3;
+    private static final byte MAXIMUM_RAISED = 4;
+    private static final int HEADER_BYTES = 8;
+    private static final int INITIAL_BUFFER = 64 * 1024;
+
+    /**
+     * Stato ricostruito da fotografia e journal.
+     *
+     * @param openLots  lotti ancora aperti al momento del crash, con i massimi nascosti, per id
+     * @param lastLotId id più alto mai assegnato
+     * @param snapshot  fotografia da cui è partito il replay, null se assente
+     */
+    record Recovery(Map<Long, Lot.Durable> openLots, long lastLotId, AuctionSnapshot snapshot) {}
+
+    private final Path directory;
+    private final boolean fsync;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition dataAvailable = lock.newCondition();
+    private final Condition flushed = lock.newCondition();
+    private final Thread flusher;
+
+    // protetti da lock
+    private ByteBuffer pending = ByteBuffer.allocate(INITIAL_BUFFER);
+    private ByteBuffer spare = ByteBuffer.allocate(INITIAL_BUFFER);
+    private long appendedSeq;
+    private long durableSeq;
+    private IOException failure;
+    private boolean closed;
+
+    // protetti da ioLock: scrittura di un gruppo e cambio di segmento si escludono
+    private final Lock ioLock = new ReentrantLock();
+    private FileChannel channel;
+    private long segment;
+
+    /**
+     * Apre un nuovo segmento in coda a quelli esistenti.
+     *
+     * @param directory directory di journal e fotografie
+     * @param fsync     true per forzare su disco ogni gruppo di record prima di confermarlo
+     */
+    BidJournal(Path directory, boolean fsync) throws IOException {
+        Files.createDirectories(directory);
+        this.directory = directory;
+        this.fsync = fsync;
+        long last = Math.max(lastNumber(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX),
+                lastNumber(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX));
+        this.segment = last + 1;
+        this.channel = openSegment(segment);
+        this.flusher = new Thread(this::flushLoop, "auction-journal");
+        this.flusher.setDaemon(true);
+        this.flusher.start();
+    }
+
+    long lotOpened(RoundState state) {
+        return append(encode(LOT_OPENED, state, 0));
+    }
+
+    long lotUpdated(Lot.Durable updated) {
+        return append(encode(LOT_STATE, updated.round(), updated.proxyMaxCents()));
+    }
+
+    /**
+     * Registra un massimo alzato dal miglior offerente senza cambiare lo stato pubblicato.
+     */
+    long maximumRaised(Lot.Durable raised) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(32);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(MAXIMUM_RAISED);
+            out.writeLong(raised.round().lotId());
+            out.writeLong(raised.round().version());
+            out.writeLong(raised.proxyMaxCents());
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return append(bytes.toByteArray());
+    }
+
+    long lotClosed(RoundState state) {
+        return append(encode(LOT_CLOSED, state, 0));
+    }
+
+    /**
+     * Attende che il record identificato dal ticket sia stato scritto (e forzato su disco se richiesto).
+     *
+     * @throws IOException se la scrittura del gruppo è fallita
+     */
+    void awaitDurable(long ticket) throws IOException {
+        lock.lock();
+        try {
+            while (durableSeq < ticket && failure == null) {
+                flushed.awaitUninterruptibly();
+            }
+            if (durableSeq < ticket) {
+                throw new IOException("Scrittura del journal fallita", failure);
+            }
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Chiude il segmento corrente e passa al successivo. Ogni record presente
+     * nei segmenti chiusi è stato accodato prima di questa chiamata: una
+     * fotografia dello stato catturata subito dopo li include tutti.
+     *
+     * @return numero dell'ultimo segmento chiuso
+     */
+    long rotate() throws IOException {
+        ioLock.lock();
+        try {
+            FileChannel next = openSegment(segment + 1);
+            channel.force(false);
+            channel.close();
+            channel = next;
+            return segment++;
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    /**
+     * Scrive la fotografia ed elimina i segmenti e le fotografie che copre.
+     */
+    void writeSnapshot(AuctionSnapshot snapshot) throws IOException {
+        long covered = snapshot.coveredSegment();
+        snapshot.writeTo(directory.resolve(fileName(SNAPSHOT_PREFIX, covered, SNAPSHOT_SUFFIX)));
+        for (Path file : list(directory)) {
+            String name = file.getFileName().toString();
+            long segmentNumber = number(name, SEGMENT_PREFIX, SEGMENT_SUFFIX);
+            long snapshotNumber = number(name, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX);
+            if ((segmentNumber > 0 && segmentNumber <= covered) || (snapshotNumber > 0 && snapshotNumber < covered)) {
+                Files.deleteIfExists(file);
+            }
+        }
+    }
+
+    @Override
+    public void close() {
+        lock.lock();
+        try {
+            closed = true;
+            dataAvailable.signal();
+        } finally {
+            lock.unlock();
+        }
+        try {
+            flusher.join();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+        ioLock.lock();
+        try {
+            channel.close();
+        } catch (IOException ex) {
+            System.err.printf("⚠️ Chiusura del journal fallita: %s%n", ex.getMessage());
+        } finally {
+            ioLock.unlock();
+        }
+    }
+
+    private FileChannel openSegment(long number) throws IOException {
+        return FileChannel.open(directory.resolve(fileName(SEGMENT_PREFIX, number, SEGMENT_SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.APPEND);
+    }
+
+    private long append(byte[] payload) {
+        lock.lock();
+        try {
+            if (closed) {
+                throw new IllegalStateException("Journal chiuso");
+            }
+            if (failure != null) {
+                throw new IllegalStateException("Journal non disponibile dopo un errore di scrittura");
+            }
+            int needed = HEADER_BYTES + payload.length;
+            if (pending.remaining() < needed) {
+                ByteBuffer larger = ByteBuffer.allocate(Math.max(pending.capacity() * 2, pending.position() + needed));
+                pending.flip();
+                larger.put(pending);
+                pending = larger;
+            }
+            CRC32 crc = new CRC32();
+            crc.update(payload);
+            pending.putInt(payload.length).putInt((int) crc.getValue()).put(payload);
+            long seq = ++appendedSeq;
+            dataAvailable.signal();
+            return seq;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    private void flushLoop() {
+        while (true) {
+            ByteBuffer batch;
+            long batchSeq;
+            lock.lock();
+            try {
+                while (pending.position() == 0 && !closed) {
+                    dataAvailable.awaitUninterruptibly();
+                }
+                if (pending.position() == 0) {
+                    return;
+                }
+                batch = pending;
+                pending = spare;
+                pending.clear();
+                batchSeq = appendedSeq;
+                if (failure != null) {
+                    // dopo un errore non si scrive più: su disco resta un prefisso dei record accodati
+                    batch.clear();
+                    spare = batch;
+                    continue;
+                }
+            } finally {
+                lock.unlock();
+            }
+
+            IOException error = null;
+            ioLock.lock();
+            try {
+                batch.flip();
+                while (batch.hasRemaining()) {
+                    channel.write(batch);
+                }
+                if (fsync) {
+                    channel.force(false);
+                }
+            } catch (IOException ex) {
+                error = ex;
+            } finally {
+                ioLock.unlock();
+            }
+
+            lock.lock();
+            try {
+                spare = batch;
+                if (error != null) {
+                    failure = error;
+                    System.err.printf("⚠️ Scrittura del journal fallita: %s%n", error.getMessage());
+                } else {
+                    durableSeq = batchSeq;
+                }
+                flushed.signalAll();
+            } finally {
+                lock.unlock();
+            }
+        }
+    }
+
+    private static byte[] encode(byte type, RoundState state, long proxyMaxCents) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(96);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(type);
+            out.writeLong(state.lotId());
+            out.writeLong(state.version());
+            out.writeLong(state.currentPriceCents());
+            out.writeUTF(state.topBidder() != null ? state.topBidder() : "");
+            out.writeLong(state.roundEnd().toEpochMilli());
+            if (type == LOT_OPENED) {
+                AuctionSnapshot.writeItem(out, state.item());
+            } else if (type == LOT_STATE) {
+                out.writeLong(proxyMaxCents);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Carica l'ultima fotografia valida e rilegge i segmenti successivi. Una
+     * coda corrotta viene troncata, così che il segmento resti leggibile.
+     */
+    static Recovery replay(Path directory) throws IOException {
+        if (!Files.isDirectory(directory)) {
+            return new Recovery(Map.of(), 0, null);
+        }
+        AuctionSnapshot snapshot = null;
+        for (Path file : numbered(directory, SNAPSHOT_PREFIX, SNAPSHOT_SUFFIX).reversed()) {
+            try {
+                snapshot = AuctionSnapshot.readFrom(file);
+                break;
+            } catch (IOException ex) {
+                System.err.printf("⚠️ Fotografia ignorata: %s%n", ex.getMessage());
+            }
+        }
+
+        Map<Long, RoundState> open = new LinkedHashMap<>();
+        Map<Long, Maximum> maximums = new HashMap<>();
+        long lastLotId = 0;
+        long covered = 0;
+        if (snapshot != null) {
+            for (Lot.Durable lot : snapshot.openLots()) {
+                open.put(lot.round().lotId(), lot.round());
+                raise(maximums, lot.round().lotId(), new Maximum(lot.round().version(), lot.proxyMaxCents()));
+            }
+            lastLotId = snapshot.lastLotId();
+            covered = snapshot.coveredSegment();
+        }
+        for (Path file : numbered(directory, SEGMENT_PREFIX, SEGMENT_SUFFIX)) {
+            if (number(file.getFileName().toString(), SEGMENT_PREFIX, SEGMENT_SUFFIX) > covered) {
+                lastLotId = Math.max(lastLotId, replaySegment(file, open, maximums));
+            }
+        }
+        Map<Long, Lot.Durable> recovered = new LinkedHashMap<>();
+        open.forEach((lotId, round) -> {
+            // un massimo vale solo per la versione dello stato in cui è stato registrato
+            Maximum maximum = maximums.get(lotId);
+            long maxCents = maximum != null && maximum.version() == round.version() ? maximum.cents() : 0;
+            recovered.put(lotId, new Lot.Durable(round, maxCents));
+        });
+        return new Recovery(recovered, lastLotId, snapshot);
+    }
+
+    /** massimo nascosto riletto, con la versione dello stato a cui si riferisce */
+    private record Maximum(long version, long cents) {}
+
+    /**
+     * I record di stato e di massimo possono comparire in ordine diverso da
+     * quello delle transizioni: vale la versione più alta e, a parità, il massimo più alto.
+     */
+    private static void raise(Map<Long, Maximum> maximums, long lotId, Maximum candidate) {
+        maximums.merge(lotId, candidate, (current, next) -> next.version() > current.version()
+                || (next.version() == current.version() && next.cents() > current.cents()) ? next : current);
+    }
+
+    private static long replaySegment(Path file, Map<Long, RoundState> open, Map<Long, Maximum> maximums)
+            throws IOException {
+        long lastLotId = 0;
+        long validBytes = 0;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+            CRC32 crc = new CRC32();
+            while (true) {
+                byte[] payload;
+                try {
+                    int length = in.readInt();
+                    int checksum = in.readInt();
+                    if (length <= 0 || length > 1 << 20) {
+                        break;
+                    }
+                    payload = new byte[length];
+                    in.readFully(payload);
+                    crc.reset();
+                    crc.update(payload);
+                    if ((int) crc.getValue() != checksum) {
+                        break;
+                    }
+                } catch (EOFException ex) {
+                    break;
+                }
+                validBytes += HEADER_BYTES + payload.length;
+                lastLotId = Math.max(lastLotId, apply(payload, open, maximums));
+            }
+            if (validBytes < channel.size()) {
+                System.err.printf("⚠️ Segmento %s troncato a %d byte (coda non valida scartata)%n",
+                        file.getFileName(), validBytes);
+                channel.truncate(validBytes);
+            }
+        }
+        return lastLotId;
+    }
+
+    private static long apply(byte[] payload, Map<Long, RoundState> open, Map<Long, Maximum> maximums)
+            throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(payload));
+        byte type = in.readByte();
+        long lotId = in.readLong();
+        long version = in.readLong();
+        if (type == MAXIMUM_RAISED) {
+            raise(maximums, lotId, new Maximum(version, in.readLong()));
+            return lotId;
+        }
+        long price = in.readLong();
+        String bidder = in.readUTF();
+        Instant roundEnd = Instant.ofEpochMilli(in.readLong());
+        String topBidder = bidder.isEmpty() ? null : bidder;
+
+        switch (type) {
+            case LOT_OPENED -> open.put(lotId, new RoundState(lotId, version, AuctionSnapshot.readItem(in),
+                    price, topBidder, roundEnd, true));
+            case LOT_STATE -> {
+                RoundState current = open.get(lotId);
+                if (current != null && version > current.version()) {
+                    open.put(lotId, new RoundState(lotId, version, current.item(), price, topBidder, roundEnd, true));
+                }
+                // i segmenti scritti prima dei massimi nascosti non hanno il campo
+                raise(maximums, lotId, new Maximum(version, in.available() >= Long.BYTES ? in.readLong() : 0));
+            }
+            case LOT_CLOSED -> {
+                open.remove(lotId);
+                maximums.remove(lotId);
+            }
+            default -> throw new IOException("Tipo di record sconosciuto: " + type);
+        }
+        return lotId;
+    }
+
+    private static List<Path> list(Path directory) throws IOException {
+        try (Stream<Path> files = Files.list(directory)) {
+            return files.toList();
+        }
+    }
+
+    /**
+     * File della directory con il prefisso dato, in ordine crescente di numero.
+     */
+    private static List<Path> numbered(Path directory, String prefix, String suffix) throws IOException {
+        return list(directory).stream()
+                .filter(file -> number(file.getFileName().toString(), prefix, suffix) > 0)
+                .sorted(Comparator.comparingLong(file -> number(file.getFileName().toString(), prefix, suffix)))
+                .toList();
+    }
+
+    private static long lastNumber(Path directory, String prefix, String suffix) throws IOException {
+        List<Path> files = numbered(directory, prefix, suffix);
+        return files.isEmpty() ? 0 : number(files.getLast().getFileName().toString(), prefix, suffix);
+    }
+
+    private static String fileName(String prefix, long number, String suffix) {
+        return String.format("%s%06d%s", prefix, number, suffix);
+    }
+
+    /**
+     * @return numero contenuto nel nome del file, 0 se il nome non ha il formato atteso
+     */
+    private static long number(String name, String prefix, String suffix) {
+        if (!name.startsWith(prefix) || !name.endsWith(suffix)) {
+            return 0;
+        }
+        try {
+            return Long.parseLong(name, prefix.length(), name.length() - suffix.length(), 10);
+        } catch (NumberFormatException ex) {
+            return 0;
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package it.unibz.auction.engine;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limiti della chat, comuni a tutti i front end di un {@link AuctionEngine}.
+ * <p>
+ * Ogni mittente ha il proprio {@link TokenBucket}: chi lo esaurisce viene
+ * respinto. Un secondo secchiello, globale, misura la diffusione: oltre quella
+ * soglia la chat viene campionata e solo un messaggio ogni
+ * {@code auction.chat.sampleEvery} raggiunge tutti; gli altri tornano al solo
+ * mittente. Le offerte non passano mai di qui.
+ */
+public final class ChatThrottle {
+
+    /**
+     * Esito di {@link #admit(TokenBucket)}.
+     */
+    public enum Verdict {
+        /** da diffondere a tutti */
+        BROADCAST,
+        /** escluso dal campionamento: solo il mittente lo riceve */
+        SENDER_ONLY,
+        /** il mittente ha superato il proprio limite */
+        REJECTED
+    }
+
+    private static final double SENDER_RATE = Double.parseDouble(System.getProperty("auction.chat.ratePerSecond", "1"));
+    private static final int SENDER_BURST = Integer.getInteger("auction.chat.burst", 5);
+    private static final double FANOUT_RATE = Double.parseDouble(System.getProperty("auction.chat.fanoutPerSecond", "20"));
+    private static final int FANOUT_BURST = Integer.getInteger("auction.chat.fanoutBurst", 40);
+    private static final int SAMPLE_EVERY = Integer.getInteger("auction.chat.sampleEvery", 10);
+
+    private final double senderRate;
+    private final int senderBurst;
+    private final TokenBucket fanout;
+    private final int sampleEvery;
+    private final AtomicLong overBudget = new AtomicLong();
+
+    ChatThrottle() {
+        this(SENDER_RATE, SENDER_BURST, FANOUT_RATE, FANOUT_BURST, SAMPLE_EVERY);
+    }
+
+    /**
+     * @param senderRate  messaggi al secondo per mittente
+     * @param senderBurst raffica consentita a un mittente
+     * @param fanoutRate  messaggi al secondo diffusi a tutti prima del campionamento
+     * @param fanoutBurst raffica diffusa a tutti prima del campionamento
+     * @param sampleEvery oltre la soglia, uno ogni quanti messaggi viene diffuso
+     */
+    public ChatThrottle(double senderRate, int senderBurst, double fanoutRate, int fanoutBurst, int sampleEvery) {
+        if (!(senderRate > 0) || senderBurst < 1 || sampleEvery < 1) {
+            throw new IllegalArgumentException("Limiti della chat non validi");
+        }
+        this.senderRate = senderRate;
+        this.senderBurst = senderBurst;
+        this.fanout = new TokenBucket(fanoutRate, fanoutBurst);
+        this.sampleEvery = sampleEvery;
+    }
+
+    /**
+     * Limite di un nuovo mittente, da conservare nella sua sessione.
+     */
+    public TokenBucket newSenderLimit() {
+        return new TokenBucket(senderRate, senderBurst);
+    }
+
+    public Verdict admit(TokenBucket sender) {
+        if (!sender.tryAcquire()) {
+            return Verdict.REJECTED;
+        }
+        if (fanout.tryAcquire()) {
+            return Verdict.BROADCAST;
+        }
+        return overBudget.getAndIncrement() % sampleEvery == 0 ? Verdict.BROADCAST : Verdict.SENDER_ONLY;
+    }
+}
@@ -0,0 +1,411 @@
+package it.unibz.auction.engine;
+
+import it.unibz.auction.rmi.dto.AuctionItem;
+import it.unibz.auction.rmi.dto.AuctionState;
+import it.unibz.auction.rmi.dto.BidOutcome;
+import it.unibz.auction.rmi.exceptions.AuctionException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Lotto in asta con la propria cella di stato lock-free.
+ * <p>
+ * Le offerte su lotti diversi non condividono alcuna struttura mutabile e
+ * quindi non entrano mai in contesa tra loro. Tutti gli importi sono in centesimi.
+ * <p>
+ * Il miglior offerente può avere un'offerta massima nascosta
+ * ({@link #proxyBid(String, long)}), conservata nella stessa cella dello stato
+ * pubblicato. Ogni offerta di un altro partecipante viene confrontata subito
+ * con quel massimo: il rilancio automatico avviene nella stessa transizione e
+ * viene pubblicato solo il prezzo risultante, pari all'offerta perdente più
+ * un incremento (senza superare il massimo del vincitore). A parità di
+ * massimo prevale l'offerta registrata per prima.
+ */
+public final class Lot {
+
+    /**
+     * Stato del lotto come viene reso durevole: lo stato pubblicato e il
+     * massimo nascosto del miglior offerente, che non lascia mai il server.
+     *
+     * @param proxyMaxCents massimo nascosto del miglior offerente, 0 se assente
+     */
+    public record Durable(RoundState round, long proxyMaxCents) {}
+
+    /**
+     * Esito della valutazione di un'offerta.
+     *
+     * @param outcome  risposta per l'offerente
+     * @param accepted nuovo stato pubblicato, null se lo stato pubblicato non è
+     *                 cambiato; un'offerta superata da un massimo nascosto
+     *                 viene rifiutata ma pubblica comunque il rilancio
+     * @param durable  stato da rendere durevole, null se né lo stato pubblicato
+     *                 né il massimo nascosto sono cambiati; con {@code accepted}
+     *                 null è cambiato solo il massimo del miglior offerente
+     */
+    public record Decision(BidOutcome outcome, RoundState accepted, Durable durable) {}
+
+    /**
+     * Esito della valutazione di un gruppo di offerte sullo stesso lotto.
+     *
+     * @param outcomes risposte nello stesso ordine degli importi
+     * @param accepted stato pubblicato, null se nessuna offerta è stata accettata
+     * @param durable  stato da rendere durevole, null se nulla è cambiato
+     */
+    public record BatchDecision(BidOutcome[] outcomes, RoundState accepted, Durable durable) {}
+
+    /** offerta massima nascosta del miglior offerente */
+    private record Proxy(String bidder, long maxCents) {}
+
+    /** stato pubblicato e massimo nascosto, sostituiti insieme con un solo compare-and-set */
+    private record Cell(RoundState round, Proxy proxy) {}
+
+    /** risultato dell'applicazione di un'offerta a una cella */
+    private record Step(Cell next, boolean accepted, String message) {}
+
+    /** offerta in attesa del prossimo ciclo di compensazione */
+    private record Pending(String bidder, long amount, boolean proxy, CompletableFuture<Decision> decision) {}
+
+    /**
+     * Esito di un ciclo di compensazione ({@link #clear()}), da confermare
+     * agli offerenti solo dopo che il nuovo stato è stato reso durevole.
+     *
+     * @param accepted stato pubblicato dal ciclo, null se lo stato pubblicato non è cambiato
+     * @param durable  stato da rendere durevole, null se nulla è cambiato
+     */
+    record Clearing(List<CompletableFuture<Decision>> waiters, BidOutcome[] outcomes, RoundState accepted,
+                    Durable durable) {
+
+        void complete() {
+            for (int i = 0; i < outcomes.length; i++) {
+                waiters.get(i).complete(new Decision(outcomes[i], accepted, durable));
+            }
+        }
+    }
+
+    private final long id;
+    private final AuctionItem item;
+    private final AtomicReference<Cell> state;
+    private final Duration softClose;
+    private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+    /** ultimo snapshot costruito: letture e notifiche condividono la stessa istanza finché la versione non cambia */
+    private volatile AuctionState snapshot;
+
+    /**
+     * @param softClose finestra di chiusura morbida: un'offerta accettata negli
+     *                  ultimi {@code softClose} prolunga il round della stessa durata
+     *                  ({@link Duration#ZERO} per disattivarla)
+     */
+    Lot(long id, AuctionItem item, Instant now, Duration softClose) {
+        this(new Durable(RoundState.open(id, item, now), 0), softClose);
+    }
+
+    /**
+     * Ricostruisce un lotto, con l'eventuale massimo nascosto, a partire da uno
+     * stato già pubblicato, ad esempio riletto dal journal.
+     */
+    Lot(Durable restored, Duration softClose) {
+        RoundState round = restored.round();
+        this.id = round.lotId();
+        this.item = round.item();
+        this.softClose = softClose;
+        Proxy proxy = restored.proxyMaxCents() > 0 && round.topBidder() != null
+                ? new Proxy(round.topBidder(), restored.proxyMaxCents())
+                : null;
+        this.state = new AtomicReference<>(new Cell(round, proxy));
+    }
+
+    public long id() {
+        return id;
+    }
+
+    public AuctionItem item() {
+        return item;
+    }
+
+    public RoundState state() {
+        return state.get().round();
+    }
+
+    /**
+     * @return stato pubblicato e massimo nascosto letti insieme
+     */
+    Durable durable() {
+        return durable(state.get());
+    }
+
+    public AuctionState snapshot() {
+        return snapshot(state());
+    }
+
+    /**
+     * Snapshot di uno stato pubblicato da questo lotto. Le versioni di un lotto
+     * sono univoche, quindi lo snapshot in cache è valido finché la versione coincide.
+     */
+    public AuctionState snapshot(RoundState published) {
+        AuctionState cached = snapshot;
+        if (cached == null || cached.version() != published.version()) {
+            cached = published.toSnapshot();
+            snapshot = cached;
+        }
+        return cached;
+    }
+
+    Decision bid(String bidder, long amount) throws AuctionException {
+        return decide(bidder, amount, false);
+    }
+
+    /**
+     * Registra l'offerta massima nascosta di {@code bidder}. Se supera il
+     * massimo del miglior offerente il prezzo sale solo quanto basta a
+     * superarlo; altrimenti il miglior offerente rilancia automaticamente e
+     * l'offerta viene rifiutata. Il miglior offerente può alzare il proprio
+     * massimo senza cambiare il prezzo.
+     */
+    Decision proxyBid(String bidder, long maxCents) throws AuctionException {
+        return decide(bidder, maxCents, true);
+    }
+
+    private Decision decide(String bidder, long amount, boolean proxy) throws AuctionException {
+        while (true) {
+            Cell current = state.get();
+            RoundState round = current.round();
+            if (!round.active()) {
+                throw new AuctionException("Il lotto " + id + " non accetta più offerte");
+            }
+            long minimumRequired = round.minimumRequired();
+            if (amount < minimumRequired) {
+                return underbid(round, amount);
+            }
+            Step step = apply(current, bidder, amount, proxy);
+            Cell next = step.next();
+            if (next == current || state.compareAndSet(current, next)) {
+                RoundState published = next.round();
+                return new Decision(new BidOutcome(step.accepted(), amount, minimumRequired,
+                        step.message(), snapshot(published)), published != round ? published : null,
+                        next != current ? durable(next) : null);
+            }
+        }
+    }
+
+    /**
+     * Rifiuto di un importo inferiore al minimo di uno stato pubblicato. Il
+     * minimo di un lotto non diminuisce mai, quindi il rifiuto resta valido
+     * anche se nel frattempo lo stato è cambiato.
+     */
+    Decision underbid(RoundState current, long amount) {
+        return new Decision(new BidOutcome(false, amount, current.minimumRequired(),
+                "Offerta troppo bassa", snapshot(current)), null, null);
+    }
+
+    /**
+     * Accoda un'offerta per il prossimo {@link #clear()}, senza toccare lo stato.
+     *
+     * @param proxy true per un'offerta massima nascosta
+     * @return esito, disponibile alla fine del ciclo di compensazione
+     */
+    CompletableFuture<Decision> enqueue(String bidder, long amount, boolean proxy) {
+        Pending bid = new Pending(bidder, amount, proxy, new CompletableFuture<>());
+        pending.add(bid);
+        if (!state().active()) {
+            // chiuso dopo l'ultimo ciclo: nessun altro svuoterà la coda
+            rejectPending("Il lotto " + id + " non accetta più offerte");
+        }
+        return bid.decision();
+    }
+
+    /**
+     * Compensa in un solo passo le offerte accodate: vengono valutate dalla
+     * più alta alla più bassa (a parità, in ordine di arrivo) e il risultato
+     * viene pubblicato con un solo compare-and-set. Chi arriva nello stesso
+     * ciclo non ha quindi vantaggi di tempo: vince l'importo più alto. Va
+     * invocato da un solo thread alla volta per lotto; su un lotto chiuso
+     * rifiuta tutte le offerte in attesa.
+     *
+     * @return esito del ciclo, null se non c'erano offerte o il lotto è chiuso
+     */
+    Clearing clear() {
+        List<Pending> batch = new ArrayList<>();
+        for (Pending bid; (bid = pending.poll()) != null; ) {
+            batch.add(bid);
+        }
+        if (batch.isEmpty()) {
+            return null;
+        }
+        batch.sort(Comparator.comparingLong(Pending::amount).reversed());
+        List<CompletableFuture<Decision>> waiters = batch.stream().map(Pending::decision).toList();
+        BidOutcome[] outcomes = new BidOutcome[batch.size()];
+        long[] minimums = new long[batch.size()];
+        boolean[] accepted = new boolean[batch.size()];
+        String[] messages = new String[batch.size()];
+        while (true) {
+            Cell cell = state.get();
+            RoundState base = cell.round();
+            if (!base.active()) {
+                AuctionException closed = new AuctionException("Il lotto " + id + " non accetta più offerte");
+                waiters.forEach(waiter -> waiter.completeExceptionally(closed));
+                return null;
+            }
+            Cell working = cell;
+            for (int i = 0; i < batch.size(); i++) {
+                Pending bid = batch.get(i);
+                minimums[i] = working.round().minimumRequired();
+                if (bid.amount() < minimums[i]) {
+                    accepted[i] = false;
+                    messages[i] = "Offerta troppo bassa";
+                    continue;
+                }
+                Step step = apply(working, bid.bidder(), bid.amount(), bid.proxy());
+                working = step.next();
+                accepted[i] = step.accepted();
+                messages[i] = step.message();
+            }
+            if (working == cell || state.compareAndSet(cell, working)) {
+                RoundState published = working.round();
+                AuctionState snapshot = snapshot(published);
+                for (int i = 0; i < outcomes.length; i++) {
+                    outcomes[i] = new BidOutcome(accepted[i], batch.get(i).amount(), minimums[i], messages[i], snapshot);
+                }
+                return new Clearing(waiters, outcomes, published == base ? null : published,
+                        working == cell ? null : durable(working));
+            }
+        }
+    }
+
+    /**
+     * Rifiuta le offerte accodate senza valutarle; usato quando il lotto è
+     * chiuso, le offerte sono sospese o il motore si arresta.
+     */
+    void rejectPending(String reason) {
+        AuctionException rejected = new AuctionException(reason);
+        for (Pending bid; (bid = pending.poll()) != null; ) {
+            bid.decision().completeExceptionally(rejected);
+        }
+    }
+
+    /**
+     * Valuta gli importi in ordine, ciascuno rispetto allo stato prodotto dai
+     * precedenti, e pubblica il risultato con un solo compare-and-set.
+     */
+    BatchDecision bidAll(String bidder, long[] amounts) {
+        BidOutcome[] outcomes = new BidOutcome[amounts.length];
+        long[] minimums = new long[amounts.length];
+        boolean[] accepted = new boolean[amounts.length];
+        String[] messages = new String[amounts.length];
+        while (true) {
+            Cell cell = state.get();
+            RoundState base = cell.round();
+            if (!base.active()) {
+                AuctionState snapshot = snapshot(base);
+                for (int i = 0; i < amounts.length; i++) {
+                    outcomes[i] = new BidOutcome(false, amounts[i], base.minimumRequired(),
+                            "Il lotto " + id + " non accetta più offerte", snapshot);
+                }
+                return new BatchDecision(outcomes, null, null);
+            }
+            Cell working = cell;
+            for (int i = 0; i < amounts.length; i++) {
+                minimums[i] = working.round().minimumRequired();
+                if (amounts[i] < minimums[i]) {
+                    accepted[i] = false;
+                    messages[i] = "Offerta troppo bassa";
+                    continue;
+                }
+                Step step = apply(working, bidder, amounts[i], false);
+                working = step.next();
+                accepted[i] = step.accepted();
+                messages[i] = step.message();
+            }
+            if (working == cell || state.compareAndSet(cell, working)) {
+                RoundState published = working.round();
+                AuctionState snapshot = snapshot(published);
+                for (int i = 0; i < amounts.length; i++) {
+                    outcomes[i] = new BidOutcome(accepted[i], amounts[i], minimums[i], messages[i], snapshot);
+                }
+                return new BatchDecision(outcomes, published == base ? null : published,
+                        working == cell ? null : durable(working));
+            }
+        }
+    }
+
+    /**
+     * Chiude il round del lotto se la scadenza è stata raggiunta.
+     *
+     * @param now istante corrente
+     * @return stato finale; lo stato ancora attivo se la scadenza è stata
+     *         prorogata da una chiusura morbida; null se il lotto era già chiuso
+     */
+    RoundState closeIfDue(Instant now) {
+        Cell current;
+        RoundState closed;
+        do {
+            current = state.get();
+            RoundState round = current.round();
+            if (!round.active()) {
+                return null;
+            }
+            if (round.roundEnd().isAfter(now)) {
+                return round;
+            }
+            closed = round.closed();
+        } while (!state.compareAndSet(current, new Cell(closed, null)));
+        return closed;
+    }
+
+    /**
+     * Applica a una cella attiva un'offerta non inferiore al minimo richiesto.
+     * Un'offerta semplice che vince fissa il prezzo al proprio importo; un
+     * massimo nascosto che vince lo fissa appena sopra il massimo sconfitto.
+     *
+     * @return passo con la nuova cella, o con la stessa cella se nulla cambia
+     */
+    private Step apply(Cell from, String bidder, long amount, boolean proxy) {
+        RoundState round = from.round();
+        Proxy held = from.proxy();
+        long increment = item.minIncrementCents();
+        if (bidder.equals(round.topBidder())) {
+            if (!proxy) {
+                Proxy kept = held != null && held.maxCents() > amount ? held : null;
+                return new Step(new Cell(raise(round, bidder, amount), kept), true, "Offerta accettata");
+            }
+            if (held != null && amount <= held.maxCents()) {
+                return new Step(from, false, "Il massimo registrato è già pari o superiore");
+            }
+            return new Step(new Cell(round, new Proxy(bidder, amount)), true, "Offerta massima aggiornata");
+        }
+        if (held == null || amount > held.maxCents()) {
+            long defended = held != null ? held.maxCents() : round.currentPriceCents();
+            long price = proxy ? Math.min(amount, defended + increment) : amount;
+            Proxy registered = proxy && amount > price ? new Proxy(bidder, amount) : null;
+            return new Step(new Cell(raise(round, bidder, price), registered), true,
+                    proxy ? "Offerta massima registrata" : "Offerta accettata");
+        }
+        long price = Math.min(held.maxCents(), amount + increment);
+        Proxy kept = held.maxCents() > price ? held : null;
+        return new Step(new Cell(raise(round, held.bidder(), price), kept), false,
+                "Superata dall'offerta massima di un altro partecipante");
+    }
+
+    private static Durable durable(Cell cell) {
+        return new Durable(cell.round(), cell.proxy() != null ? cell.proxy().maxCents() : 0);
+    }
+
+    private RoundState raise(RoundState round, String bidder, long priceCents) {
+        return round.withBid(bidder, priceCents, extendedEnd(round.roundEnd()));
+    }
+
+    private Instant extendedEnd(Instant roundEnd) {
+        if (softClose.isZero()) {
+            return roundEnd;
+        }
+        Instant extended = Instant.now().plus(softClose);
+        return extended.isAfter(roundEnd) ? extended : roundEnd;
+    }
+}
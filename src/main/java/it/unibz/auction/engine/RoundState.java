@@ -0,0 +1,83 @@
+package it.unibz.auction.engine;
+
+import it.unibz.auction.rmi.dto.AuctionDelta;
+import it.unibz.auction.rmi.dto.AuctionItem;
+import it.unibz.auction.rmi.dto.AuctionState;
+
+import java.time.Instant;
+
+/**
+ * Stato immutabile e versionato del round di un lotto.
+ * <p>
+ * Ogni transizione produce una nuova istanza con versione incrementata, che il
+ * lotto pubblica tramite compare-and-set: le letture non richiedono lock e
+ * un'offerta viene accettata solo se lo stato su cui è stata valutata è ancora
+ * quello corrente.
+ *
+ * @param lotId             identificativo del lotto (0 per lo stato di asta conclusa)
+ * @param version           versione monotona dello stato del lotto
+ * @param item              articolo in asta, null se non ci sono più articoli
+ * @param currentPriceCents prezzo corrente in centesimi
+ * @param topBidder         miglior offerente, null se nessuno ha offerto
+ * @param roundEnd          istante di fine round
+ * @param active            true se il round accetta offerte
+ */
+public record RoundState(
+        long lotId,
+        long version,
+        AuctionItem item,
+        long currentPriceCents,
+        String topBidder,
+        Instant roundEnd,
+        boolean active
+) {
+
+    /**
+     * Stato senza articoli, usato prima dell'avvio e dopo l'ultimo lotto.
+     */
+    static RoundState idle() {
+        return new RoundState(0, 0, null, 0, null, null, false);
+    }
+
+    static RoundState open(long lotId, AuctionItem item, Instant now) {
+        return new RoundState(lotId, 1, item, item.startPriceCents(), null,
+                now.plusSeconds(item.durationSeconds()), true);
+    }
+
+    RoundState withBid(String bidder, long amountCents, Instant newRoundEnd) {
+        return new RoundState(lotId, version + 1, item, amountCents, bidder, newRoundEnd, true);
+    }
+
+    RoundState closed() {
+        return new RoundState(lotId, version + 1, item, currentPriceCents, topBidder, roundEnd, false);
+    }
+
+    public long minimumRequired() {
+        return currentPriceCents + item.minIncrementCents();
+    }
+
+    public AuctionState toSnapshot() {
+        if (item == null) {
+            return new AuctionState(lotId, version, null, null, 0, 0, null, null, false);
+        }
+        return new AuctionState(
+                lotId,
+                version,
+                item.name(),
+                item.description(),
+                currentPriceCents,
+                item.minIncrementCents(),
+                topBidder,
+                active ? roundEnd : null,
+                active
+        );
+    }
+
+    /**
+     * Variazione rispetto allo stato precedente dello stesso round, valida solo
+     * per gli stati prodotti da {@link #withBid(String, long, Instant)}.
+     */
+    public AuctionDelta toDelta() {
+        return new AuctionDelta(lotId, version, currentPriceCents, topBidder, roundEnd);
+    }
+}
@@ -0,0 +1,313 @@
+package it.unibz.auction.engine;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Timer gerarchico a ruote temporali (Varghese &amp; Lauck) per le scadenze dei lotti.
+ * <p>
+ * Armare e cancellare un timeout costano O(1) per il chiamante: le richieste
+ * vengono impilate senza lock né allocazioni aggiuntive (stack di Treiber
+ * intrusivi) e il thread del timer le applica a ogni tick. Un timeout non si
+ * sposta: la chiusura morbida, allo scadere del primo, ne arma uno nuovo per
+ * la fine prorogata. Le ruote di livello superiore coprono intervalli sempre
+ * più ampi e i loro bucket vengono ridistribuiti sui livelli inferiori man mano
+ * che la scadenza si avvicina, senza mantenere alcun heap ordinato.
+ * <p>
+ * I task vengono eseguiti sul thread del timer: devono essere brevi e non bloccanti.
+ */
+final class TimingWheel {
+
+    /**
+     * Timeout armato sul timer.
+     */
+    interface Timeout {
+
+        /**
+         * Cancella il timeout.
+         *
+         * @return true se il timeout non era ancora scaduto né cancellato
+         */
+        boolean cancel();
+
+        boolean isExpired();
+    }
+
+    private static final int LEVELS = 4;
+    private static final VarHandle STATE;
+    private static final VarHandle ARMS;
+    private static final VarHandle CANCELS;
+
+    static {
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.lookup();
+            STATE = lookup.findVarHandle(Entry.class, "state", int.class);
+            ARMS = lookup.findVarHandle(TimingWheel.class, "pendingArms", Entry.class);
+            CANCELS = lookup.findVarHandle(TimingWheel.class, "pendingCancels", Entry.class);
+        } catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final long tickNanos;
+    private final int wheelBits;
+    private final int wheelMask;
+    private final Bucket[][] wheels;
+    private final Thread ticker;
+    private final long startNanos;
+
+    // confinato al thread del timer
+    private long currentTick;
+
+    // cima degli stack di richieste in attesa, scritte dai chiamanti via CAS
+    private volatile Entry pendingArms;
+    private volatile Entry pendingCancels;
+
+    private volatile boolean running = true;
+
+    /**
+     * @param name      nome del thread del timer
+     * @param tick      durata di un tick
+     * @param unit      unità di misura di {@code tick}
+     * @param wheelSize numero di bucket per livello, potenza di due
+     */
+    TimingWheel(String name, long tick, TimeUnit unit, int wheelSize) {
+        if (wheelSize < 2 || Integer.bitCount(wheelSize) != 1) {
+            throw new IllegalArgumentException("wheelSize deve essere una potenza di due: " + wheelSize);
+        }
+        this.tickNanos = Math.max(1, unit.toNanos(tick));
+        this.wheelBits = Integer.numberOfTrailingZeros(wheelSize);
+        this.wheelMask = wheelSize - 1;
+        this.wheels = new Bucket[LEVELS][wheelSize];
+        for (Bucket[] wheel : wheels) {
+            for (int i = 0; i < wheelSize; i++) {
+                wheel[i] = new Bucket();
+            }
+        }
+        this.startNanos = System.nanoTime();
+        this.ticker = new Thread(this::run, name);
+        this.ticker.setDaemon(true);
+    }
+
+    void start() {
+        ticker.start();
+    }
+
+    void shutdown() {
+        running = false;
+        ticker.interrupt();
+    }
+
+    /**
+     * Arma un timeout.
+     *
+     * @param task  azione da eseguire alla scadenza
+     * @param delay ritardo rispetto a ora
+     * @param unit  unità di misura del ritardo
+     * @return handle per cancellare il timeout
+     */
+    Timeout schedule(Runnable task, long delay, TimeUnit unit) {
+        long deadline = System.nanoTime() + Math.max(0, unit.toNanos(delay)) - startNanos;
+        Entry entry = new Entry(task, (deadline + tickNanos - 1) / tickNanos);
+        Entry top;
+        do {
+            top = pendingArms;
+            entry.nextArm = top;
+        } while (!ARMS.compareAndSet(this, top, entry));
+        return entry;
+    }
+
+    /**
+     * Sposta un timeout a una nuova scadenza: cancella il precedente e ne arma uno nuovo.
+     */
+    Timeout reschedule(Timeout previous, Runnable task, long delay, TimeUnit unit) {
+        if (previous != null) {
+            previous.cancel();
+        }
+        return schedule(task, delay, unit);
+    }
+
+    private void run() {
+        while (running) {
+            long wakeAt = startNanos + currentTick * tickNanos;
+            long sleep;
+            while ((sleep = wakeAt - System.nanoTime()) > 0) {
+                LockSupport.parkNanos(this, sleep);
+                if (!running) {
+                    return;
+                }
+            }
+            advance();
+        }
+    }
+
+    private void advance() {
+        long tick = currentTick;
+        if ((tick & wheelMask) == 0 && tick > 0) {
+            cascade(tick);
+        }
+        removeCancelled();
+        Entry armed = (Entry) ARMS.getAndSet(this, (Entry) null);
+        while (armed != null) {
+            Entry next = armed.nextArm;
+            armed.nextArm = null;
+            if (armed.state == Entry.ACTIVE) {
+                place(armed, tick);
+            }
+            armed = next;
+        }
+        Bucket bucket = wheels[0][(int) (tick & wheelMask)];
+        Entry entry = bucket.head;
+        bucket.head = null;
+        bucket.tail = null;
+        while (entry != null) {
+            Entry next = entry.next;
+            entry.bucket = null;
+            entry.prev = null;
+            entry.next = null;
+            entry.expire();
+            entry = next;
+        }
+        currentTick = tick + 1;
+    }
+
+    /**
+     * Ridistribuisce i bucket dei livelli superiori che iniziano in questo tick.
+     */
+    private void cascade(long tick) {
+        for (int level = 1; level < LEVELS; level++) {
+            int index = (int) ((tick >>> (wheelBits * level)) & wheelMask);
+            Bucket bucket = wheels[level][index];
+            Entry entry = bucket.head;
+            bucket.head = null;
+            bucket.tail = null;
+            while (entry != null) {
+                Entry next = entry.next;
+                entry.bucket = null;
+                entry.prev = null;
+                entry.next = null;
+                place(entry, tick);
+                entry = next;
+            }
+            if (index != 0) {
+                break;
+            }
+        }
+    }
+
+    private void place(Entry entry, long tick) {
+        long target = Math.max(entry.deadlineTick, tick);
+        long diff = target - tick;
+        int level = 0;
+        while (level < LEVELS - 1 && diff >= 1L << (wheelBits * (level + 1))) {
+            level++;
+        }
+        long span = 1L << (wheelBits * (level + 1));
+        if (diff >= span) {
+            // oltre l'orizzonte dell'ultima ruota: verrà ricollocato al prossimo giro
+            target = tick + span - 1;
+        }
+        int index = (int) ((target >>> (wheelBits * level)) & wheelMask);
+        wheels[level][index].append(entry);
+    }
+
+    private void removeCancelled() {
+        Entry entry = (Entry) CANCELS.getAndSet(this, (Entry) null);
+        while (entry != null) {
+            Entry next = entry.nextCancel;
+            entry.nextCancel = null;
+            if (entry.bucket != null) {
+                entry.bucket.remove(entry);
+            }
+            entry = next;
+        }
+    }
+
+    private final class Entry implements Timeout {
+        private static final int ACTIVE = 0;
+        private static final int CANCELLED = 1;
+        private static final int EXPIRED = 2;
+
+        private final Runnable task;
+        private final long deadlineTick;
+        private volatile int state = ACTIVE;
+
+        // collegamenti negli stack di richieste, pubblicati dal CAS sulla cima
+        private Entry nextArm;
+        private Entry nextCancel;
+
+        // confinati al thread del timer
+        private Bucket bucket;
+        private Entry prev;
+        private Entry next;
+
+        private Entry(Runnable task, long deadlineTick) {
+            this.task = task;
+            this.deadlineTick = deadlineTick;
+        }
+
+        @Override
+        public boolean cancel() {
+            if (!STATE.compareAndSet(this, ACTIVE, CANCELLED)) {
+                return false;
+            }
+            Entry top;
+            do {
+                top = pendingCancels;
+                nextCancel = top;
+            } while (!CANCELS.compareAndSet(TimingWheel.this, top, this));
+            return true;
+        }
+
+        @Override
+        public boolean isExpired() {
+            return state == EXPIRED;
+        }
+
+        private void expire() {
+            if (!STATE.compareAndSet(this, ACTIVE, EXPIRED)) {
+                return;
+            }
+            try {
+                task.run();
+            } catch (RuntimeException ex) {
+                System.err.printf("⚠️ Errore in un task del timer: %s%n", ex);
+            }
+        }
+    }
+
+    private static final class Bucket {
+        private Entry head;
+        private Entry tail;
+
+        private void append(Entry entry) {
+            entry.bucket = this;
+            entry.prev = tail;
+            entry.next = null;
+            if (tail == null) {
+                head = entry;
+            } else {
+                tail.next = entry;
+            }
+            tail = entry;
+        }
+
+        private void remove(Entry entry) {
+            if (entry.prev == null) {
+                head = entry.next;
+            } else {
+                entry.prev.next = entry.next;
+            }
+            if (entry.next == null) {
+                tail = entry.prev;
+            } else {
+                entry.next.prev = entry.prev;
+            }
+            entry.bucket = null;
+            entry.prev = null;
+            entry.next = null;
+        }
+    }
+}
@@ -0,0 +1,50 @@
+package it.unibz.auction.engine;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Limitatore a secchiello di gettoni, lock-free.
+ * <p>
+ * Invece di un contatore di gettoni ricaricato periodicamente tiene un solo
+ * istante teorico di arrivo (GCRA): ogni richiesta lo sposta avanti di un
+ * intervallo di emissione e viene rifiutata se lo porterebbe oltre la
+ * raffica consentita. Una richiesta costa una lettura dell'orologio e un
+ * compare-and-set, senza allocazioni.
+ */
+public final class TokenBucket {
+
+    private final long intervalNanos;
+    private final long burstNanos;
+    private final AtomicLong theoreticalArrival;
+
+    /**
+     * @param permitsPerSecond gettoni ricaricati al secondo
+     * @param burst            gettoni disponibili in una raffica, almeno 1
+     */
+    public TokenBucket(double permitsPerSecond, int burst) {
+        if (!(permitsPerSecond > 0) || burst < 1) {
+            throw new IllegalArgumentException("Limite non valido: " + permitsPerSecond + "/s, raffica " + burst);
+        }
+        this.intervalNanos = Math.max(1, (long) (TimeUnit.SECONDS.toNanos(1) / permitsPerSecond));
+        this.burstNanos = intervalNanos * burst;
+        this.theoreticalArrival = new AtomicLong(System.nanoTime() - burstNanos);
+    }
+
+    /**
+     * @return true se un gettone era disponibile ed è stato consumato
+     */
+    public boolean tryAcquire() {
+        long now = System.nanoTime();
+        while (true) {
+            long tat = theoreticalArrival.get();
+            long next = Math.max(tat, now - burstNanos) + intervalNanos;
+            if (next - now > 0) {
+                return false;
+            }
+            if (theoreticalArrival.compareAndSet(tat, next)) {
+                return true;
+            }
+        }
+    }
+}
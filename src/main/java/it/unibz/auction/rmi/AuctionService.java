@@ -1,10 +1,13 @@
 package it.unibz.auction.rmi;
 
 import it.unibz.auction.rmi.dto.AuctionState;
+import it.unibz.auction.rmi.dto.BidOutcome;
+import it.unibz.auction.rmi.dto.BidRequest;
 import it.unibz.auction.rmi.exceptions.AuctionException;
 
 import java.rmi.Remote;
 import java.rmi.RemoteException;
+import java.util.List;
 
 /**
  * API remota esposta dal server RMI dell'asta.
@@ -13,21 +16,38 @@ public interface AuctionService extends Remote {
 
     /**
      * Registra un nuovo client all'asta.
+     * <p>
+     * L'handle restituito identifica la sessione in tutte le chiamate
+     * successive: il nickname viaggia solo qui e nessun client può offrire a
+     * nome di un altro. Un handle di una sessione rimossa non è più valido.
      *
      * @param nickname nickname proposto
      * @param callback callback remoto per notifiche push
+     * @return handle della sessione
      * @throws RemoteException   problemi di comunicazione RMI
      * @throws AuctionException  validazione nickname o stato asta non disponibile
      */
-    void registerClient(String nickname, ClientCallback callback) throws RemoteException, AuctionException;
+    long registerClient(String nickname, ClientCallback callback) throws RemoteException, AuctionException;
 
     /**
      * Deregistra un client. È idempotente.
      *
-     * @param nickname nickname da rimuovere
+     * @param session handle della sessione da chiudere
      * @throws RemoteException problemi di comunicazione RMI
      */
-    void unregisterClient(String nickname) throws RemoteException;
+    void unregisterClient(long session) throws RemoteException;
+
+    /**
+     * Rinnova il lease della sessione. Ogni altra chiamata del client lo
+     * rinnova a sua volta; una sessione senza chiamate per la durata del
+     * lease viene rimossa e il client deve registrarsi di nuovo.
+     *
+     * @param session handle della sessione
+     * @return durata del lease in millisecondi
+     * @throws RemoteException  problemi di comunicazione RMI
+     * @throws AuctionException client non registrato o lease già scaduto
+     */
+    long renewLease(long session) throws RemoteException, AuctionException;
 
     /**
      * Restituisce lo stato corrente dell'asta.
@@ -38,24 +58,173 @@ public interface AuctionService extends Remote {
     AuctionState getCurrentState() throws RemoteException;
 
     /**
-     * Sottomette un'offerta per conto del client indicato.
+     * Restituisce lo stato corrente di un lotto attivo.
+     *
+     * @param lotId identificativo del lotto
+     * @return stato del lotto
+     * @throws RemoteException  problemi di comunicazione RMI
+     * @throws AuctionException lotto inesistente o già chiuso
+     */
+    AuctionState getCurrentState(long lotId) throws RemoteException, AuctionException;
+
+    /**
+     * Restituisce lo stato di tutti i lotti attualmente aperti, in ordine di apertura.
+     *
+     * @return stati dei lotti attivi
+     * @throws RemoteException problemi di comunicazione RMI
+     */
+    List<AuctionState> getActiveLots() throws RemoteException;
+
+    /**
+     * Riallinea un client che ha perso variazioni di un lotto o non ne conosce
+     * lo stato completo.
+     *
+     * @param lotId   identificativo del lotto
+     * @param version ultima versione nota al client (0 se nessuna)
+     * @return stato completo del lotto, oppure null se il client è già aggiornato
+     * @throws RemoteException  problemi di comunicazione RMI
+     * @throws AuctionException lotto inesistente o già chiuso
+     */
+    AuctionState getStateSince(long lotId, long version) throws RemoteException, AuctionException;
+
+    /**
+     * Sottomette un'offerta sul lotto aperto da più tempo per conto della sessione indicata.
+     *
+     * @param session  handle della sessione che offre
+     * @param amount   importo dell'offerta
+     * @throws RemoteException  problemi di comunicazione RMI
+     * @throws AuctionException validazione dell'offerta fallita
+     */
+    void submitBid(long session, double amount) throws RemoteException, AuctionException;
+
+    /**
+     * Sottomette un'offerta su un lotto specifico per conto della sessione indicata.
+     *
+     * @param session  handle della sessione che offre
+     * @param lotId    identificativo del lotto
+     * @param amount   importo dell'offerta
+     * @throws RemoteException  problemi di comunicazione RMI
+     * @throws AuctionException lotto non attivo o validazione dell'offerta fallita
+     */
+    void submitBid(long session, long lotId, double amount) throws RemoteException, AuctionException;
+
+    /**
+     * Sottomette un'offerta sul lotto aperto da più tempo e ne restituisce
+     * direttamente l'esito, senza callback {@link ClientCallback#onBidOutcome}.
      *
-     * @param nickname nickname del client che offre
+     * @param session  handle della sessione che offre
      * @param amount   importo dell'offerta
+     * @return esito dell'offerta
      * @throws RemoteException  problemi di comunicazione RMI
      * @throws AuctionException validazione dell'offerta fallita
      */
-    void submitBid(String nickname, double amount) throws RemoteException, AuctionException;
+    BidOutcome placeBid(long session, double amount) throws RemoteException, AuctionException;
+
+    /**
+     * Sottomette un'offerta su un lotto specifico e ne restituisce direttamente
+     * l'esito, senza callback {@link ClientCallback#onBidOutcome}.
+     *
+     * @param session  handle della sessione che offre
+     * @param lotId    identificativo del lotto
+     * @param amount   importo dell'offerta
+     * @return esito dell'offerta
+     * @throws RemoteException  problemi di comunicazione RMI
+     * @throws AuctionException lotto non attivo o validazione dell'offerta fallita
+     */
+    BidOutcome placeBid(long session, long lotId, double amount) throws RemoteException, AuctionException;
+
+    /**
+     * Come {@link #placeBid(long, double)}, con l'importo in centesimi: il
+     * confronto con il minimo richiesto è esatto.
+     *
+     * @param session     handle della sessione che offre
+     * @param amountCents importo dell'offerta in centesimi
+     * @return esito dell'offerta
+     * @throws RemoteException  problemi di comunicazione RMI
+     * @throws AuctionException validazione dell'offerta fallita
+     */
+    BidOutcome placeBidCents(long session, long amountCents) throws RemoteException, AuctionException;
+
+    /**
+     * Come {@link #placeBid(long, long, double)}, con l'importo in centesimi.
+     *
+     * @param session     handle della sessione che offre
+     * @param lotId       identificativo del lotto
+     * @param amountCents importo dell'offerta in centesimi
+     * @return esito dell'offerta
+     * @throws RemoteException  problemi di comunicazione RMI
+     * @throws AuctionException lotto non attivo o validazione dell'offerta fallita
+     */
+    BidOutcome placeBidCents(long session, long lotId, long amountCents) throws RemoteException, AuctionException;
+
+    /**
+     * Come {@link #placeBidCents(long, long, long)}, ma ripetibile senza
+     * rischi: un'offerta con un id già visto da questa sessione non viene
+     * applicata di nuovo e restituisce l'esito della prima esecuzione.
+     * <p>
+     * Gli id sono scelti dal client, tipicamente una sequenza crescente; la
+     * sessione ricorda gli esiti degli ultimi {@code auction.bids.dedupWindow}
+     * id. Un client può quindi tenere in volo più offerte contemporaneamente,
+     * purché non più della finestra, e ripeterle dopo un errore di rete finché
+     * la sessione è valida. Se la chiamata termina con {@link AuctionException}
+     * l'offerta non è stata applicata.
+     *
+     * @param session     handle della sessione che offre
+     * @param requestId   id dell'offerta, univoco nella sessione
+     * @param lotId       identificativo del lotto, 0 per il lotto aperto da più tempo
+     * @param amountCents importo dell'offerta in centesimi
+     * @return esito dell'offerta
+     * @throws RemoteException  problemi di comunicazione RMI
+     * @throws AuctionException lotto non attivo, validazione fallita o id fuori dalla finestra
+     */
+    BidOutcome placeBidOnce(long session, long requestId, long lotId, long amountCents)
+            throws RemoteException, AuctionException;
+
+    /**
+     * Registra un'offerta massima nascosta sul lotto: il server rilancia per
+     * conto della sessione, un incremento alla volta, fino al massimo indicato.
+     * Le offerte concorrenti vengono risolte nel motore in un solo passo e ai
+     * client arriva solo il prezzo risultante; il massimo non viene mai
+     * pubblicato. Il miglior offerente può alzare il proprio massimo senza
+     * cambiare il prezzo. Gli id di richiesta sono quelli di
+     * {@link #placeBidOnce(long, long, long, long)}.
+     *
+     * @param session   handle della sessione che offre
+     * @param requestId id dell'offerta, univoco nella sessione
+     * @param lotId     identificativo del lotto, 0 per il lotto aperto da più tempo
+     * @param maxCents  importo massimo in centesimi
+     * @return esito dell'offerta; rifiutata se un altro partecipante ha un massimo pari o superiore
+     * @throws RemoteException  problemi di comunicazione RMI
+     * @throws AuctionException lotto non attivo, validazione fallita o id fuori dalla finestra
+     */
+    BidOutcome placeMaxBid(long session, long requestId, long lotId, long maxCents)
+            throws RemoteException, AuctionException;
+
+    /**
+     * Sottomette un insieme di offerte con una sola chiamata remota.
+     * <p>
+     * Le offerte sullo stesso lotto vengono valutate in ordine e applicate con
+     * un'unica transizione di stato; per ogni lotto modificato viene inviato un
+     * solo aggiornamento ai client. Gli esiti sono restituiti direttamente e non
+     * tramite {@link ClientCallback#onBidOutcome}.
+     *
+     * @param session handle della sessione che offre
+     * @param bids    offerte da valutare
+     * @return esiti nello stesso ordine delle offerte
+     * @throws RemoteException  problemi di comunicazione RMI
+     * @throws AuctionException client non registrato o lotto troppo grande
+     */
+    List<BidOutcome> submitBids(long session, List<BidRequest> bids) throws RemoteException, AuctionException;
 
     /**
      * Invia un messaggio di chat agli altri partecipanti.
      *
-     * @param nickname autore del messaggio
-     * @param message  testo del messaggio
+     * @param session handle della sessione dell'autore
+     * @param message testo del messaggio
      * @throws RemoteException  problemi di comunicazione RMI
      * @throws AuctionException validazione del messaggio fallita
      */
-    void sendChatMessage(String nickname, String message) throws RemoteException, AuctionException;
+    void sendChatMessage(long session, String message) throws RemoteException, AuctionException;
 
 }
 
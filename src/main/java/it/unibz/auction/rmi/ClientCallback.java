@@ -1,5 +1,6 @@
 package it.unibz.auction.rmi;
 
+import it.unibz.auction.rmi.dto.AuctionDelta;
 import it.unibz.auction.rmi.dto.AuctionState;
 import it.unibz.auction.rmi.dto.BidOutcome;
 
@@ -8,6 +9,10 @@ import java.rmi.RemoteException;
 
 /**
  * Canale di callback che il server utilizza per notificare il client.
+ * <p>
+ * Lo stato completo di un lotto arriva con {@link #onAuctionUpdate} all'apertura,
+ * alla chiusura e alla registrazione; le offerte accettate producono solo
+ * variazioni ({@link #onAuctionDelta}) da applicare all'ultimo stato ricevuto.
  */
 public interface ClientCallback extends Remote {
 
@@ -15,6 +20,12 @@ public interface ClientCallback extends Remote {
 
     void onAuctionUpdate(AuctionState state) throws RemoteException;
 
+    /**
+     * Variazione di un lotto. Se il client non ha uno stato completo del lotto
+     * si riallinea con {@link AuctionService#getStateSince(long, long)}.
+     */
+    void onAuctionDelta(AuctionDelta delta) throws RemoteException;
+
     void onBidOutcome(BidOutcome outcome) throws RemoteException;
 }
 
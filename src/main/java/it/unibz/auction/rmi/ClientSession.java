@@ -0,0 +1,268 @@
+package it.unibz.auction.rmi;
+
+import it.unibz.auction.engine.TokenBucket;
+import it.unibz.auction.rmi.dto.ItemCatalog;
+
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Sessione di un client registrato con la relativa coda di eventi in uscita.
+ * <p>
+ * Gli eventi vengono accodati dal thread di fan-out e consegnati da un solo
+ * worker alla volta, così da preservare l'ordine per il singolo client senza
+ * bloccare gli altri. Gli eventi d'asta e i testi hanno corsie separate
+ * ({@link ServerEvent.Lane}): una raffica di chat non ritarda mai un
+ * aggiornamento di prezzo. La coda è limitata: gli aggiornamenti di stato dello
+ * stesso lotto vengono fusi mantenendo solo il più recente (una variazione che
+ * segue uno snapshot non consegnato viene applicata allo snapshot), mentre gli altri
+ * eventi in eccesso sono gestiti secondo l'{@link OverflowPolicy} configurata.
+ */
+final class ClientSession {
+
+    /**
+     * Esito dell'accodamento di un evento.
+     */
+    enum EnqueueResult {
+        /** evento accodato (o fuso/scartato), un drain è già in corso */
+        QUEUED,
+        /** evento accodato, il chiamante deve pianificare un drain */
+        SCHEDULE_DRAIN,
+        /** coda piena con politica {@link OverflowPolicy#DISCONNECT} */
+        OVERFLOW
+    }
+
+    private final String nickname;
+    private final ClientCallback callback;
+    private final int capacity;
+    private final OverflowPolicy overflowPolicy;
+    private final TokenBucket chatLimit;
+    private final TokenBucket bidLimit;
+    private final RecentBids recentBids = new RecentBids();
+    /** lotti aperti di cui il client ha già ricevuto la descrizione dell'articolo */
+    private final Set<Long> knownLots = ConcurrentHashMap.newKeySet();
+
+    // protetti dal monitor della sessione
+    private final ArrayDeque<Slot> outbound = new ArrayDeque<>(); // corsia AUCTION
+    private final ArrayDeque<Slot> text = new ArrayDeque<>();     // corsia TEXT
+    private final Map<Object, Slot> pendingByKey = new HashMap<>();
+    /** versione più recente già accodata per ogni lotto aperto, rimossa alla consegna della chiusura */
+    private final Map<Object, Long> queuedVersions = new HashMap<>();
+    private int liveEvents;
+    private boolean draining;
+    private long droppedEvents;
+
+    private volatile boolean closed;
+    /** assegnato da {@link SessionTable#add} prima che la sessione diventi visibile */
+    private long handle = -1;
+    /** ultima chiamata del client, in {@link System#nanoTime()} */
+    private volatile long lastContactNanos = System.nanoTime();
+
+    /**
+     * @param chatLimit limite dei messaggi di chat inviati da questo client
+     * @param bidLimit  limite delle chiamate di offerta di questo client
+     */
+    ClientSession(String nickname, ClientCallback callback, int capacity, OverflowPolicy overflowPolicy,
+                  TokenBucket chatLimit, TokenBucket bidLimit) {
+        if (capacity < 1) {
+            throw new IllegalArgumentException("capacità della coda non valida: " + capacity);
+        }
+        this.nickname = nickname;
+        this.callback = callback;
+        this.capacity = capacity;
+        this.overflowPolicy = overflowPolicy;
+        this.chatLimit = chatLimit;
+        this.bidLimit = bidLimit;
+    }
+
+    long handle() {
+        return handle;
+    }
+
+    void assignHandle(long handle) {
+        this.handle = handle;
+    }
+
+    String nickname() {
+        return nickname;
+    }
+
+    ClientCallback callback() {
+        return callback;
+    }
+
+    TokenBucket chatLimit() {
+        return chatLimit;
+    }
+
+    TokenBucket bidLimit() {
+        return bidLimit;
+    }
+
+    /**
+     * Esiti delle ultime offerte con id di richiesta, per ripetizioni sicure.
+     */
+    RecentBids recentBids() {
+        return recentBids;
+    }
+
+    /**
+     * Registra una chiamata del client, che ne rinnova il lease.
+     */
+    void touch() {
+        lastContactNanos = System.nanoTime();
+    }
+
+    /**
+     * @return true se il client non ha più chiamato il server da {@code cutoffNanos}
+     */
+    boolean idleSince(long cutoffNanos) {
+        return lastContactNanos - cutoffNanos < 0;
+    }
+
+    boolean isClosed() {
+        return closed;
+    }
+
+    synchronized long droppedEvents() {
+        return droppedEvents;
+    }
+
+    synchronized void close() {
+        closed = true;
+        outbound.clear();
+        text.clear();
+        pendingByKey.clear();
+        queuedVersions.clear();
+        liveEvents = 0;
+    }
+
+    /**
+     * Accoda un evento applicando fusione e politica di overflow.
+     *
+     * @return azione richiesta al chiamante
+     */
+    synchronized EnqueueResult enqueue(ServerEvent event) {
+        if (closed) {
+            return EnqueueResult.QUEUED;
+        }
+        Object key = event.coalescingKey();
+        if (key != null && event.version() >= 0) {
+            // lo stesso snapshot può arrivare sia alla registrazione sia dal broadcast di apertura:
+            // un duplicato in coda trasformerebbe la variazione successiva in uno snapshot completo
+            Long queued = queuedVersions.get(key);
+            if (queued != null && queued >= event.version()) {
+                droppedEvents++;
+                return EnqueueResult.QUEUED;
+            }
+            queuedVersions.put(key, event.version());
+        }
+        Slot previous = key != null ? pendingByKey.get(key) : null;
+        if (previous != null) {
+            // l'evento precedente non è ancora stato consegnato: lo sostituisce in coda
+            event = event.mergeWith(previous.event);
+            previous.event = null;
+            liveEvents--;
+            droppedEvents++;
+        } else if (liveEvents >= capacity && !makeRoom(event)) {
+            return overflowPolicy == OverflowPolicy.DISCONNECT ? EnqueueResult.OVERFLOW : EnqueueResult.QUEUED;
+        }
+
+        Slot slot = new Slot(event);
+        (event.lane() == ServerEvent.Lane.TEXT ? text : outbound).addLast(slot);
+        liveEvents++;
+        if (key != null) {
+            pendingByKey.put(key, slot);
+        }
+        if (outbound.size() > 2 * capacity) {
+            outbound.removeIf(s -> s.event == null);
+        }
+        if (draining) {
+            return EnqueueResult.QUEUED;
+        }
+        draining = true;
+        return EnqueueResult.SCHEDULE_DRAIN;
+    }
+
+    /**
+     * Consegna tutti gli eventi in coda. Deve essere invocato solo dopo che
+     * {@link #enqueue(ServerEvent)} ha restituito {@link EnqueueResult#SCHEDULE_DRAIN}.
+     *
+     * @throws RemoteException se la callback del client non è raggiungibile
+     */
+    void drain() throws RemoteException {
+        ServerEvent event;
+        ItemCatalog.enterRecipient(knownLots);
+        try {
+            while ((event = next()) != null) {
+                event.deliver(callback);
+                if (event.closesLot()) {
+                    // dopo la chiusura il lotto non viene più serializzato per questo client
+                    knownLots.remove(event.coalescingKey());
+                }
+            }
+        } finally {
+            ItemCatalog.exitRecipient();
+        }
+    }
+
+    private synchronized ServerEvent next() {
+        while (!closed) {
+            Slot slot = outbound.isEmpty() ? text.pollFirst() : outbound.pollFirst();
+            if (slot == null) {
+                draining = false;
+                return null;
+            }
+            if (slot.event == null) {
+                continue;
+            }
+            ServerEvent event = slot.event;
+            liveEvents--;
+            Object key = event.coalescingKey();
+            if (key != null && pendingByKey.get(key) == slot) {
+                pendingByKey.remove(key);
+            }
+            if (event.closesLot()) {
+                // il lotto non riceverà altri stati: non servono più versioni da confrontare
+                queuedVersions.remove(key);
+            }
+            return event;
+        }
+        return null;
+    }
+
+    /**
+     * Libera un posto per l'evento in arrivo secondo la politica configurata.
+     *
+     * @return true se l'evento può essere accodato
+     */
+    private boolean makeRoom(ServerEvent incoming) {
+        if (overflowPolicy == OverflowPolicy.COALESCE) {
+            if (text.pollFirst() != null) {
+                liveEvents--;
+                droppedEvents++;
+                return true;
+            }
+            if (incoming.lane() == ServerEvent.Lane.TEXT) {
+                droppedEvents++;
+                return false;
+            }
+            // solo stati e esiti in coda: si accetta di superare temporaneamente la capacità
+            return true;
+        }
+        droppedEvents++;
+        return false;
+    }
+
+    private static final class Slot {
+        private ServerEvent event;
+
+        private Slot(ServerEvent event) {
+            this.event = event;
+        }
+    }
+}
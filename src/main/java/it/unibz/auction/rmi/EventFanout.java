@@ -0,0 +1,192 @@
+package it.unibz.auction.rmi;
+
+import java.rmi.RemoteException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+
+/**
+ * Motore di fan-out asincrono degli eventi verso i client.
+ * <p>
+ * La sezione critica dell'asta si limita a {@link #publish(ServerEvent)}, che
+ * accoda l'evento in O(1). Un thread dedicato distribuisce poi gli eventi nelle
+ * code delle singole sessioni e le consegne RMI avvengono in parallelo su
+ * virtual thread: un client lento rallenta solo se stesso.
+ * <p>
+ * Gli eventi d'asta e i testi entrano da code separate e il thread di
+ * distribuzione serve sempre prima gli eventi d'asta: un testo non può
+ * precedere un aggiornamento pubblicato prima di ogni lotto di distribuzione.
+ */
+final class EventFanout {
+
+    private static final int MAX_BATCH = 256;
+    /** lotti chiusi di cui si ricorda ancora la versione di chiusura */
+    private static final int MAX_CLOSED_LOTS = 1024;
+
+    private final Supplier<Collection<ClientSession>> sessions;
+    private final BiConsumer<ClientSession, Exception> failureHandler;
+    private final Queue<Dispatch> auctionInbound = new ConcurrentLinkedQueue<>();
+    private final Queue<Dispatch> textInbound = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean pumpParked = new AtomicBoolean();
+    private final ExecutorService deliveryPool = Executors.newVirtualThreadPerTaskExecutor();
+    private final Thread pump;
+    private volatile boolean running = true;
+
+    EventFanout(Supplier<Collection<ClientSession>> sessions,
+                BiConsumer<ClientSession, Exception> failureHandler) {
+        this.sessions = sessions;
+        this.failureHandler = failureHandler;
+        this.pump = new Thread(this::pumpLoop, "auction-fanout");
+        this.pump.setDaemon(true);
+    }
+
+    void start() {
+        pump.start();
+    }
+
+    /**
+     * Pubblica un evento destinato a tutte le sessioni registrate.
+     */
+    void publish(ServerEvent event) {
+        offer(new Dispatch(null, event));
+    }
+
+    /**
+     * Pubblica un evento destinato a una sola sessione, rispettando l'ordine
+     * rispetto ai broadcast già pubblicati.
+     */
+    void publishTo(ClientSession target, ServerEvent event) {
+        offer(new Dispatch(target, event));
+    }
+
+    private void offer(Dispatch dispatch) {
+        (dispatch.event().lane() == ServerEvent.Lane.TEXT ? textInbound : auctionInbound).offer(dispatch);
+        if (pumpParked.get() && pumpParked.compareAndSet(true, false)) {
+            LockSupport.unpark(pump);
+        }
+    }
+
+    void shutdown() {
+        running = false;
+        pump.interrupt();
+        deliveryPool.shutdownNow();
+    }
+
+    private void pumpLoop() {
+        List<Dispatch> batch = new ArrayList<>(MAX_BATCH);
+        Map<Object, Long> latestVersions = new HashMap<>();
+        Deque<Object> closedLots = new ArrayDeque<>();
+        while (running) {
+            if (!fill(batch)) {
+                pumpParked.set(true);
+                if (auctionInbound.isEmpty() && textInbound.isEmpty()) {
+                    LockSupport.park(this);
+                }
+                pumpParked.set(false);
+                if (Thread.currentThread().isInterrupted()) {
+                    return;
+                }
+                continue;
+            }
+            Collection<ClientSession> targets = sessions.get();
+            for (Dispatch dispatch : batch) {
+                if (dispatch.target() != null) {
+                    enqueue(dispatch.target(), dispatch.event());
+                } else if (!isStale(dispatch.event(), latestVersions, closedLots)) {
+                    for (ClientSession session : targets) {
+                        enqueue(session, dispatch.event());
+                    }
+                }
+            }
+            batch.clear();
+        }
+    }
+
+    /**
+     * Riempie il lotto di distribuzione con gli eventi d'asta in attesa e,
+     * se resta posto, con i testi.
+     *
+     * @return false se entrambe le code sono vuote
+     */
+    private boolean fill(List<Dispatch> batch) {
+        Dispatch next;
+        while (batch.size() < MAX_BATCH && (next = auctionInbound.poll()) != null) {
+            batch.add(next);
+        }
+        while (batch.size() < MAX_BATCH && (next = textInbound.poll()) != null) {
+            batch.add(next);
+        }
+        return !batch.isEmpty();
+    }
+
+    /**
+     * Gli aggiornamenti vengono pubblicati fuori da ogni lock, quindi due
+     * offerte concorrenti possono arrivare in ordine inverso: si scarta quella
+     * con versione più vecchia dell'ultima già distribuita. Dopo la chiusura
+     * la versione resta come lapide, così un aggiornamento in ritardo non
+     * riapre il lotto presso i client; si ricordano solo le ultime
+     * {@value #MAX_CLOSED_LOTS} chiusure.
+     */
+    private static boolean isStale(ServerEvent event, Map<Object, Long> latestVersions, Deque<Object> closedLots) {
+        long version = event.version();
+        if (version < 0) {
+            return false;
+        }
+        Long latest = latestVersions.get(event.coalescingKey());
+        if (latest != null && latest > version) {
+            return true;
+        }
+        latestVersions.put(event.coalescingKey(), version);
+        if (event.closesLot()) {
+            closedLots.addLast(event.coalescingKey());
+            if (closedLots.size() > MAX_CLOSED_LOTS) {
+                latestVersions.remove(closedLots.removeFirst());
+            }
+        }
+        return false;
+    }
+
+    private void enqueue(ClientSession session, ServerEvent event) {
+        switch (session.enqueue(event)) {
+            case QUEUED -> {
+                return;
+            }
+            case OVERFLOW -> {
+                session.close();
+                failureHandler.accept(session, new IllegalStateException("client troppo lento, coda in uscita piena"));
+                return;
+            }
+            case SCHEDULE_DRAIN -> {
+            }
+        }
+        try {
+            deliveryPool.execute(() -> drain(session));
+        } catch (RejectedExecutionException ignored) {
+            // fan-out in arresto
+        }
+    }
+
+    private void drain(ClientSession session) {
+        try {
+            session.drain();
+        } catch (RemoteException | RuntimeException ex) {
+            session.close();
+            failureHandler.accept(session, ex);
+        }
+    }
+
+    private record Dispatch(ClientSession target, ServerEvent event) {}
+}
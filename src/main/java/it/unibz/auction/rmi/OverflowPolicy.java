@@ -0,0 +1,33 @@
+package it.unibz.auction.rmi;
+
+/**
+ * Comportamento della coda in uscita di un client quando raggiunge la capacità massima.
+ * <p>
+ * Gli aggiornamenti di stato dello stesso lotto vengono sempre fusi con il più
+ * recente; la politica si applica solo agli eventi che farebbero crescere la coda.
+ */
+public enum OverflowPolicy {
+
+    /**
+     * Scarta i messaggi di sistema più vecchi per fare spazio, preservando
+     * gli ultimi aggiornamenti di stato e gli esiti delle offerte.
+     */
+    COALESCE,
+
+    /**
+     * Scarta l'evento in arrivo.
+     */
+    DROP,
+
+    /**
+     * Disconnette il client, considerato troppo lento.
+     */
+    DISCONNECT;
+
+    static OverflowPolicy fromProperty(String value) {
+        if (value == null || value.isBlank()) {
+            return COALESCE;
+        }
+        return valueOf(value.trim().toUpperCase());
+    }
+}
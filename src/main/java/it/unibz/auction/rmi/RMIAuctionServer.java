@@ -1,52 +1,123 @@
 package it.unibz.auction.rmi;
 
+import it.unibz.auction.engine.AuctionEngine;
+import it.unibz.auction.engine.AuctionListener;
+import it.unibz.auction.engine.Lot;
+import it.unibz.auction.engine.RoundState;
 import it.unibz.auction.rmi.dto.AuctionItem;
 import it.unibz.auction.rmi.dto.AuctionState;
 import it.unibz.auction.rmi.dto.BidOutcome;
+import it.unibz.auction.rmi.dto.BidRequest;
+import it.unibz.auction.rmi.dto.Money;
 import it.unibz.auction.rmi.exceptions.AuctionException;
 
+import java.io.IOException;
+import java.nio.file.Path;
 import java.rmi.RemoteException;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
-import java.time.Instant;
-import java.util.ArrayDeque;
-import java.util.Deque;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Objects;
-import java.util.Optional;
+import java.util.Queue;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.ScheduledExecutorService;
-import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReentrantLock;
+import java.util.concurrent.atomic.AtomicBoolean;
 import java.util.regex.Pattern;
 
 /**
- * Implementazione del server RMI dell'asta.
+ * Implementazione del server RMI dell'asta: front end del {@link AuctionEngine},
+ * che traduce le chiamate remote in offerte e le transizioni dei lotti in
+ * eventi per le callback.
  */
-public class RMIAuctionServer extends UnicastRemoteObject implements AuctionService {
+public class RMIAuctionServer extends UnicastRemoteObject implements AuctionService, AuctionListener {
 
     private static final Pattern NICKNAME_PATTERN = Pattern.compile("^[A-Za-z0-9_]{3,16}$");
-
+    private static final int OUTBOUND_CAPACITY = Integer.getInteger("auction.outbound.capacity", 64);
+    private static final OverflowPolicy OVERFLOW_POLICY =
+            OverflowPolicy.fromProperty(System.getProperty("auction.outbound.policy"));
+    private static final int MAX_BATCH_SIZE = Integer.getInteger("auction.bids.maxBatch", 1000);
+    private static final Duration LEASE = Duration.ofSeconds(Math.max(1, Integer.getInteger("auction.lease.seconds", 30)));
+    /** attesa prima di annunciare le disconnessioni, per riunire quelle di un guasto di massa */
+    private static final long DEPARTURE_LINGER_MILLIS = 200;
+
+    /** sessioni per nickname, per l'unicità dei nomi e il fan-out */
     private final Map<String, ClientSession> clients = new ConcurrentHashMap<>();
-    private final Deque<AuctionItem> itemsQueue = new ArrayDeque<>();
-    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor();
-    private final Lock stateLock = new ReentrantLock();
-
-    private AuctionItem currentItem;
-    private double currentPrice;
-    private String topBidder;
-    private Instant roundEnd;
-    private boolean activeRound;
-    private ScheduledFuture<?> roundFuture;
+    /** sessioni per handle, per le chiamate dei client */
+    private final SessionTable sessions = new SessionTable();
+    private final EventFanout fanout = new EventFanout(clients::values, this::handleDeliveryFailure);
+    private final ScheduledExecutorService leases =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("auction-leases").daemon().factory());
+    /** client rimossi non ancora annunciati agli altri */
+    private final Queue<String> departures = new ConcurrentLinkedQueue<>();
+    private final AtomicBoolean departuresScheduled = new AtomicBoolean();
+    private final AuctionEngine engine;
+    private final boolean ownsEngine;
 
+    /**
+     * Server con un motore proprio, configurato dalle proprietà di sistema
+     * {@code auction.lots.concurrent} e {@code auction.journal.dir}.
+     */
     public RMIAuctionServer(Iterable<AuctionItem> seedItems) throws RemoteException {
+        this(openEngine(() -> new AuctionEngine(seedItems)), true);
+    }
+
+    /**
+     * @param seedItems         articoli da mettere all'asta, nell'ordine di apertura
+     * @param maxConcurrentLots numero massimo di lotti aperti contemporaneamente
+     */
+    public RMIAuctionServer(Iterable<AuctionItem> seedItems, int maxConcurrentLots) throws RemoteException {
+        this(new AuctionEngine(seedItems, maxConcurrentLots), true);
+    }
+
+    /**
+     * @param seedItems         articoli da mettere all'asta, nell'ordine di apertura
+     * @param maxConcurrentLots numero massimo di lotti aperti contemporaneamente
+     * @param journalDir        directory del journal delle offerte, null per non
+     *                          persistere nulla; se contiene un journal, i lotti
+     *                          ancora aperti vengono ripresi con la scadenza originale
+     */
+    public RMIAuctionServer(Iterable<AuctionItem> seedItems, int maxConcurrentLots, Path journalDir)
+            throws RemoteException {
+        this(openEngine(() -> new AuctionEngine(seedItems, maxConcurrentLots, journalDir)), true);
+    }
+
+    /**
+     * Server che condivide il motore con altri front end, ad esempio il server
+     * TCP: i lotti e le offerte sono gli stessi. Il motore non viene arrestato
+     * da {@link #shutdown()}.
+     */
+    public RMIAuctionServer(AuctionEngine engine) throws RemoteException {
+        this(engine, false);
+    }
+
+    private RMIAuctionServer(AuctionEngine engine, boolean ownsEngine) throws RemoteException {
         super();
-        seedItems.forEach(itemsQueue::offer);
+        this.engine = engine;
+        this.ownsEngine = ownsEngine;
+        fanout.start();
+    }
+
+    @FunctionalInterface
+    private interface EngineFactory {
+        AuctionEngine create() throws IOException;
+    }
+
+    private static AuctionEngine openEngine(EngineFactory factory) throws RemoteException {
+        try {
+            return factory.create();
+        } catch (IOException ex) {
+            throw new RemoteException("Impossibile aprire il journal: " + ex.getMessage(), ex);
+        }
     }
 
     public static void main(String[] args) throws Exception {
@@ -65,7 +136,10 @@ public class RMIAuctionServer extends UnicastRemoteObject implements AuctionServ
         Runtime.getRuntime().addShutdownHook(new Thread(server::shutdown));
     }
 
-    private static Registry createRegistryWithFallback(int basePort, int maxAttempts) throws RemoteException {
+    /**
+     * Crea un registry sulla prima porta libera a partire da {@code basePort}.
+     */
+    public static Registry createRegistryWithFallback(int basePort, int maxAttempts) throws RemoteException {
         RemoteException lastEx = null;
         for (int i = 0; i < maxAttempts; i++) {
             int port = basePort + i;
@@ -81,212 +155,379 @@ public class RMIAuctionServer extends UnicastRemoteObject implements AuctionServ
         throw lastEx != null ? lastEx : new RemoteException("Impossibile creare un registro RMI");
     }
 
-    private static Iterable<AuctionItem> defaultItems() {
+    /**
+     * Articoli messi all'asta dai server avviati da riga di comando.
+     */
+    public static List<AuctionItem> defaultItems() {
         return List.of(
-                new AuctionItem("Laptop", "Ultrabook 14\" con SSD 1TB", 500.0, 10.0, 120),
-                new AuctionItem("Cuffie", "Over-ear noise cancelling", 70.0, 5.0, 90),
-                new AuctionItem("Smartwatch", "Resistente all'acqua, GPS integrato", 120.0, 8.0, 90)
+                AuctionItem.ofEuros("Laptop", "Ultrabook 14\" con SSD 1TB", 500.0, 10.0, 120),
+                AuctionItem.ofEuros("Cuffie", "Over-ear noise cancelling", 70.0, 5.0, 90),
+                AuctionItem.ofEuros("Smartwatch", "Resistente all'acqua, GPS integrato", 120.0, 8.0, 90)
         );
     }
 
     @Override
-    public void registerClient(String nickname, ClientCallback callback) throws RemoteException, AuctionException {
+    public long registerClient(String nickname, ClientCallback callback) throws RemoteException, AuctionException {
         Objects.requireNonNull(callback, "callback nulla");
         String sanitizedNick = sanitizeNickname(nickname);
 
-        if (clients.containsKey(sanitizedNick)) {
+        ClientSession session = new ClientSession(sanitizedNick, callback, OUTBOUND_CAPACITY, OVERFLOW_POLICY,
+                engine.chat().newSenderLimit(), engine.admission().newSenderLimit());
+        long handle = sessions.add(session);
+        if (clients.putIfAbsent(sanitizedNick, session) != null) {
+            sessions.remove(session);
             throw new AuctionException("Nickname già in uso");
         }
-
-        clients.put(sanitizedNick, new ClientSession(sanitizedNick, callback));
         System.out.printf("👤 Client registrato: %s (totale=%d)%n", sanitizedNick, clients.size());
 
         broadcastSystem(String.format("%s si è unito all'asta", sanitizedNick));
 
-        AuctionState snapshot = getCurrentState();
-        safeInvoke(callback, cb -> cb.onAuctionUpdate(snapshot));
+        Collection<Lot> lots = engine.activeLots();
+        if (lots.isEmpty()) {
+            RoundState idle = engine.idleState();
+            fanout.publishTo(session, new ServerEvent.AuctionUpdate(idle.version(), engine.idleSnapshot()));
+        }
+        for (Lot lot : lots) {
+            RoundState current = lot.state();
+            fanout.publishTo(session, new ServerEvent.AuctionUpdate(current.version(), lot.snapshot(current)));
+        }
+        return handle;
+    }
+
+    @Override
+    public void unregisterClient(long handle) {
+        ClientSession session = sessions.get(handle);
+        if (session != null && removeSession(session)) {
+            session.close();
+            broadcastSystem(String.format("%s ha lasciato l'asta", session.nickname()));
+        }
     }
 
     @Override
-    public void unregisterClient(String nickname) {
-        Optional.ofNullable(nickname)
-                .map(clients::remove)
-                .ifPresent(session -> broadcastSystem(String.format("%s ha lasciato l'asta", session.nickname())));
+    public long renewLease(long handle) throws AuctionException {
+        requireSession(handle);
+        return LEASE.toMillis();
     }
 
     @Override
     public AuctionState getCurrentState() {
-        stateLock.lock();
-        try {
-            return snapshot();
-        } finally {
-            stateLock.unlock();
-        }
+        Lot featured = engine.featuredLot();
+        return featured != null ? featured.snapshot() : engine.idleSnapshot();
     }
 
     @Override
-    public void submitBid(String nickname, double amount) throws AuctionException {
-        ClientSession session = clients.get(nickname);
-        if (session == null) {
-            throw new AuctionException("Client non registrato");
-        }
+    public AuctionState getCurrentState(long lotId) throws AuctionException {
+        return engine.requireLot(lotId).snapshot();
+    }
 
-        stateLock.lock();
-        BidOutcome outcome;
-        try {
-            if (!activeRound || currentItem == null) {
-                throw new AuctionException("Nessuna asta attiva in questo momento");
-            }
-            if (Double.isNaN(amount) || Double.isInfinite(amount) || amount <= 0) {
-                throw new AuctionException("Importo non valido");
-            }
-            double minimumRequired = currentPrice + currentItem.minIncrement();
-            if (amount < minimumRequired) {
-                outcome = new BidOutcome(false, amount, minimumRequired,
-                        "Offerta troppo bassa", snapshot());
+    @Override
+    public AuctionState getStateSince(long lotId, long version) throws AuctionException {
+        Lot lot = engine.requireLot(lotId);
+        RoundState current = lot.state();
+        return current.version() > version ? lot.snapshot(current) : null;
+    }
+
+    @Override
+    public List<AuctionState> getActiveLots() {
+        return engine.activeLots().stream()
+                .map(Lot::snapshot)
+                .toList();
+    }
+
+    @Override
+    public void submitBid(long handle, double amount) throws AuctionException {
+        submitBid(handle, featuredLotId(handle), amount);
+    }
+
+    @Override
+    public void submitBid(long handle, long lotId, double amount) throws AuctionException {
+        ClientSession session = requireSession(handle);
+        engine.admission().throttle(session.bidLimit());
+        BidOutcome outcome = engine.bid(session.nickname(), lotId, toCents(amount)).outcome();
+        fanout.publishTo(session, new ServerEvent.BidResult(outcome));
+    }
+
+    @Override
+    public BidOutcome placeBid(long handle, double amount) throws AuctionException {
+        return placeBid(handle, featuredLotId(handle), amount);
+    }
+
+    @Override
+    public BidOutcome placeBid(long handle, long lotId, double amount) throws AuctionException {
+        return placeBidCents(handle, lotId, toCents(amount));
+    }
+
+    @Override
+    public BidOutcome placeBidCents(long handle, long amountCents) throws AuctionException {
+        return placeBidCents(handle, featuredLotId(handle), amountCents);
+    }
+
+    @Override
+    public BidOutcome placeBidCents(long handle, long lotId, long amountCents) throws AuctionException {
+        ClientSession session = requireSession(handle);
+        engine.admission().throttle(session.bidLimit());
+        return engine.bid(session.nickname(), lotId, amountCents).outcome();
+    }
+
+    @Override
+    public BidOutcome placeBidOnce(long handle, long requestId, long lotId, long amountCents) throws AuctionException {
+        ClientSession session = requireSession(handle);
+        return session.recentBids().apply(requestId, () -> {
+            engine.admission().throttle(session.bidLimit());
+            long target = lotId != 0 ? lotId : featuredLotId(handle);
+            return engine.bid(session.nickname(), target, amountCents).outcome();
+        });
+    }
+
+    @Override
+    public BidOutcome placeMaxBid(long handle, long requestId, long lotId, long maxCents) throws AuctionException {
+        ClientSession session = requireSession(handle);
+        return session.recentBids().apply(requestId, () -> {
+            engine.admission().throttle(session.bidLimit());
+            long target = lotId != 0 ? lotId : featuredLotId(handle);
+            return engine.proxyBid(session.nickname(), target, maxCents).outcome();
+        });
+    }
+
+    @Override
+    public List<BidOutcome> submitBids(long handle, List<BidRequest> bids) throws AuctionException {
+        ClientSession session = requireSession(handle);
+        if (bids == null || bids.isEmpty()) {
+            return List.of();
+        }
+        if (bids.size() > MAX_BATCH_SIZE) {
+            throw new AuctionException("Troppe offerte in un solo invio (massimo " + MAX_BATCH_SIZE + ")");
+        }
+        engine.admission().throttle(session.bidLimit());
+
+        BidOutcome[] outcomes = new BidOutcome[bids.size()];
+        Map<Long, List<Integer>> indicesByLot = new LinkedHashMap<>();
+        for (int i = 0; i < bids.size(); i++) {
+            BidRequest bid = bids.get(i);
+            long amount = bid.amountCents();
+            if (amount <= 0) {
+                outcomes[i] = new BidOutcome(false, amount, 0, "Importo non valido", null);
             } else {
-                currentPrice = amount;
-                topBidder = nickname;
-                outcome = new BidOutcome(true, amount, minimumRequired,
-                        "Offerta accettata", snapshot());
+                indicesByLot.computeIfAbsent(bid.lotId(), id -> new ArrayList<>()).add(i);
             }
-        } finally {
-            stateLock.unlock();
         }
 
-        safeInvoke(session.callback(), cb -> cb.onBidOutcome(outcome));
-        if (outcome.accepted()) {
-            broadcastAuctionUpdate(outcome.stateSnapshot());
-            broadcastSystem(String.format("Nuova offerta da %s: %.2f €",
-                    nickname, amount));
+        for (Map.Entry<Long, List<Integer>> group : indicesByLot.entrySet()) {
+            List<Integer> indices = group.getValue();
+            long[] amounts = new long[indices.size()];
+            for (int i = 0; i < amounts.length; i++) {
+                amounts[i] = bids.get(indices.get(i)).amountCents();
+            }
+            Lot.BatchDecision decision = engine.bidAll(session.nickname(), group.getKey(), amounts);
+            if (decision == null) {
+                for (int index : indices) {
+                    outcomes[index] = new BidOutcome(false, bids.get(index).amountCents(), 0,
+                            "Lotto " + group.getKey() + " non attivo", null);
+                }
+                continue;
+            }
+            for (int i = 0; i < amounts.length; i++) {
+                outcomes[indices.get(i)] = decision.outcomes()[i];
+            }
         }
+        return List.of(outcomes);
     }
 
     @Override
-    public void sendChatMessage(String nickname, String message) throws AuctionException {
-        ClientSession session = clients.get(nickname);
-        if (session == null) {
-            throw new AuctionException("Client non registrato");
-        }
+    public void sendChatMessage(long handle, String message) throws AuctionException {
+        ClientSession session = requireSession(handle);
         String sanitized = sanitizeMessage(message);
         if (sanitized.isBlank()) {
             throw new AuctionException("Messaggio vuoto");
         }
-        broadcastSystem(String.format("[%s] %s", nickname, sanitized));
+        ServerEvent chat = new ServerEvent.SystemMessage(String.format("[%s] %s", session.nickname(), sanitized));
+        switch (engine.chat().admit(session.chatLimit())) {
+            case BROADCAST -> fanout.publish(chat);
+            case SENDER_ONLY -> fanout.publishTo(session, chat); // chat campionata: la vede solo il mittente
+            case REJECTED -> throw new AuctionException("Troppi messaggi: riprova tra qualche secondo");
+        }
     }
 
+    /**
+     * Registra il server sul motore, avvia la scadenza dei lease e il motore;
+     * con un motore condiviso l'avvio può essere già avvenuto da un altro front end.
+     */
     public void start() {
-        stateLock.lock();
-        try {
-            scheduleNextRound();
-        } finally {
-            stateLock.unlock();
-        }
+        engine.addListener(this);
+        long period = LEASE.toMillis() / 2;
+        leases.scheduleAtFixedRate(() -> evictExpiredLeases(System.nanoTime() - LEASE.toNanos()),
+                period, period, TimeUnit.MILLISECONDS);
+        engine.start();
     }
 
     public void shutdown() {
         System.out.println("🛑 Arresto server RMI...");
-        scheduler.shutdownNow();
+        if (ownsEngine) {
+            engine.shutdown();
+        }
+        fanout.shutdown();
+        leases.shutdownNow();
         try {
             UnicastRemoteObject.unexportObject(this, true);
         } catch (RemoteException ignored) {
         }
     }
 
-    private void scheduleNextRound() {
-        cancelExistingTimer();
+    void writeSnapshot() {
+        engine.writeSnapshot();
+    }
 
-        currentItem = itemsQueue.poll();
-        if (currentItem == null) {
-            activeRound = false;
-            roundEnd = null;
-            broadcastSystem("Asta terminata. Nessun altro oggetto disponibile.");
-            broadcastAuctionUpdate(snapshot());
-            return;
+    @Override
+    public void lotOpened(Lot lot, RoundState opened, boolean resumed) {
+        AuctionItem item = lot.item();
+        if (resumed) {
+            broadcastSystem(String.format("Lotto %d ripreso dopo il riavvio: %s (prezzo corrente %s €)",
+                    lot.id(), item.name(), Money.format(opened.currentPriceCents())));
+        } else {
+            broadcastSystem(String.format("Nuovo articolo (lotto %d): %s — %s (prezzo di partenza %s €, incremento minimo %s €)",
+                    lot.id(), item.name(), item.description(), Money.format(item.startPriceCents()),
+                    Money.format(item.minIncrementCents())));
         }
+        broadcastAuctionUpdate(opened.version(), lot.snapshot(opened));
+    }
 
-        currentPrice = currentItem.startPrice();
-        topBidder = null;
-        activeRound = true;
-        roundEnd = Instant.now().plusSeconds(currentItem.durationSeconds());
-
-        broadcastSystem(String.format("Nuovo articolo: %s — %s (prezzo di partenza %.2f €, incremento minimo %.2f €)",
-                currentItem.name(), currentItem.description(), currentItem.startPrice(), currentItem.minIncrement()));
-        broadcastAuctionUpdate(snapshot());
-
-        roundFuture = scheduler.schedule(this::completeCurrentRound,
-                currentItem.durationSeconds(), TimeUnit.SECONDS);
+    @Override
+    public void bidAccepted(Lot lot, RoundState accepted) {
+        broadcastAuctionChange(accepted);
+        broadcastSystem(String.format("Nuova offerta da %s su %s: %s €",
+                accepted.topBidder(), accepted.item().name(), Money.format(accepted.currentPriceCents())));
     }
 
-    private void completeCurrentRound() {
-        stateLock.lock();
-        try {
-            if (!activeRound) {
-                return;
-            }
-            activeRound = false;
-            String winner = topBidder != null ? topBidder : "Nessuno";
-            double finalPrice = currentPrice;
-            AuctionItem expiredItem = currentItem;
+    @Override
+    public void lotClosed(Lot lot, RoundState closed) {
+        String winner = closed.topBidder() != null ? closed.topBidder() : "Nessuno";
+        broadcastSystem(String.format("Round terminato: %s aggiudicato a %s per %s €",
+                closed.item().name(), winner, Money.format(closed.currentPriceCents())));
+        broadcastAuctionUpdate(closed.version(), lot.snapshot(closed));
+    }
 
-            broadcastSystem(String.format("Round terminato: %s aggiudicato a %s per %.2f €",
-                    expiredItem.name(), winner, finalPrice));
+    @Override
+    public void auctionFinished(RoundState idle, AuctionState snapshot) {
+        broadcastSystem("Asta terminata. Nessun altro oggetto disponibile.");
+        broadcastAuctionUpdate(idle.version(), snapshot);
+    }
 
-            broadcastAuctionUpdate(snapshot());
+    @Override
+    public Collection<String> participants() {
+        return List.copyOf(clients.keySet());
+    }
 
-            scheduleNextRound();
-        } finally {
-            stateLock.unlock();
+    /**
+     * Converte un importo dell'API in euro nei centesimi usati dal motore d'asta.
+     */
+    private static long toCents(double amount) throws AuctionException {
+        try {
+            return Money.toCents(amount);
+        } catch (IllegalArgumentException ex) {
+            throw new AuctionException("Importo non valido");
         }
     }
 
-    private void cancelExistingTimer() {
-        if (roundFuture != null) {
-            roundFuture.cancel(false);
-            roundFuture = null;
+    private long featuredLotId(long handle) throws AuctionException {
+        Lot featured = engine.featuredLot();
+        if (featured == null) {
+            requireSession(handle);
+            throw new AuctionException("Nessuna asta attiva in questo momento");
         }
+        return featured.id();
     }
 
-    private AuctionState snapshot() {
-        if (currentItem == null) {
-            return new AuctionState(null, null, 0, 0, null, null, false);
+    private ClientSession requireSession(long handle) throws AuctionException {
+        ClientSession session = sessions.get(handle);
+        if (session == null) {
+            throw new AuctionException("Client non registrato");
         }
-        return new AuctionState(
-                currentItem.name(),
-                currentItem.description(),
-                currentPrice,
-                currentItem.minIncrement(),
-                topBidder,
-                activeRound ? roundEnd : null,
-                activeRound
-        );
+        session.touch();
+        return session;
     }
 
-    private void broadcastAuctionUpdate(AuctionState state) {
-        broadcast(clientCallback -> clientCallback.onAuctionUpdate(state));
+    /**
+     * Accoda l'aggiornamento per tutti i client: può essere invocato anche
+     * sotto il lock dei round del motore, la consegna avviene fuori dal lock.
+     */
+    private void broadcastAuctionUpdate(long version, AuctionState snapshot) {
+        fanout.publish(new ServerEvent.AuctionUpdate(version, snapshot));
+    }
+
+    /**
+     * Accoda per tutti i client la sola variazione prodotta da un'offerta accettata.
+     */
+    private void broadcastAuctionChange(RoundState accepted) {
+        fanout.publish(new ServerEvent.AuctionChange(accepted.toDelta()));
     }
 
     private void broadcastSystem(String message) {
-        broadcast(clientCallback -> clientCallback.onSystemMessage(message));
+        fanout.publish(new ServerEvent.SystemMessage(message));
+    }
+
+    /**
+     * Le callback fallite vengono annunciate con un breve ritardo: durante un
+     * guasto di massa tutte le rimozioni finiscono in un solo messaggio invece
+     * di un broadcast per client, che a sua volta fallirebbe verso gli altri
+     * client già irraggiungibili.
+     */
+    private void handleDeliveryFailure(ClientSession session, Exception ex) {
+        String nick = session.nickname();
+        if (removeSession(session)) {
+            System.err.printf("⚠️ Callback fallita. Client '%s' rimosso: %s%n", nick, ex.getMessage());
+            departures.add(nick);
+            if (departuresScheduled.compareAndSet(false, true)) {
+                try {
+                    leases.schedule(this::announceDepartures, DEPARTURE_LINGER_MILLIS, TimeUnit.MILLISECONDS);
+                } catch (RejectedExecutionException ignored) {
+                    // server in arresto
+                }
+            }
+        }
     }
 
-    private void broadcast(CallbackInvoker invoker) {
-        clients.values().forEach(session -> safeInvoke(session.callback(), invoker));
+    /**
+     * Rimuove in blocco le sessioni che non hanno chiamato il server da
+     * {@code cutoffNanos} e le annuncia con un solo messaggio. Invocato
+     * periodicamente fuori dal percorso delle offerte.
+     *
+     * @return numero di sessioni rimosse
+     */
+    int evictExpiredLeases(long cutoffNanos) {
+        int evicted = 0;
+        for (ClientSession session : clients.values()) {
+            if (session.idleSince(cutoffNanos) && removeSession(session)) {
+                session.close();
+                departures.add(session.nickname());
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            System.err.printf("⏱️ Lease scaduto: %d client rimossi%n", evicted);
+            announceDepartures();
+        }
+        return evicted;
     }
 
-    private void safeInvoke(ClientCallback callback, CallbackInvoker invoker) {
-        try {
-            invoker.invoke(callback);
-        } catch (RemoteException ex) {
-            clients.entrySet().stream()
-                    .filter(entry -> entry.getValue().callback().equals(callback))
-                    .map(Map.Entry::getKey)
-                    .findFirst()
-                    .ifPresent(nick -> {
-                        clients.remove(nick);
-                        System.err.printf("⚠️ Callback fallita. Client '%s' rimosso: %s%n", nick, ex.getMessage());
-                        broadcastSystem(String.format("%s si è disconnesso (connessione persa)", nick));
-                    });
+    private boolean removeSession(ClientSession session) {
+        if (clients.remove(session.nickname(), session)) {
+            sessions.remove(session);
+            return true;
+        }
+        return false;
+    }
+
+    private void announceDepartures() {
+        departuresScheduled.set(false);
+        List<String> gone = new ArrayList<>();
+        for (String nick; (nick = departures.poll()) != null; ) {
+            gone.add(nick);
+        }
+        if (gone.size() == 1) {
+            broadcastSystem(String.format("%s si è disconnesso (connessione persa)", gone.get(0)));
+        } else if (!gone.isEmpty()) {
+            broadcastSystem(String.format("%d partecipanti disconnessi (connessione persa): %s",
+                    gone.size(), String.join(", ", gone)));
         }
     }
 
@@ -305,20 +546,13 @@ public class RMIAuctionServer extends UnicastRemoteObject implements AuctionServ
         return message == null ? "" : message.replaceAll("[\\r\\n]+", " ").trim();
     }
 
-    private static int registryPort(Registry registry) {
+    public static int registryPort(Registry registry) {
         if (registry instanceof WrappedRegistry wr) {
             return wr.port();
         }
         return 1099;
     }
 
-    private record ClientSession(String nickname, ClientCallback callback) {}
-
-    @FunctionalInterface
-    private interface CallbackInvoker {
-        void invoke(ClientCallback callback) throws RemoteException;
-    }
-
     /**
      * Wrapper semplice per ricordare la porta del registry creato.
      */
@@ -1,7 +1,9 @@
 package it.unibz.auction.rmi;
 
+import it.unibz.auction.rmi.dto.AuctionDelta;
 import it.unibz.auction.rmi.dto.AuctionState;
 import it.unibz.auction.rmi.dto.BidOutcome;
+import it.unibz.auction.rmi.dto.Money;
 import it.unibz.auction.rmi.exceptions.AuctionException;
 
 import java.rmi.NotBoundException;
@@ -12,26 +14,54 @@ import java.rmi.server.UnicastRemoteObject;
 import java.time.Duration;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
 import java.util.Objects;
 import java.util.Optional;
 import java.util.Scanner;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.concurrent.atomic.AtomicReference;
 
 /**
  * Client console per il sistema d'asta RMI.
+ * <p>
+ * Le offerte partono in background con un id di richiesta crescente e il
+ * prompt torna subito disponibile: gli esiti vengono stampati man mano che
+ * arrivano. Dopo un errore di rete il client riprende la sessione se il server
+ * la conserva ancora e ripete l'offerta con lo stesso id, che il server
+ * deduplica; se la sessione è andata persa l'offerta non viene ripetuta.
  */
 public class RMIClient {
 
     private static final DateTimeFormatter TIME_FORMATTER =
             DateTimeFormatter.ofPattern("HH:mm:ss").withZone(ZoneId.systemDefault());
+    /** offerte in volo contemporaneamente, al di sotto della finestra di deduplicazione del server */
+    private static final int MAX_BIDS_IN_FLIGHT = 16;
 
     private final String host;
     private final int port;
     private final String bindingName;
     private final AtomicReference<AuctionService> serviceRef = new AtomicReference<>();
-    private final AtomicReference<AuctionState> stateRef = new AtomicReference<>();
+    /** ultimo stato completo di ciascun lotto aperto, a cui si applicano le variazioni */
+    private final Map<Long, AuctionState> lotStates = new ConcurrentHashMap<>();
     private final AtomicReference<String> nicknameRef = new AtomicReference<>();
+    /** handle della sessione corrente, -1 prima della registrazione */
+    private final AtomicLong sessionRef = new AtomicLong(-1);
     private final AtomicReference<ClientListener> listenerRef = new AtomicReference<>();
+    private final ScheduledExecutorService heartbeat =
+            Executors.newSingleThreadScheduledExecutor(Thread.ofPlatform().name("auction-heartbeat").daemon().factory());
+    private final ExecutorService bids =
+            Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("auction-bid-", 0).factory());
+    private final Semaphore bidsInFlight = new Semaphore(MAX_BIDS_IN_FLIGHT);
+    private final AtomicLong requestIds = new AtomicLong();
 
     private RMIClient(String host, int port, String bindingName) {
         this.host = host;
@@ -59,6 +89,8 @@ public class RMIClient {
         ClientListener listener = new ClientListener();
         listenerRef.set(listener);
         connectAndRegister(nickname, listener, true);
+        long lease = serviceRef.get().renewLease(sessionRef.get());
+        heartbeat.scheduleWithFixedDelay(this::renewLease, lease / 3, lease / 3, TimeUnit.MILLISECONDS);
 
         printHelp();
 
@@ -81,12 +113,20 @@ public class RMIClient {
                 printCurrentState();
                 continue;
             }
+            if ("/lots".equalsIgnoreCase(trimmed)) {
+                printActiveLots();
+                continue;
+            }
             if ("/quit".equalsIgnoreCase(trimmed)) {
                 gracefulShutdown();
                 break;
             }
             if (trimmed.toUpperCase().startsWith("BID ")) {
-                handleBid(trimmed.substring(4).trim());
+                handleBid(trimmed.substring(4).trim(), false);
+                continue;
+            }
+            if (trimmed.toUpperCase().startsWith("MAX ")) {
+                handleBid(trimmed.substring(4).trim(), true);
                 continue;
             }
             if (trimmed.toUpperCase().startsWith("MSG ")) {
@@ -97,22 +137,62 @@ public class RMIClient {
         }
     }
 
-    private void handleBid(String amountString) {
+    /**
+     * @param proxy true per un'offerta massima, su cui il server rilancia automaticamente
+     */
+    private void handleBid(String arguments, boolean proxy) {
+        long lotId;
+        long amount;
         try {
-            double amount = Double.parseDouble(amountString.replace(',', '.'));
-            invokeVoidWithReconnect(service -> service.submitBid(nicknameRef.get(), amount));
+            String[] parts = arguments.split("\\s+");
+            lotId = parts.length >= 2 ? Long.parseLong(parts[0]) : 0;
+            amount = Money.parse(parts[parts.length - 1]);
         } catch (NumberFormatException ex) {
-            System.out.println("Importo non valido. Usa un numero.");
-        } catch (AuctionException ex) {
-            System.out.printf("Offerta rifiutata: %s%n", ex.getMessage());
-        } catch (RemoteException ex) {
-            System.out.printf("Errore di rete: %s%n", ex.getMessage());
+            System.out.println("Importo non valido. Usa un numero con al massimo due decimali.");
+            return;
+        }
+        try {
+            bidsInFlight.acquire();
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            return;
         }
+        long requestId = requestIds.incrementAndGet();
+        System.out.printf("Offerta #%d inviata.%n", requestId);
+        submitBid(requestId, lotId, amount, proxy).whenComplete((outcome, failure) -> {
+            bidsInFlight.release();
+            if (outcome != null) {
+                renderOutcome(requestId, outcome);
+            } else if (failure.getCause() instanceof AuctionException ex) {
+                System.out.printf("Offerta #%d rifiutata: %s%n", requestId, ex.getMessage());
+            } else {
+                System.out.printf("Offerta #%d, errore di rete: %s%n", requestId, failure.getCause().getMessage());
+            }
+        });
+    }
+
+    /**
+     * Invia l'offerta in background; un errore di rete viene gestito ripetendo
+     * la stessa richiesta, che il server non applica due volte.
+     *
+     * @param lotId lotto dell'offerta, 0 per il lotto aperto da più tempo,
+     *              risolto dal server nella stessa chiamata
+     */
+    private CompletableFuture<BidOutcome> submitBid(long requestId, long lotId, long amountCents, boolean proxy) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return invokeWithReconnect(service -> proxy
+                        ? service.placeMaxBid(sessionRef.get(), requestId, lotId, amountCents)
+                        : service.placeBidOnce(sessionRef.get(), requestId, lotId, amountCents), false);
+            } catch (RemoteException | AuctionException ex) {
+                throw new CompletionException(ex);
+            }
+        }, bids);
     }
 
     private void handleMessage(String message) {
         try {
-            invokeVoidWithReconnect(service -> service.sendChatMessage(nicknameRef.get(), message));
+            invokeVoidWithReconnect(service -> service.sendChatMessage(sessionRef.get(), message));
         } catch (AuctionException ex) {
             System.out.printf("Messaggio non inviato: %s%n", ex.getMessage());
         } catch (RemoteException ex) {
@@ -135,11 +215,65 @@ public class RMIClient {
         }
     }
 
+    private void printActiveLots() {
+        try {
+            List<AuctionState> lots = invokeWithReconnect(AuctionService::getActiveLots);
+            if (lots.isEmpty()) {
+                System.out.println("Nessun lotto aperto al momento.");
+            }
+            lots.forEach(this::renderState);
+        } catch (AuctionException ex) {
+            System.out.printf("Impossibile ottenere i lotti: %s%n", ex.getMessage());
+        } catch (RemoteException ex) {
+            System.out.printf("Errore di rete: %s%n", ex.getMessage());
+        }
+    }
+
+    private void renderOutcome(BidOutcome outcome) {
+        renderOutcome(0, outcome);
+    }
+
+    private void renderOutcome(long requestId, BidOutcome outcome) {
+        String status = outcome.accepted() ? "accettata" : "rifiutata";
+        String reason = outcome.message() != null ? outcome.message() : "";
+        String label = requestId > 0 ? "Offerta #" + requestId : "Offerta";
+        System.out.printf("➡️ %s %s (%s €). %s%n", label, status, Money.format(outcome.amountCents()), reason);
+        if (outcome.stateSnapshot() != null) {
+            renderState(outcome.stateSnapshot());
+        }
+    }
+
+    private void remember(AuctionState state) {
+        if (state.active()) {
+            lotStates.put(state.lotId(), state);
+        } else {
+            lotStates.remove(state.lotId());
+        }
+    }
+
+    /**
+     * Stato completo di un lotto di cui è arrivata solo una variazione.
+     */
+    private AuctionState resync(long lotId) {
+        AuctionService service = serviceRef.get();
+        if (service == null) {
+            return null;
+        }
+        try {
+            return service.getStateSince(lotId, 0);
+        } catch (AuctionException | RemoteException ex) {
+            return null;
+        }
+    }
+
     private void renderState(AuctionState state) {
         System.out.println("──────────────────────────────");
+        if (state.lotId() > 0) {
+            System.out.printf("Lotto: %d%n", state.lotId());
+        }
         System.out.printf("Oggetto: %s%n", Optional.ofNullable(state.itemName()).orElse("N/D"));
-        System.out.printf("Prezzo attuale: %.2f €%n", state.currentPrice());
-        System.out.printf("Incremento minimo: %.2f €%n", state.minIncrement());
+        System.out.printf("Prezzo attuale: %s €%n", Money.format(state.currentPriceCents()));
+        System.out.printf("Incremento minimo: %s €%n", Money.format(state.minIncrementCents()));
         System.out.printf("Miglior offerente: %s%n", Optional.ofNullable(state.topBidder()).orElse("Nessuno"));
         if (state.roundEndTime() != null) {
             System.out.printf("Termine round alle: %s%n", TIME_FORMATTER.format(state.roundEndTime()));
@@ -160,30 +294,32 @@ public class RMIClient {
         System.out.println("──────────────────────────────");
         System.out.println("COMANDI DISPONIBILI:");
         System.out.println("──────────────────────────────");
-        System.out.println("BID <valore>      → Effettua un'offerta");
+        System.out.println("BID <valore>      → Effettua un'offerta sul lotto principale");
+        System.out.println("BID <lotto> <val> → Effettua un'offerta su un lotto specifico");
+        System.out.println("MAX [lotto] <val> → Offerta massima: il server rilancia per te fino a <val>");
         System.out.println("MSG <testo>       → Invia un messaggio in chat");
         System.out.println("/info             → Mostra lo stato attuale dell'asta");
+        System.out.println("/lots             → Elenca i lotti aperti");
         System.out.println("/help             → Mostra questa schermata");
         System.out.println("/quit             → Esci dal sistema");
         System.out.println("──────────────────────────────");
     }
 
-    private void connectAndRegister(String nickname, ClientListener listener, boolean initial)
+    private synchronized void connectAndRegister(String nickname, ClientListener listener, boolean initial)
+            throws RemoteException, AuctionException {
+        register(lookupService(), nickname, listener, initial);
+    }
+
+    private void register(AuctionService service, String nickname, ClientListener listener, boolean initial)
             throws RemoteException, AuctionException {
-        AuctionService service;
-        try {
-            service = lookupServiceWithRetry();
-        } catch (NotBoundException ex) {
-            throw new RemoteException("Servizio RMI non trovato: " + bindingName, ex);
-        } catch (InterruptedException ex) {
-            Thread.currentThread().interrupt();
-            throw new RemoteException("Interrotto durante la riconnessione", ex);
-        }
         try {
-            service.unregisterClient(nickname);
+            // la sessione precedente, se il server la conserva ancora, trattiene il nickname
+            service.unregisterClient(sessionRef.get());
         } catch (RemoteException ignored) {
         }
-        service.registerClient(nickname, listener);
+        // prima della registrazione: i callback arrivati nel frattempo restano validi
+        lotStates.clear();
+        sessionRef.set(service.registerClient(nickname, listener));
         serviceRef.set(service);
         if (initial) {
             System.out.println("✅ Registrazione completata. In attesa di notifiche...");
@@ -191,12 +327,53 @@ public class RMIClient {
             System.out.println("♻️ Riconnesso al server e registrato nuovamente.");
         }
         AuctionState state = service.getCurrentState();
-        stateRef.set(state);
         if (state != null) {
+            remember(state);
             renderState(state);
         }
     }
 
+    /**
+     * Ritrova il servizio dopo un errore di rete. Se il server conserva ancora
+     * la sessione il client la riprende, così le offerte ripetute vengono
+     * deduplicate; altrimenti si registra di nuovo. Più chiamate fallite
+     * insieme producono una sola riconnessione.
+     *
+     * @param failed servizio su cui la chiamata è fallita
+     */
+    private synchronized void reconnect(AuctionService failed) throws RemoteException, AuctionException {
+        if (serviceRef.get() != failed) {
+            return; // già riconnesso per un'altra chiamata
+        }
+        System.err.println("⚠️ Connessione persa. Tentativo di riconnessione...");
+        AuctionService service = lookupService();
+        try {
+            service.renewLease(sessionRef.get());
+            serviceRef.set(service);
+            System.out.println("♻️ Riconnesso al server, sessione ripresa.");
+            return;
+        } catch (AuctionException expired) {
+            // il server ha già rimosso la sessione
+        }
+        ClientListener listener = listenerRef.get();
+        if (listener == null) {
+            listener = new ClientListener();
+            listenerRef.set(listener);
+        }
+        register(service, nicknameRef.get(), listener, false);
+    }
+
+    private AuctionService lookupService() throws RemoteException {
+        try {
+            return lookupServiceWithRetry();
+        } catch (NotBoundException ex) {
+            throw new RemoteException("Servizio RMI non trovato: " + bindingName, ex);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+            throw new RemoteException("Interrotto durante la riconnessione", ex);
+        }
+    }
+
     private AuctionService lookupServiceWithRetry() throws RemoteException, NotBoundException, InterruptedException {
         RemoteException lastRemote = null;
         NotBoundException lastBinding = null;
@@ -229,32 +406,65 @@ public class RMIClient {
     }
 
     private <T> T invokeWithReconnect(ServiceCall<T> call) throws RemoteException, AuctionException {
+        return invokeWithReconnect(call, true);
+    }
+
+    /**
+     * @param retryOnNewSession se false la chiamata viene ripetuta solo quando
+     *                          la sessione è stata ripresa: una nuova sessione
+     *                          non conosce gli id delle offerte già eseguite
+     */
+    private <T> T invokeWithReconnect(ServiceCall<T> call, boolean retryOnNewSession)
+            throws RemoteException, AuctionException {
         AuctionService service = serviceRef.get();
         Objects.requireNonNull(service, "Servizio non inizializzato");
+        long session = sessionRef.get();
         try {
             return call.call(service);
         } catch (RemoteException ex) {
-            System.err.println("⚠️ Connessione persa. Tentativo di riconnessione...");
             try {
-                ClientListener listener = listenerRef.get();
-                if (listener == null) {
-                    listener = new ClientListener();
-                    listenerRef.set(listener);
-                }
-                connectAndRegister(nicknameRef.get(), listener, false);
+                reconnect(service);
             } catch (RemoteException | AuctionException reconnectEx) {
                 throw new RemoteException("Riconnessione fallita", reconnectEx);
             }
-            AuctionService newService = serviceRef.get();
-            return call.call(newService);
+            if (!retryOnNewSession && sessionRef.get() != session) {
+                throw new AuctionException("connessione persa durante l'invio, controlla il lotto prima di ripetere l'offerta");
+            }
+            return call.call(serviceRef.get());
+        }
+    }
+
+    /**
+     * Mantiene viva la sessione anche senza comandi dell'utente; se il server
+     * l'ha già rimossa per lease scaduto il client si registra di nuovo.
+     */
+    private void renewLease() {
+        try {
+            invokeWithReconnect(service -> service.renewLease(sessionRef.get()));
+        } catch (AuctionException ex) {
+            System.err.println("⚠️ Sessione scaduta. Nuova registrazione...");
+            try {
+                connectAndRegister(nicknameRef.get(), listenerRef.get(), false);
+            } catch (RemoteException | AuctionException reconnectEx) {
+                System.err.printf("⚠️ Registrazione fallita: %s%n", reconnectEx.getMessage());
+            }
+        } catch (RemoteException ex) {
+            System.err.printf("⚠️ Heartbeat non riuscito: %s%n", ex.getMessage());
         }
     }
 
     private void gracefulShutdown() {
+        heartbeat.shutdownNow();
+        bids.shutdown();
+        try {
+            bids.awaitTermination(5, TimeUnit.SECONDS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
         AuctionService service = serviceRef.get();
         if (service != null) {
             try {
-                service.unregisterClient(nicknameRef.get());
+                service.unregisterClient(sessionRef.get());
             } catch (RemoteException ignored) {
             }
         }
@@ -272,20 +482,26 @@ public class RMIClient {
         }
 
         @Override
-        public void onAuctionUpdate(AuctionState state) {
-            stateRef.set(state);
+        public void onAuctionUpdate(AuctionState received) {
+            AuctionState state = received.withDescriptionOf(lotStates.get(received.lotId()));
+            remember(state);
             renderState(state);
         }
 
         @Override
-        public void onBidOutcome(BidOutcome outcome) {
-            String status = outcome.accepted() ? "accettata" : "rifiutata";
-            String reason = outcome.message() != null ? outcome.message() : "";
-            System.out.printf("➡️ Offerta %s (%.2f €). %s%n", status, outcome.amount(), reason);
-            if (outcome.stateSnapshot() != null) {
-                renderState(outcome.stateSnapshot());
+        public void onAuctionDelta(AuctionDelta delta) {
+            AuctionState known = lotStates.get(delta.lotId());
+            AuctionState updated = known != null ? known.withDelta(delta) : resync(delta.lotId());
+            if (updated != null && updated != known) {
+                remember(updated);
+                renderState(updated);
             }
         }
+
+        @Override
+        public void onBidOutcome(BidOutcome outcome) {
+            renderOutcome(outcome);
+        }
     }
 
     @FunctionalInterface
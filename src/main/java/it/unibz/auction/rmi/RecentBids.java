@@ -0,0 +1,115 @@
+package it.unibz.auction.rmi;
+
+import it.unibz.auction.rmi.dto.BidOutcome;
+import it.unibz.auction.rmi.exceptions.AuctionException;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Finestra di deduplicazione delle offerte di una sessione, indicizzata
+ * dall'id di richiesta scelto dal client.
+ * <p>
+ * Un'offerta ripetuta con lo stesso id, ad esempio dopo una risposta persa per
+ * un errore di rete, riceve l'esito della prima esecuzione senza essere
+ * applicata una seconda volta; se la prima è ancora in corso la ripetizione ne
+ * attende l'esito. Un'offerta che termina con {@link AuctionException} non è
+ * stata applicata (il motore lo garantisce) e non viene ricordata: la si può
+ * ripetere con lo stesso id. Qualsiasi altro errore lascia incerto se
+ * l'offerta sia stata applicata, quindi viene ricordato e restituito a ogni
+ * ripetizione invece di rieseguirla.
+ * <p>
+ * La finestra conserva gli ultimi {@code auction.bids.dedupWindow} id; un id
+ * non presente e non più recente dell'ultimo dimenticato viene rifiutato,
+ * perché non si può sapere se sia già stato eseguito. Un client non deve quindi
+ * avere più offerte in volo della dimensione della finestra.
+ */
+final class RecentBids {
+
+    private static final int WINDOW = Math.max(1, Integer.getInteger("auction.bids.dedupWindow", 128));
+
+    @FunctionalInterface
+    interface Attempt {
+        BidOutcome run() throws AuctionException;
+    }
+
+    private final int window;
+    // protetti dal monitor della finestra
+    private final LinkedHashMap<Long, CompletableFuture<BidOutcome>> outcomes = new LinkedHashMap<>();
+    private long forgottenUpTo = Long.MIN_VALUE;
+
+    RecentBids() {
+        this(WINDOW);
+    }
+
+    RecentBids(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("finestra di deduplicazione non valida: " + window);
+        }
+        this.window = window;
+    }
+
+    /**
+     * Esegue l'offerta identificata da {@code requestId}, se non è già stata eseguita.
+     *
+     * @return esito della prima esecuzione con questo id
+     * @throws AuctionException id fuori dalla finestra, oppure offerta non applicata
+     */
+    BidOutcome apply(long requestId, Attempt attempt) throws AuctionException {
+        CompletableFuture<BidOutcome> mine = new CompletableFuture<>();
+        CompletableFuture<BidOutcome> previous;
+        synchronized (this) {
+            previous = outcomes.get(requestId);
+            if (previous == null) {
+                if (requestId <= forgottenUpTo) {
+                    throw new AuctionException("Richiesta " + requestId + " troppo vecchia per essere ripetuta");
+                }
+                outcomes.put(requestId, mine);
+                evictOldest();
+            }
+        }
+        if (previous != null) {
+            return await(previous);
+        }
+        try {
+            BidOutcome outcome = attempt.run();
+            mine.complete(outcome);
+            return outcome;
+        } catch (AuctionException ex) {
+            synchronized (this) {
+                outcomes.remove(requestId, mine);
+            }
+            mine.completeExceptionally(ex);
+            throw ex;
+        } catch (RuntimeException ex) {
+            mine.completeExceptionally(ex);
+            throw ex;
+        }
+    }
+
+    private void evictOldest() {
+        Iterator<Map.Entry<Long, CompletableFuture<BidOutcome>>> oldest = outcomes.entrySet().iterator();
+        while (outcomes.size() > window) {
+            long forgotten = oldest.next().getKey();
+            oldest.remove();
+            forgottenUpTo = Math.max(forgottenUpTo, forgotten);
+        }
+    }
+
+    private static BidOutcome await(CompletableFuture<BidOutcome> running) throws AuctionException {
+        try {
+            return running.join();
+        } catch (CompletionException ex) {
+            if (ex.getCause() instanceof AuctionException auction) {
+                throw new AuctionException(auction.getMessage());
+            }
+            if (ex.getCause() instanceof RuntimeException failure) {
+                throw failure;
+            }
+            throw ex;
+        }
+    }
+}
@@ -0,0 +1,142 @@
+package it.unibz.auction.rmi;
+
+import it.unibz.auction.rmi.dto.AuctionDelta;
+import it.unibz.auction.rmi.dto.AuctionState;
+import it.unibz.auction.rmi.dto.BidOutcome;
+
+import java.rmi.RemoteException;
+
+/**
+ * Evento in uscita verso un client, consegnato in modo asincrono dal {@link EventFanout}.
+ */
+sealed interface ServerEvent {
+
+    /**
+     * Corsia di consegna: nella coda di una sessione gli eventi d'asta
+     * precedono sempre i testi, l'ordine è preservato solo entro la stessa corsia.
+     */
+    enum Lane {
+        /** stati dei lotti ed esiti delle offerte */
+        AUCTION,
+        /** messaggi di sistema e chat */
+        TEXT
+    }
+
+    /**
+     * Recapita l'evento tramite la callback remota del client.
+     *
+     * @param callback callback del destinatario
+     * @throws RemoteException problemi di comunicazione RMI
+     */
+    void deliver(ClientCallback callback) throws RemoteException;
+
+    /**
+     * Chiave di fusione: due eventi in coda con la stessa chiave non nulla sono
+     * ridondanti e solo il più recente viene consegnato.
+     *
+     * @return chiave di fusione o null se l'evento va sempre consegnato
+     */
+    default Object coalescingKey() {
+        return null;
+    }
+
+    /**
+     * Fonde questo evento con quello ancora in coda con la stessa chiave.
+     *
+     * @param pending evento non ancora consegnato
+     * @return evento da consegnare al posto di entrambi
+     */
+    default ServerEvent mergeWith(ServerEvent pending) {
+        return this;
+    }
+
+    default Lane lane() {
+        return Lane.AUCTION;
+    }
+
+    /**
+     * @return versione dello stato del lotto da cui deriva l'evento, -1 se non versionato
+     */
+    default long version() {
+        return -1;
+    }
+
+    /**
+     * @return true se l'evento è l'ultimo stato di un lotto chiuso
+     */
+    default boolean closesLot() {
+        return false;
+    }
+
+    record SystemMessage(String message) implements ServerEvent {
+        @Override
+        public void deliver(ClientCallback callback) throws RemoteException {
+            callback.onSystemMessage(message);
+        }
+
+        @Override
+        public Lane lane() {
+            return Lane.TEXT;
+        }
+    }
+
+    /**
+     * @param version versione dello stato da cui è stato ricavato lo snapshot
+     * @param state   snapshot da consegnare
+     */
+    record AuctionUpdate(long version, AuctionState state) implements ServerEvent {
+        @Override
+        public void deliver(ClientCallback callback) throws RemoteException {
+            callback.onAuctionUpdate(state);
+        }
+
+        @Override
+        public Object coalescingKey() {
+            return state.lotId();
+        }
+
+        @Override
+        public boolean closesLot() {
+            return !state.active();
+        }
+    }
+
+    /**
+     * Variazione di prezzo, miglior offerente o scadenza di un lotto dopo un'offerta.
+     */
+    record AuctionChange(AuctionDelta delta) implements ServerEvent {
+        @Override
+        public void deliver(ClientCallback callback) throws RemoteException {
+            callback.onAuctionDelta(delta);
+        }
+
+        @Override
+        public long version() {
+            return delta.version();
+        }
+
+        @Override
+        public Object coalescingKey() {
+            return delta.lotId();
+        }
+
+        /**
+         * Uno snapshot completo ancora in coda (ad esempio l'apertura del lotto)
+         * non va perso: la variazione viene applicata allo snapshot.
+         */
+        @Override
+        public ServerEvent mergeWith(ServerEvent pending) {
+            if (pending instanceof AuctionUpdate update) {
+                return new AuctionUpdate(delta.version(), update.state().withDelta(delta));
+            }
+            return this;
+        }
+    }
+
+    record BidResult(BidOutcome outcome) implements ServerEvent {
+        @Override
+        public void deliver(ClientCallback callback) throws RemoteException {
+            callback.onBidOutcome(outcome);
+        }
+    }
+}
@@ -0,0 +1,70 @@
+package it.unibz.auction.rmi;
+
+import java.security.SecureRandom;
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Tabella delle sessioni indicizzata dall'handle restituito da
+ * {@link AuctionService#registerClient}.
+ * <p>
+ * I 32 bit bassi dell'handle sono l'indice dello slot, quelli alti un valore
+ * casuale scelto alla registrazione: la ricerca è un accesso ad array senza
+ * lock e un handle indovinato o appartenuto a una sessione chiusa, anche se
+ * punta a uno slot riutilizzato, non corrisponde alla sessione corrente.
+ */
+final class SessionTable {
+
+    private final SecureRandom random = new SecureRandom();
+    // slot liberi e crescita della tabella protetti dal monitor della tabella
+    private final ArrayDeque<Integer> freeSlots = new ArrayDeque<>();
+    private volatile AtomicReferenceArray<ClientSession> slots = new AtomicReferenceArray<>(16);
+    private int used;
+
+    /**
+     * Inserisce la sessione e le assegna il suo handle.
+     *
+     * @return handle della sessione
+     */
+    synchronized long add(ClientSession session) {
+        Integer free = freeSlots.pollFirst();
+        int index = free != null ? free : used++;
+        AtomicReferenceArray<ClientSession> current = slots;
+        if (index == current.length()) {
+            AtomicReferenceArray<ClientSession> grown = new AtomicReferenceArray<>(current.length() * 2);
+            for (int i = 0; i < current.length(); i++) {
+                grown.set(i, current.get(i));
+            }
+            slots = current = grown;
+        }
+        long handle = ((long) random.nextInt() << 32) | index;
+        session.assignHandle(handle);
+        current.set(index, session);
+        return handle;
+    }
+
+    /**
+     * @return sessione dell'handle, null se l'handle non è valido o la sessione è stata rimossa
+     */
+    ClientSession get(long handle) {
+        int index = (int) handle;
+        AtomicReferenceArray<ClientSession> current = slots;
+        if (index < 0 || index >= current.length()) {
+            return null;
+        }
+        ClientSession session = current.get(index);
+        return session != null && session.handle() == handle ? session : null;
+    }
+
+    /**
+     * Libera lo slot della sessione, se è ancora quella registrata.
+     */
+    synchronized void remove(ClientSession session) {
+        int index = (int) session.handle();
+        AtomicReferenceArray<ClientSession> current = slots;
+        if (index >= 0 && index < current.length() && current.get(index) == session) {
+            current.set(index, null);
+            freeSlots.addLast(index);
+        }
+    }
+}
@@ -0,0 +1,33 @@
+package it.unibz.auction.rmi.dto;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.time.Instant;
+
+/**
+ * Variazione di un lotto dopo un'offerta accettata: contiene solo i campi che
+ * un'offerta può modificare, con valori assoluti. Si applica con
+ * {@link AuctionState#withDelta(AuctionDelta)} allo stato dello stesso lotto.
+ *
+ * @param lotId             identificativo del lotto
+ * @param version           versione dello stato dopo l'offerta
+ * @param currentPriceCents nuovo prezzo corrente in centesimi
+ * @param topBidder         nuovo miglior offerente
+ * @param roundEndTime      scadenza del round, eventualmente prorogata
+ */
+public record AuctionDelta(
+        long lotId,
+        long version,
+        long currentPriceCents,
+        String topBidder,
+        Instant roundEndTime
+) implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    @Serial
+    private Object writeReplace() {
+        return new WireForm(this);
+    }
+}
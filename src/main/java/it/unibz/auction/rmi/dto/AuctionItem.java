@@ -6,22 +6,44 @@ import java.io.Serializable;
 /**
  * Rappresenta un oggetto messo all'asta.
  *
- * @param name            nome breve
- * @param description     descrizione estesa
- * @param startPrice      prezzo di partenza
- * @param minIncrement    incremento minimo consentito
- * @param durationSeconds durata della sessione in secondi
+ * @param name              nome breve
+ * @param description       descrizione estesa
+ * @param startPriceCents   prezzo di partenza in centesimi
+ * @param minIncrementCents incremento minimo consentito in centesimi
+ * @param durationSeconds   durata della sessione in secondi
  */
 public record AuctionItem(
         String name,
         String description,
-        double startPrice,
-        double minIncrement,
+        long startPriceCents,
+        long minIncrementCents,
         int durationSeconds
 ) implements Serializable {
 
     @Serial
-    private static final long serialVersionUID = 1L;
-}
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * Crea un articolo con importi in euro, arrotondati al centesimo.
+     *
+     * @throws IllegalArgumentException se un importo è NaN o infinito
+     */
+    public static AuctionItem ofEuros(String name, String description, double startPrice, double minIncrement,
+                                      int durationSeconds) {
+        return new AuctionItem(name, description, Money.toCents(startPrice), Money.toCents(minIncrement),
+                durationSeconds);
+    }
+
+    public double startPrice() {
+        return Money.toDouble(startPriceCents);
+    }
 
+    public double minIncrement() {
+        return Money.toDouble(minIncrementCents);
+    }
 
+    @Serial
+    private Object writeReplace() {
+        return new WireForm(this);
+    }
+}
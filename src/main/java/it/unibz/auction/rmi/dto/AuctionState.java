@@ -3,31 +3,83 @@ package it.unibz.auction.rmi.dto;
 import java.io.Serial;
 import java.io.Serializable;
 import java.time.Instant;
+import java.util.Objects;
 import java.util.Optional;
 
 /**
  * Snapshot serializzabile dello stato corrente dell'asta.
  *
- * @param itemName         nome dell'articolo
- * @param itemDescription  descrizione dell'articolo
- * @param currentPrice     prezzo corrente
- * @param minIncrement     incremento minimo richiesto
- * @param topBidder        miglior offerente (facoltativo)
- * @param roundEndTime     timestamp in cui termina il round, se attivo
- * @param active           true se è in corso un round
+ * @param lotId             identificativo del lotto (0 se nessun lotto)
+ * @param version           versione monotona dello stato del lotto
+ * @param itemName          nome dell'articolo
+ * @param itemDescription   descrizione dell'articolo; null nelle notifiche a una
+ *                          sessione che l'ha già ricevuta per lo stesso lotto
+ * @param currentPriceCents prezzo corrente in centesimi
+ * @param minIncrementCents incremento minimo richiesto in centesimi
+ * @param topBidder         miglior offerente (facoltativo)
+ * @param roundEndTime      timestamp in cui termina il round, se attivo
+ * @param active            true se è in corso un round
  */
 public record AuctionState(
+        long lotId,
+        long version,
         String itemName,
         String itemDescription,
-        double currentPrice,
-        double minIncrement,
+        long currentPriceCents,
+        long minIncrementCents,
         String topBidder,
         Instant roundEndTime,
         boolean active
 ) implements Serializable {
 
     @Serial
-    private static final long serialVersionUID = 1L;
+    private static final long serialVersionUID = 4L;
+
+    public double currentPrice() {
+        return Money.toDouble(currentPriceCents);
+    }
+
+    public double minIncrement() {
+        return Money.toDouble(minIncrementCents);
+    }
+
+    public long minimumRequiredCents() {
+        return currentPriceCents + minIncrementCents;
+    }
+
+    /**
+     * Applica una variazione dello stesso lotto. Le variazioni riportano valori
+     * assoluti, quindi basta che siano più recenti dello stato corrente.
+     *
+     * @return lo stato aggiornato, oppure questo stesso stato se la variazione è più vecchia
+     * @throws IllegalArgumentException se la variazione riguarda un altro lotto
+     */
+    public AuctionState withDelta(AuctionDelta delta) {
+        if (delta.lotId() != lotId) {
+            throw new IllegalArgumentException("Variazione del lotto " + delta.lotId() + " su lotto " + lotId);
+        }
+        if (delta.version() <= version) {
+            return this;
+        }
+        return new AuctionState(lotId, delta.version(), itemName, itemDescription, delta.currentPriceCents(),
+                minIncrementCents, delta.topBidder(), delta.roundEndTime(), active);
+    }
+
+    /**
+     * Completa la descrizione omessa dal server con quella di uno stato già
+     * ricevuto per lo stesso lotto e lo stesso articolo.
+     *
+     * @param known stato precedente del lotto, può essere null
+     * @return lo stato con la descrizione, oppure questo stesso stato
+     */
+    public AuctionState withDescriptionOf(AuctionState known) {
+        if (itemDescription != null || known == null || known.lotId != lotId
+                || known.itemDescription == null || !Objects.equals(itemName, known.itemName)) {
+            return this;
+        }
+        return new AuctionState(lotId, version, itemName, known.itemDescription, currentPriceCents,
+                minIncrementCents, topBidder, roundEndTime, active);
+    }
 
     public Optional<String> topBidderOpt() {
         return Optional.ofNullable(topBidder);
@@ -36,6 +88,9 @@ public record AuctionState(
     public Optional<Instant> roundEndOpt() {
         return Optional.ofNullable(roundEndTime);
     }
-}
-
 
+    @Serial
+    private Object writeReplace() {
+        return new WireForm(this);
+    }
+}
@@ -6,22 +6,33 @@ import java.io.Serializable;
 /**
  * Risposta inviata tramite callback dopo una proposta d'asta.
  *
- * @param accepted         true se l'offerta è stata accettata
- * @param amount           importo proposto dal client
- * @param minimumRequired  minimo accettabile al momento della proposta
- * @param message          motivazione o messaggio user-friendly
- * @param stateSnapshot    stato dell'asta dopo la valutazione
+ * @param accepted              true se l'offerta è stata accettata
+ * @param amountCents           importo proposto dal client, in centesimi
+ * @param minimumRequiredCents  minimo accettabile al momento della proposta, in centesimi
+ * @param message               motivazione o messaggio user-friendly
+ * @param stateSnapshot         stato dell'asta dopo la valutazione
  */
 public record BidOutcome(
         boolean accepted,
-        double amount,
-        double minimumRequired,
+        long amountCents,
+        long minimumRequiredCents,
         String message,
         AuctionState stateSnapshot
 ) implements Serializable {
 
     @Serial
-    private static final long serialVersionUID = 1L;
-}
+    private static final long serialVersionUID = 2L;
+
+    public double amount() {
+        return Money.toDouble(amountCents);
+    }
 
+    public double minimumRequired() {
+        return Money.toDouble(minimumRequiredCents);
+    }
 
+    @Serial
+    private Object writeReplace() {
+        return new WireForm(this);
+    }
+}
@@ -0,0 +1,32 @@
+package it.unibz.auction.rmi.dto;
+
+import java.io.Serial;
+import java.io.Serializable;
+
+/**
+ * Singola offerta all'interno di un invio a lotti.
+ *
+ * @param lotId       identificativo del lotto
+ * @param amountCents importo offerto in centesimi
+ */
+public record BidRequest(
+        long lotId,
+        long amountCents
+) implements Serializable {
+
+    @Serial
+    private static final long serialVersionUID = 2L;
+
+    /**
+     * Crea un'offerta con importo in euro, arrotondato al centesimo.
+     *
+     * @throws IllegalArgumentException se l'importo è NaN o infinito
+     */
+    public static BidRequest ofEuros(long lotId, double amount) {
+        return new BidRequest(lotId, Money.toCents(amount));
+    }
+
+    public double amount() {
+        return Money.toDouble(amountCents);
+    }
+}
@@ -0,0 +1,45 @@
+package it.unibz.auction.rmi.dto;
+
+import java.util.Set;
+
+/**
+ * Riferimenti agli articoli per id di lotto nel formato compatto dei DTO.
+ * <p>
+ * Lato mittente, chi consegna uno stato a un destinatario noto dichiara con
+ * {@link #enterRecipient(Set)} quali lotti quel destinatario ha già ricevuto per
+ * intero: per questi la descrizione dell'articolo non viene ripetuta. Il
+ * ricevente riceve quindi stati senza descrizione e la ricompone dallo stato
+ * del lotto che conserva per la propria sessione (vedi
+ * {@link AuctionState#withDescriptionOf(AuctionState)}): l'insieme dei lotti noti
+ * e la cache del ricevente nascono e muoiono con la stessa sessione.
+ */
+public final class ItemCatalog {
+
+    private static final ThreadLocal<Set<Long>> RECIPIENT = new ThreadLocal<>();
+
+    private ItemCatalog() {
+    }
+
+    /**
+     * Attiva il contesto di un destinatario per le serializzazioni eseguite dal
+     * thread corrente, fino a {@link #exitRecipient()}.
+     *
+     * @param knownLots lotti di cui il destinatario ha già la descrizione; viene
+     *                  aggiornato man mano che le descrizioni vengono inviate
+     */
+    public static void enterRecipient(Set<Long> knownLots) {
+        RECIPIENT.set(knownLots);
+    }
+
+    public static void exitRecipient() {
+        RECIPIENT.remove();
+    }
+
+    /**
+     * @return true se la descrizione del lotto va scritta, false se il destinatario la conosce già
+     */
+    static boolean mustSendDescription(long lotId) {
+        Set<Long> known = RECIPIENT.get();
+        return known == null || lotId == 0 || known.add(lotId);
+    }
+}
@@ -0,0 +1,62 @@
+package it.unibz.auction.rmi.dto;
+
+import java.math.BigDecimal;
+
+/**
+ * Importi in virgola fissa: ogni prezzo è un {@code long} di centesimi.
+ * <p>
+ * Confronti e somme sono esatti e non esistono valori NaN o infiniti. I metodi
+ * di conversione da e verso {@code double} servono solo ai confini (API remota
+ * storica, input dell'utente) e rifiutano valori non rappresentabili.
+ */
+public final class Money {
+
+    public static final long CENTS_PER_UNIT = 100;
+
+    private Money() {
+    }
+
+    /**
+     * Converte un importo in euro nel numero di centesimi più vicino.
+     *
+     * @throws IllegalArgumentException se l'importo è NaN, infinito o fuori scala
+     */
+    public static long toCents(double amount) {
+        if (Double.isNaN(amount) || Double.isInfinite(amount)
+                || Math.abs(amount) >= Long.MAX_VALUE / (double) CENTS_PER_UNIT) {
+            throw new IllegalArgumentException("Importo non valido: " + amount);
+        }
+        return Math.round(amount * CENTS_PER_UNIT);
+    }
+
+    public static double toDouble(long cents) {
+        return cents / (double) CENTS_PER_UNIT;
+    }
+
+    /**
+     * Legge un importo digitato dall'utente, accettando sia il punto sia la
+     * virgola come separatore decimale e al massimo due decimali.
+     *
+     * @throws NumberFormatException se il testo non è un importo valido
+     */
+    public static long parse(String text) {
+        BigDecimal value = new BigDecimal(text.trim().replace(',', '.'));
+        if (value.scale() > 2 && value.stripTrailingZeros().scale() > 2) {
+            throw new NumberFormatException("Al massimo due decimali: " + text);
+        }
+        try {
+            return value.movePointRight(2).longValueExact();
+        } catch (ArithmeticException ex) {
+            throw new NumberFormatException("Importo fuori scala: " + text);
+        }
+    }
+
+    /**
+     * Formatta i centesimi come {@code 1234.50}, indipendentemente dalla locale.
+     */
+    public static String format(long cents) {
+        long abs = Math.abs(cents);
+        return (cents < 0 ? "-" : "") + abs / CENTS_PER_UNIT + "." + (abs % CENTS_PER_UNIT < 10 ? "0" : "")
+                + abs % CENTS_PER_UNIT;
+    }
+}
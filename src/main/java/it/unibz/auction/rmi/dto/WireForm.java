@@ -0,0 +1,300 @@
+package it.unibz.auction.rmi.dto;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.Externalizable;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInput;
+import java.io.ObjectOutput;
+import java.io.ObjectStreamException;
+import java.io.Serial;
+import java.nio.charset.StandardCharsets;
+import java.time.Instant;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Forma serializzata compatta dei DTO, usata tramite {@code writeReplace}.
+ * <p>
+ * I record ignorano {@code writeExternal}, quindi ogni DTO si sostituisce con
+ * questo proxy, che scrive un tag e i campi in binario: interi e centesimi come
+ * varint, istanti come millisecondi, stringhe in UTF-8 con lunghezza varint.
+ * Nello stream compare un solo descrittore di classe, senza descrittori dei
+ * campi. La descrizione di un articolo viene omessa quando il destinatario la
+ * conosce già (vedi {@link ItemCatalog}).
+ * <p>
+ * I byte di uno {@link AuctionState} vengono codificati una sola volta per
+ * istanza e riusati da tutti i messaggi che la contengono: il server condivide
+ * la stessa istanza per versione di lotto tra notifiche e letture, quindi N
+ * destinatari costano una sola codifica. La cache è indicizzata per id di lotto
+ * in un numero fisso di slot e si invalida da sola quando cambia l'istanza.
+ */
+final class WireForm implements Externalizable {
+
+    @Serial
+    private static final long serialVersionUID = 1L;
+
+    private static final byte ITEM = 1;
+    private static final byte STATE = 2;
+    private static final byte OUTCOME = 3;
+    private static final byte DELTA = 4;
+
+    private static final int ACTIVE = 1;
+    private static final int HAS_ITEM = 1 << 1;
+    private static final int HAS_DESCRIPTION = 1 << 2;
+    private static final int HAS_BIDDER = 1 << 3;
+    private static final int HAS_END = 1 << 4;
+    private static final int HAS_STATE = 1 << 5;
+    private static final int HAS_MESSAGE = 1 << 6;
+
+    private static final int CACHE_SLOTS = 256;
+    private static final AtomicReferenceArray<EncodedState> ENCODED = new AtomicReferenceArray<>(CACHE_SLOTS);
+
+    private Object value;
+
+    public WireForm() {
+        // richiesto da Externalizable
+    }
+
+    WireForm(Object value) {
+        this.value = value;
+    }
+
+    @Override
+    public void writeExternal(ObjectOutput out) throws IOException {
+        switch (value) {
+            case AuctionItem item -> {
+                out.writeByte(ITEM);
+                writeItem(out, item);
+            }
+            case AuctionState state -> {
+                out.writeByte(STATE);
+                writeState(out, state);
+            }
+            case BidOutcome outcome -> {
+                out.writeByte(OUTCOME);
+                writeOutcome(out, outcome);
+            }
+            case AuctionDelta delta -> {
+                out.writeByte(DELTA);
+                writeDelta(out, delta);
+            }
+            default -> throw new IOException("Tipo non supportato: " + value.getClass().getName());
+        }
+    }
+
+    @Override
+    public void readExternal(ObjectInput in) throws IOException {
+        byte tag = in.readByte();
+        value = switch (tag) {
+            case ITEM -> readItem(in);
+            case STATE -> readState(in);
+            case OUTCOME -> readOutcome(in);
+            case DELTA -> readDelta(in);
+            default -> throw new InvalidObjectException("Tag sconosciuto: " + tag);
+        };
+    }
+
+    @Serial
+    private Object readResolve() throws ObjectStreamException {
+        return value;
+    }
+
+    static void writeItem(DataOutput out, AuctionItem item) throws IOException {
+        writeString(out, item.name());
+        writeString(out, item.description());
+        writeVarLong(out, item.startPriceCents());
+        writeVarLong(out, item.minIncrementCents());
+        writeVarLong(out, item.durationSeconds());
+    }
+
+    static AuctionItem readItem(DataInput in) throws IOException {
+        return new AuctionItem(readString(in), readString(in), readVarLong(in), readVarLong(in),
+                (int) readVarLong(in));
+    }
+
+    static void writeState(DataOutput out, AuctionState state) throws IOException {
+        boolean sendDescription = state.itemName() != null && state.itemDescription() != null
+                && ItemCatalog.mustSendDescription(state.lotId());
+        out.write(encoded(state, sendDescription));
+    }
+
+    private static byte[] encoded(AuctionState state, boolean withDescription) throws IOException {
+        int slot = (int) (state.lotId() & (CACHE_SLOTS - 1));
+        EncodedState cached = ENCODED.get(slot);
+        if (cached == null || cached.state != state) {
+            cached = new EncodedState(state);
+            ENCODED.set(slot, cached);
+        }
+        byte[] bytes = withDescription ? cached.withDescription : cached.withoutDescription;
+        if (bytes == null) {
+            ByteArrayOutputStream buffer = new ByteArrayOutputStream(128);
+            encodeState(new DataOutputStream(buffer), state, withDescription);
+            bytes = buffer.toByteArray();
+            if (withDescription) {
+                cached.withDescription = bytes;
+            } else {
+                cached.withoutDescription = bytes;
+            }
+        }
+        return bytes;
+    }
+
+    private static void encodeState(DataOutput out, AuctionState state, boolean withDescription) throws IOException {
+        boolean hasItem = state.itemName() != null;
+        boolean sendDescription = withDescription && hasItem && state.itemDescription() != null;
+        int flags = (state.active() ? ACTIVE : 0)
+                | (hasItem ? HAS_ITEM : 0)
+                | (sendDescription ? HAS_DESCRIPTION : 0)
+                | (state.topBidder() != null ? HAS_BIDDER : 0)
+                | (state.roundEndTime() != null ? HAS_END : 0);
+        out.writeByte(flags);
+        writeVarLong(out, state.lotId());
+        writeVarLong(out, state.version());
+        if (hasItem) {
+            writeString(out, state.itemName());
+        }
+        if (sendDescription) {
+            writeString(out, state.itemDescription());
+        }
+        writeVarLong(out, state.currentPriceCents());
+        writeVarLong(out, state.minIncrementCents());
+        if (state.topBidder() != null) {
+            writeString(out, state.topBidder());
+        }
+        if (state.roundEndTime() != null) {
+            writeVarLong(out, state.roundEndTime().toEpochMilli());
+        }
+    }
+
+    static AuctionState readState(DataInput in) throws IOException {
+        int flags = in.readUnsignedByte();
+        long lotId = readVarLong(in);
+        long version = readVarLong(in);
+        String name = (flags & HAS_ITEM) != 0 ? readString(in) : null;
+        String description = (flags & HAS_DESCRIPTION) != 0 ? readString(in) : null;
+        long price = readVarLong(in);
+        long increment = readVarLong(in);
+        String bidder = (flags & HAS_BIDDER) != 0 ? readString(in) : null;
+        Instant end = (flags & HAS_END) != 0 ? Instant.ofEpochMilli(readVarLong(in)) : null;
+        return new AuctionState(lotId, version, name, description, price, increment, bidder, end, (flags & ACTIVE) != 0);
+    }
+
+    static void writeOutcome(DataOutput out, BidOutcome outcome) throws IOException {
+        int flags = (outcome.accepted() ? ACTIVE : 0)
+                | (outcome.stateSnapshot() != null ? HAS_STATE : 0)
+                | (outcome.message() != null ? HAS_MESSAGE : 0);
+        out.writeByte(flags);
+        writeZigZag(out, outcome.amountCents());
+        writeZigZag(out, outcome.minimumRequiredCents());
+        if (outcome.message() != null) {
+            writeString(out, outcome.message());
+        }
+        if (outcome.stateSnapshot() != null) {
+            writeState(out, outcome.stateSnapshot());
+        }
+    }
+
+    static BidOutcome readOutcome(DataInput in) throws IOException {
+        int flags = in.readUnsignedByte();
+        long amount = readZigZag(in);
+        long minimum = readZigZag(in);
+        String message = (flags & HAS_MESSAGE) != 0 ? readString(in) : null;
+        AuctionState state = (flags & HAS_STATE) != 0 ? readState(in) : null;
+        return new BidOutcome((flags & ACTIVE) != 0, amount, minimum, message, state);
+    }
+
+    static void writeDelta(DataOutput out, AuctionDelta delta) throws IOException {
+        int flags = (delta.topBidder() != null ? HAS_BIDDER : 0)
+                | (delta.roundEndTime() != null ? HAS_END : 0);
+        out.writeByte(flags);
+        writeVarLong(out, delta.lotId());
+        writeVarLong(out, delta.version());
+        writeVarLong(out, delta.currentPriceCents());
+        if (delta.topBidder() != null) {
+            writeString(out, delta.topBidder());
+        }
+        if (delta.roundEndTime() != null) {
+            writeVarLong(out, delta.roundEndTime().toEpochMilli());
+        }
+    }
+
+    static AuctionDelta readDelta(DataInput in) throws IOException {
+        int flags = in.readUnsignedByte();
+        long lotId = readVarLong(in);
+        long version = readVarLong(in);
+        long price = readVarLong(in);
+        String bidder = (flags & HAS_BIDDER) != 0 ? readString(in) : null;
+        Instant end = (flags & HAS_END) != 0 ? Instant.ofEpochMilli(readVarLong(in)) : null;
+        return new AuctionDelta(lotId, version, price, bidder, end);
+    }
+
+    /**
+     * Intero non negativo in base 128, 7 bit per byte con il bit alto di continuazione.
+     */
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        if (value < 0) {
+            throw new IOException("Valore negativo non codificabile come varint: " + value);
+        }
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long result = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            int b = in.readUnsignedByte();
+            result |= (long) (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return result;
+            }
+        }
+        throw new InvalidObjectException("Varint troppo lungo");
+    }
+
+    /**
+     * Intero con segno: la codifica zig-zag mantiene corti anche i valori negativi piccoli.
+     */
+    static void writeZigZag(DataOutput out, long value) throws IOException {
+        writeVarLong(out, (value << 1) ^ (value >> 63));
+    }
+
+    static long readZigZag(DataInput in) throws IOException {
+        long raw = readVarLong(in);
+        return (raw >>> 1) ^ -(raw & 1);
+    }
+
+    static void writeString(DataOutput out, String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        writeVarLong(out, bytes.length);
+        out.write(bytes);
+    }
+
+    static String readString(DataInput in) throws IOException {
+        long length = readVarLong(in);
+        if (length > 1 << 20) {
+            throw new InvalidObjectException("Stringa troppo lunga: " + length);
+        }
+        byte[] bytes = new byte[(int) length];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Codifiche di un'istanza condivisa, con e senza descrizione dell'articolo.
+     */
+    private static final class EncodedState {
+        final AuctionState state;
+        volatile byte[] withDescription;
+        volatile byte[] withoutDescription;
+
+        EncodedState(AuctionState state) {
+            this.state = state;
+        }
+    }
+}
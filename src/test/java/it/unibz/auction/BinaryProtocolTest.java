@@ -0,0 +1,146 @@
+package it.unibz.auction;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedInputStream;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ProtocolException;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BinaryProtocolTest {
+
+    @Test
+    void testFramesRoundTrip() throws Exception {
+        BinaryProtocol.Encoder encoder = new BinaryProtocol.Encoder(ByteBuffer.allocate(8));
+        encoder.bidOk(7, 51_050, "àlice")
+                .info(7, 51_050, 1_000, "Laptop", "àlice")
+                .chat("bob", "ciao 👋")
+                .bid(7, 52_050);
+        ByteBuffer in = encoder.toReadOnlyBuffer();
+        BinaryProtocol.Frame frame = new BinaryProtocol.Frame();
+
+        assertTrue(frame.next(in, BinaryProtocol.MAX_FRAME));
+        assertEquals(BinaryProtocol.BIDOK, frame.opcode());
+        assertEquals(7, frame.longAt(0));
+        assertEquals(51_050, frame.longAt(1));
+        assertEquals("àlice", frame.text());
+
+        assertTrue(frame.next(in, BinaryProtocol.MAX_FRAME));
+        assertEquals(BinaryProtocol.INFO, frame.opcode());
+        assertEquals(1_000, frame.longAt(2));
+        assertEquals("Laptop", frame.label());
+        assertEquals("àlice", frame.text());
+
+        assertTrue(frame.next(in, BinaryProtocol.MAX_FRAME));
+        assertEquals("bob", frame.label());
+        assertEquals("ciao 👋", frame.text());
+
+        assertTrue(frame.next(in, BinaryProtocol.MAX_FRAME));
+        assertEquals(BinaryProtocol.BID, frame.opcode());
+        assertEquals(52_050, frame.longAt(1));
+        assertFalse(in.hasRemaining());
+    }
+
+    @Test
+    void testIncompleteAndMalformedFrames() throws Exception {
+        ByteBuffer bytes = new BinaryProtocol.Encoder().bid(1, 100).toReadOnlyBuffer();
+        BinaryProtocol.Frame frame = new BinaryProtocol.Frame();
+
+        ByteBuffer truncated = bytes.duplicate().limit(bytes.limit() - 1);
+        assertFalse(frame.next(truncated, BinaryProtocol.MAX_CLIENT_FRAME));
+        assertEquals(0, truncated.position());
+
+        // BID con un solo intero
+        ByteBuffer shortBid = ByteBuffer.allocate(11).putShort((short) 9).put((byte) BinaryProtocol.BID).putLong(1).flip();
+        assertThrows(ProtocolException.class, () -> frame.next(shortBid, BinaryProtocol.MAX_CLIENT_FRAME));
+        ByteBuffer unknown = ByteBuffer.allocate(3).putShort((short) 1).put((byte) 0x7F).flip();
+        assertThrows(ProtocolException.class, () -> frame.next(unknown, BinaryProtocol.MAX_CLIENT_FRAME));
+        ByteBuffer huge = ByteBuffer.allocate(2).putShort((short) 5000).flip();
+        assertThrows(ProtocolException.class, () -> frame.next(huge, BinaryProtocol.MAX_CLIENT_FRAME));
+    }
+
+    @Test
+    void testBinaryClientNegotiatesOnTextPort() throws Exception {
+        for (Server.IoMode mode : Server.IoMode.values()) {
+            Server server = new Server(0, mode, 1, Server.defaultItems());
+            Thread acceptor = new Thread(() -> {
+                try {
+                    server.start();
+                } catch (IOException ex) {
+                    throw new IllegalStateException(ex);
+                }
+            });
+            acceptor.setDaemon(true);
+            acceptor.start();
+            while (server.port() == 0) {
+                Thread.sleep(10);
+            }
+            try (Socket socket = new Socket("127.0.0.1", server.port())) {
+                socket.setSoTimeout(5_000);
+                DataInputStream in = new DataInputStream(new BufferedInputStream(socket.getInputStream()));
+                OutputStream out = socket.getOutputStream();
+                // il saluto testuale è già in viaggio: va scartato fino alla risposta binaria
+                out.write(BinaryProtocol.helloBytes());
+                skipText(in);
+
+                BinaryProtocol.Encoder encoder = new BinaryProtocol.Encoder();
+                out.write(frames(encoder.join("robot").bid(0, 51_000).bid(99, 60_000)));
+
+                BinaryProtocol.Frame frame = new BinaryProtocol.Frame();
+                long lot = 0;
+                while (lot == 0) {
+                    ByteBuffer bytes = read(in);
+                    frame.next(bytes, BinaryProtocol.MAX_FRAME);
+                    if (frame.opcode() == BinaryProtocol.BIDOK) {
+                        lot = frame.longAt(0);
+                        assertEquals(51_000, frame.longAt(1), mode.toString());
+                        assertEquals("robot", frame.text());
+                        // INFO nella stessa scrittura, subito dopo
+                        frame.next(read(in), BinaryProtocol.MAX_FRAME);
+                        assertEquals(BinaryProtocol.INFO, frame.opcode());
+                        assertEquals("Laptop", frame.label());
+                    }
+                }
+                do {
+                    frame.next(read(in), BinaryProtocol.MAX_FRAME);
+                } while (frame.opcode() != BinaryProtocol.BIDFAIL);
+                assertEquals(99, frame.longAt(0), mode.toString());
+            } finally {
+                server.stop();
+            }
+        }
+    }
+
+    private static void skipText(InputStream in) throws IOException {
+        int b;
+        while ((b = in.read()) != (BinaryProtocol.MAGIC & 0xFF)) {
+            assertNotEquals(-1, b);
+            while (b != '\n') {
+                b = in.read();
+            }
+        }
+        byte[] rest = in.readNBytes(BinaryProtocol.HELLO.capacity() - 1);
+        ByteBuffer hello = ByteBuffer.allocate(rest.length + 1).put(BinaryProtocol.MAGIC).put(rest).flip();
+        BinaryProtocol.checkHello(hello);
+    }
+
+    private static ByteBuffer read(DataInputStream in) throws IOException {
+        int length = in.readUnsignedShort();
+        ByteBuffer bytes = ByteBuffer.allocate(2 + length).putShort((short) length);
+        in.readFully(bytes.array(), 2, length);
+        return bytes.position(0);
+    }
+
+    private static byte[] frames(BinaryProtocol.Encoder encoder) {
+        ByteBuffer bytes = encoder.toReadOnlyBuffer();
+        byte[] array = new byte[bytes.remaining()];
+        bytes.get(array);
+        return array;
+    }
+}
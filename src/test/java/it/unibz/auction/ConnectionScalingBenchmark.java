@@ -0,0 +1,206 @@
+package it.unibz.auction;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Scalabilità del server TCP in funzione delle connessioni aperte, per le tre
+ * modalità di esecuzione: thread di piattaforma, virtual thread (entrambe con
+ * I/O bloccante) e front end NIO. Per ogni livello apre N connessioni inattive
+ * (i messaggi broadcast vengono letti e scartati da un selettore lato client),
+ * misura memoria e thread del processo e poi la latenza di {@code BID} di un
+ * offerente fino al relativo {@code BIDOK}, che include il broadcast a tutte le
+ * connessioni. Client e server girano nella stessa JVM, quindi la memoria
+ * comprende anche i socket lato client, uguali in tutte le modalità; ogni
+ * connessione usa due descrittori di file ({@code ulimit -n}). La JVM non
+ * restituisce subito la memoria dei livelli precedenti: per valori di memoria
+ * puliti conviene misurare un livello per esecuzione. Non fa parte della suite
+ * di test:
+ * <pre>
+ * mvn test-compile
+ * java -Xss1m -Dauction.bids.ratePerSecond=1000000 -cp target/classes:target/test-classes it.unibz.auction.ConnectionScalingBenchmark [connessioni...]
+ * </pre>
+ */
+public final class ConnectionScalingBenchmark {
+
+    private static final int BIDS = 200;
+
+    private ConnectionScalingBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int[] levels = args.length > 0
+                ? Arrays.stream(args).mapToInt(Integer::parseInt).toArray()
+                : new int[]{1_000, 10_000, 50_000};
+
+        System.out.printf("%-10s %8s %10s %10s %12s %10s %10s%n",
+                "modalità", "conn", "thread", "RSS (MB)", "KB/conn", "p50 (µs)", "p99 (µs)");
+        for (int connections : levels) {
+            for (Server.IoMode mode : Server.IoMode.values()) {
+                try {
+                    run(mode, connections);
+                } catch (IOException | OutOfMemoryError ex) {
+                    System.out.printf("%-10s %8d   non raggiunto: %s%n", mode, connections, ex);
+                }
+                System.gc();
+                Thread.sleep(500);
+            }
+        }
+    }
+
+    private static void run(Server.IoMode mode, int connections) throws Exception {
+        Server server = new Server(0, mode, Runtime.getRuntime().availableProcessors(), Server.defaultItems());
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }, "bench-server");
+        acceptor.setDaemon(true);
+        acceptor.start();
+        while (server.port() == 0) {
+            Thread.sleep(10);
+        }
+        InetSocketAddress address = new InetSocketAddress("127.0.0.1", server.port());
+
+        List<SocketChannel> idle = new ArrayList<>(connections);
+        Drainer drainer = new Drainer();
+        drainer.start();
+        try {
+            long rssBefore = rssKb();
+            for (int i = 0; i < connections; i++) {
+                SocketChannel channel = SocketChannel.open(address);
+                idle.add(channel);
+                drainer.add(channel);
+            }
+            long deadline = System.nanoTime() + 30_000_000_000L;
+            while (server.connectionCount() < connections && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+            System.gc();
+            Thread.sleep(200);
+            long rssAfter = rssKb();
+            int threads = ManagementFactory.getThreadMXBean().getThreadCount();
+
+            long[] latencies = measureBids(address);
+            Arrays.sort(latencies);
+            System.out.printf("%-10s %8d %10d %10.1f %12.1f %10.0f %10.0f%n",
+                    mode, connections, threads, rssAfter / 1024.0, (rssAfter - rssBefore) / (double) connections,
+                    latencies[latencies.length / 2] / 1e3, latencies[latencies.length * 99 / 100] / 1e3);
+        } finally {
+            drainer.interrupt();
+            for (SocketChannel channel : idle) {
+                channel.close();
+            }
+            server.stop();
+            // i descrittori lato server vanno liberati prima del livello successivo
+            long deadline = System.nanoTime() + 30_000_000_000L;
+            while (server.connectionCount() > 0 && System.nanoTime() < deadline) {
+                Thread.sleep(20);
+            }
+        }
+    }
+
+    private static long[] measureBids(InetSocketAddress address) throws IOException {
+        try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+            socket.setTcpNoDelay(true);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(new OutputStreamWriter(socket.getOutputStream(), StandardCharsets.UTF_8), true);
+            out.println("JOIN bencher");
+            awaitLine(in, "SYSTEM Ciao");
+            long[] latencies = new long[BIDS];
+            long price = 50_000;
+            for (int i = 0; i < BIDS; i++) {
+                price += 1_000;
+                long begin = System.nanoTime();
+                out.println("BID " + price / 100);
+                awaitLine(in, "BIDOK");
+                latencies[i] = System.nanoTime() - begin;
+            }
+            out.println("QUIT");
+            return latencies;
+        }
+    }
+
+    private static void awaitLine(BufferedReader in, String prefix) throws IOException {
+        String line;
+        while ((line = in.readLine()) != null) {
+            if (line.startsWith(prefix)) {
+                return;
+            }
+            if (line.startsWith("BIDFAIL")) {
+                throw new IOException("offerta rifiutata: " + line);
+            }
+        }
+        throw new IOException("connessione chiusa");
+    }
+
+    private static long rssKb() throws IOException {
+        for (String line : Files.readAllLines(Path.of("/proc/self/status"))) {
+            if (line.startsWith("VmRSS:")) {
+                return Long.parseLong(line.replaceAll("\\D", ""));
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Legge e scarta quanto arriva sulle connessioni inattive, come farebbero spettatori reali.
+     */
+    private static final class Drainer extends Thread {
+        private final Selector selector = Selector.open();
+        private final ConcurrentLinkedQueue<SocketChannel> pending = new ConcurrentLinkedQueue<>();
+        private final ByteBuffer sink = ByteBuffer.allocateDirect(64 * 1024);
+
+        Drainer() throws IOException {
+            super("bench-drainer");
+            setDaemon(true);
+        }
+
+        void add(SocketChannel channel) {
+            pending.add(channel);
+            selector.wakeup();
+        }
+
+        @Override
+        public void run() {
+            try (selector) {
+                while (!isInterrupted()) {
+                    selector.select(100);
+                    SocketChannel channel;
+                    while ((channel = pending.poll()) != null) {
+                        channel.configureBlocking(false);
+                        channel.register(selector, SelectionKey.OP_READ);
+                    }
+                    for (SelectionKey key : selector.selectedKeys()) {
+                        sink.clear();
+                        if (((SocketChannel) key.channel()).read(sink) < 0) {
+                            key.cancel();
+                        }
+                    }
+                    selector.selectedKeys().clear();
+                }
+            } catch (IOException ignored) {
+                // connessioni chiuse a fine misura
+            }
+        }
+    }
+}
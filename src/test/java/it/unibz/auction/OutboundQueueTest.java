@@ -0,0 +1,77 @@
+package it.unibz.auction;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class OutboundQueueTest {
+
+    @Test
+    void testSharedFrameIsDrainedIndependentlyPerConnection() {
+        ByteBuffer frame = Server.encode("BIDOK 510.00|alice", "INFO Laptop|510.00|10.00");
+        OutboundQueue first = new OutboundQueue(1024, OutboundQueue.Policy.DISCONNECT);
+        OutboundQueue second = new OutboundQueue(1024, OutboundQueue.Policy.DISCONNECT);
+
+        assertEquals(OutboundQueue.Result.SCHEDULE, first.offer(frame.duplicate()));
+        assertEquals(OutboundQueue.Result.SCHEDULE, second.offer(frame.duplicate()));
+
+        // la prima connessione scrive tutto, la seconda solo in parte
+        ByteBuffer head = first.peek();
+        int size = head.remaining();
+        head.position(head.limit());
+        first.written(head, size);
+        assertNull(first.peek());
+        assertTrue(first.finishDrain());
+
+        head = second.peek();
+        head.position(5);
+        second.written(head, 5);
+        assertSame(head, second.peek());
+        assertEquals(size - 5, second.queuedBytes());
+        assertFalse(second.finishDrain());
+
+        assertTrue(frame.isReadOnly());
+        assertEquals(0, frame.position());
+    }
+
+    @Test
+    void testOnlyFirstOfferOnIdleQueueSchedulesDrain() {
+        OutboundQueue queue = new OutboundQueue(1024, OutboundQueue.Policy.DISCONNECT);
+
+        assertEquals(OutboundQueue.Result.SCHEDULE, queue.offer(Server.encode("uno")));
+        assertEquals(OutboundQueue.Result.QUEUED, queue.offer(Server.encode("due")));
+        drain(queue);
+        assertTrue(queue.finishDrain());
+        assertEquals(OutboundQueue.Result.SCHEDULE, queue.offer(Server.encode("tre")));
+    }
+
+    @Test
+    void testHighWaterMarkDisconnectsOrSkips() {
+        ByteBuffer frame = Server.encode("x".repeat(99)); // 100 byte
+        OutboundQueue disconnect = new OutboundQueue(250, OutboundQueue.Policy.DISCONNECT);
+        OutboundQueue skip = new OutboundQueue(250, OutboundQueue.Policy.SKIP);
+
+        for (int i = 0; i < 2; i++) {
+            assertNotEquals(OutboundQueue.Result.OVERFLOW, disconnect.offer(frame.duplicate()));
+            assertNotEquals(OutboundQueue.Result.SKIPPED, skip.offer(frame.duplicate()));
+        }
+        assertEquals(OutboundQueue.Result.OVERFLOW, disconnect.offer(frame.duplicate()));
+        assertEquals(OutboundQueue.Result.SKIPPED, skip.offer(frame.duplicate()));
+        assertEquals(1, skip.skipped());
+        assertEquals(200, skip.queuedBytes());
+
+        // il frame vuoto usato per la chiusura passa sempre
+        assertEquals(OutboundQueue.Result.QUEUED, skip.offer(ByteBuffer.allocate(0)));
+    }
+
+    private static void drain(OutboundQueue queue) {
+        ByteBuffer head;
+        while ((head = queue.peek()) != null) {
+            int size = head.remaining();
+            head.position(head.limit());
+            queue.written(head, size);
+        }
+    }
+}
@@ -0,0 +1,110 @@
+package it.unibz.auction;
+
+import it.unibz.auction.rmi.dto.Money;
+
+import java.lang.management.ManagementFactory;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Throughput di lettura e scrittura dei due protocolli del server TCP, senza
+ * rete. La lettura ripete il percorso di {@code ClientHandler} per un'offerta
+ * (riconoscimento del comando e importo); la scrittura produce il messaggio
+ * {@code BIDOK} + {@code INFO} di un'offerta accettata, come riga di testo
+ * oppure con un {@link BinaryProtocol.Encoder} riutilizzato. Per ogni riga
+ * riporta anche i byte allocati per operazione. Non fa parte della suite di test:
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes it.unibz.auction.ProtocolThroughputBenchmark [iterations]
+ * </pre>
+ */
+public final class ProtocolThroughputBenchmark {
+
+    private static final int BATCH = 1_000;
+
+    private static long sink; // risultati, contro l'eliminazione del codice da parte del JIT
+
+    private ProtocolThroughputBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 5_000_000;
+
+        String[] lines = new String[BATCH];
+        BinaryProtocol.Encoder bids = new BinaryProtocol.Encoder();
+        for (int i = 0; i < BATCH; i++) {
+            long cents = 50_000 + 1_000L * i + i % 100;
+            lines[i] = "BID " + Money.format(cents);
+            bids.bid(1, cents);
+        }
+        ByteBuffer frames = bids.toReadOnlyBuffer();
+        BinaryProtocol.Frame frame = new BinaryProtocol.Frame();
+        BinaryProtocol.Encoder encoder = new BinaryProtocol.Encoder(ByteBuffer.allocate(256));
+
+        System.out.printf("%-24s %12s %14s %14s%n", "operazione", "ns/op", "Mop/s", "byte alloc/op");
+        measure("parse testo", iterations, i -> parseText(lines[i % BATCH]));
+        measure("parse binario", iterations, i -> {
+            if (!frames.hasRemaining()) {
+                frames.rewind();
+            }
+            return parseBinary(frame, frames);
+        });
+        measure("encode testo", iterations, i -> encodeText(50_000 + i, "alice").remaining());
+        measure("encode binario", iterations, i -> encodeBinary(encoder, 50_000 + i, "alice").position());
+        System.out.printf("%nbyte per BIDOK+INFO: testo %d, binario %d%n",
+                encodeText(51_050, "alice").remaining(), encodeBinary(encoder, 51_050, "alice").position());
+    }
+
+    /** come ClientHandler.handle(String) fino all'importo di un'offerta */
+    private static long parseText(String raw) {
+        String line = raw.trim();
+        if (line.isEmpty() || line.startsWith("JOIN ") || "QUIT".equals(line) || line.startsWith("MSG ")) {
+            return 0;
+        }
+        if (line.startsWith("BID ")) {
+            return Money.parse(line.substring(4));
+        }
+        return -1;
+    }
+
+    private static long parseBinary(BinaryProtocol.Frame frame, ByteBuffer in) {
+        try {
+            if (frame.next(in, BinaryProtocol.MAX_CLIENT_FRAME) && frame.opcode() == BinaryProtocol.BID) {
+                return frame.longAt(0) + frame.longAt(1);
+            }
+        } catch (ProtocolException ex) {
+            throw new IllegalStateException(ex);
+        }
+        return -1;
+    }
+
+    private static ByteBuffer encodeText(long price, String bidder) {
+        return Server.encode("BIDOK " + Money.format(price) + "|" + bidder,
+                String.format("INFO %s|%s|%s", "Laptop", Money.format(price), Money.format(1_000)));
+    }
+
+    private static ByteBuffer encodeBinary(BinaryProtocol.Encoder encoder, long price, String bidder) {
+        return encoder.reset().bidOk(1, price, bidder).info(1, price, 1_000, "Laptop", bidder).buffer();
+    }
+
+    private static void measure(String label, int iterations, Op op) {
+        // riscaldamento JIT
+        for (int i = 0; i < iterations / 4; i++) {
+            sink += op.run(i);
+        }
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        long allocated = threads.getCurrentThreadAllocatedBytes();
+        long begin = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            sink += op.run(i);
+        }
+        double nanos = (System.nanoTime() - begin) / (double) iterations;
+        double bytes = (threads.getCurrentThreadAllocatedBytes() - allocated) / (double) iterations;
+        System.out.printf("%-24s %12.1f %14.1f %14.1f%n", label, nanos, 1e3 / nanos, bytes);
+    }
+
+    @FunctionalInterface
+    private interface Op {
+        long run(int i);
+    }
+}
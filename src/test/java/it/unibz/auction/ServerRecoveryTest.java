@@ -0,0 +1,117 @@
+package it.unibz.auction;
+
+import it.unibz.auction.engine.AuctionEngine;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ServerRecoveryTest {
+
+    @Test
+    void testRestartResumesLotsWithoutReauctioningItems(@TempDir Path journalDir, @TempDir Path crashDir)
+            throws Exception {
+        AuctionEngine first = new AuctionEngine(Server.defaultItems(), 1, journalDir);
+        Server server = start(first);
+        try (Socket socket = connect(server)) {
+            BufferedReader in = reader(socket);
+            PrintWriter out = writer(socket);
+            out.println("JOIN bob");
+            awaitLine(in, "SYSTEM Ciao bob");
+            out.println("BID 510");
+            assertTrue(awaitLine(in, "BIDOK ").endsWith("|bob"));
+            // copia del journal prima dell'arresto ordinato: nessuna fotografia, come dopo un crash
+            copyDirectory(journalDir, crashDir);
+        } finally {
+            server.stop();
+            first.shutdown();
+        }
+
+        // con due lotti concorrenti si apre anche il prossimo articolo in coda
+        AuctionEngine second = new AuctionEngine(Server.defaultItems(), 2, crashDir);
+        server = start(second);
+        try (Socket socket = connect(server)) {
+            BufferedReader in = reader(socket);
+            PrintWriter out = writer(socket);
+            out.println("JOIN alice");
+            awaitLine(in, "SYSTEM Ciao alice");
+            out.println("INFO_REQUEST");
+            // un'offerta troppo bassa chiude la risposta: INFO e BIDFAIL viaggiano nella stessa corsia
+            out.println("BID 1");
+            List<String> lots = new ArrayList<>();
+            String line;
+            while (!(line = awaitLine(in, "")).startsWith("BIDFAIL ")) {
+                if (line.startsWith("INFO ") && line.contains(" | Prezzo: ")) {
+                    lots.add(line);
+                }
+            }
+            assertEquals(List.of(
+                    "INFO Laptop | Prezzo: 510.00 | Incremento minimo: 10.00 | Miglior offerente: bob",
+                    "INFO Cuffie | Prezzo: 50.00 | Incremento minimo: 5.00 | Miglior offerente: Nessuno"), lots);
+        } finally {
+            server.stop();
+            second.shutdown();
+        }
+    }
+
+    private static Server start(AuctionEngine engine) throws InterruptedException {
+        Server server = new Server(0, Server.IoMode.PLATFORM, 1, Server.DEFAULT_HIGH_WATER,
+                OutboundQueue.Policy.DISCONNECT, engine);
+        Thread acceptor = new Thread(() -> {
+            try {
+                server.start();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        while (server.port() == 0) {
+            Thread.sleep(10);
+        }
+        return server;
+    }
+
+    private static Socket connect(Server server) throws IOException {
+        Socket socket = new Socket("127.0.0.1", server.port());
+        socket.setSoTimeout(5_000);
+        return socket;
+    }
+
+    private static BufferedReader reader(Socket socket) throws IOException {
+        return new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+    }
+
+    private static PrintWriter writer(Socket socket) throws IOException {
+        return new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+    }
+
+    private static String awaitLine(BufferedReader in, String prefix) throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            assertNotNull(line, "Connessione chiusa in attesa di " + prefix);
+        } while (!line.startsWith(prefix));
+        return line;
+    }
+
+    private static void copyDirectory(Path from, Path to) throws IOException {
+        try (Stream<Path> files = Files.list(from)) {
+            for (Path file : files.toList()) {
+                Files.copy(file, to.resolve(file.getFileName()));
+            }
+        }
+    }
+}
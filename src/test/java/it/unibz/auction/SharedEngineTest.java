@@ -0,0 +1,118 @@
+package it.unibz.auction;
+
+import it.unibz.auction.engine.AuctionEngine;
+import it.unibz.auction.rmi.ClientCallback;
+import it.unibz.auction.rmi.RMIAuctionServer;
+import it.unibz.auction.rmi.dto.AuctionDelta;
+import it.unibz.auction.rmi.dto.AuctionItem;
+import it.unibz.auction.rmi.dto.AuctionState;
+import it.unibz.auction.rmi.dto.BidOutcome;
+import org.junit.jupiter.api.Test;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.PrintWriter;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SharedEngineTest {
+
+    @Test
+    void testTcpAndRmiBiddersShareTheSameLot() throws Exception {
+        AuctionEngine engine = new AuctionEngine(List.of(
+                new AuctionItem("Laptop", "Ultrabook", 50_000L, 1_000L, 60)), 1);
+        RMIAuctionServer rmi = new RMIAuctionServer(engine);
+        Server tcp = new Server(0, Server.IoMode.PLATFORM, 1, Server.DEFAULT_HIGH_WATER,
+                OutboundQueue.Policy.DISCONNECT, engine);
+        rmi.start();
+        Thread acceptor = new Thread(() -> {
+            try {
+                tcp.start();
+            } catch (IOException ex) {
+                throw new IllegalStateException(ex);
+            }
+        });
+        acceptor.setDaemon(true);
+        acceptor.start();
+        while (tcp.port() == 0) {
+            Thread.sleep(10);
+        }
+
+        BlockingQueue<String> topBidders = new LinkedBlockingQueue<>();
+        try (Socket socket = new Socket("127.0.0.1", tcp.port())) {
+            socket.setSoTimeout(5_000);
+            BufferedReader in = new BufferedReader(new InputStreamReader(socket.getInputStream(), StandardCharsets.UTF_8));
+            PrintWriter out = new PrintWriter(socket.getOutputStream(), true, StandardCharsets.UTF_8);
+            out.println("JOIN bob");
+            awaitLine(in, "SYSTEM Ciao bob");
+
+            long aliceSession = rmi.registerClient("alice", new RecordingCallback(topBidders));
+            assertTrue(rmi.placeBidCents(aliceSession, 1, 51_000).accepted());
+            assertTrue(awaitLine(in, "BIDOK ").endsWith("|alice"));
+
+            out.println("BID 520");
+            assertTrue(awaitLine(in, "BIDOK ").endsWith("|bob"));
+            AuctionState state = rmi.getCurrentState(1);
+            assertEquals("bob", state.topBidder());
+            assertEquals(52_000, state.currentPriceCents());
+            String topBidder;
+            do {
+                topBidder = topBidders.poll(5, TimeUnit.SECONDS);
+                assertNotNull(topBidder, "Offerta TCP non notificata ai client RMI");
+            } while (!"bob".equals(topBidder));
+
+            BidOutcome low = rmi.placeBidCents(aliceSession, 1, 52_500);
+            assertFalse(low.accepted());
+            assertEquals(53_000, low.minimumRequiredCents());
+        } finally {
+            tcp.stop();
+            rmi.shutdown();
+            engine.shutdown();
+        }
+    }
+
+    private static String awaitLine(BufferedReader in, String prefix) throws IOException {
+        String line;
+        do {
+            line = in.readLine();
+            assertNotNull(line, "Connessione chiusa in attesa di " + prefix);
+        } while (!line.startsWith(prefix));
+        return line;
+    }
+
+    /**
+     * Callback locale: il server la invoca direttamente, senza esportarla. Una
+     * variazione può arrivare fusa nello snapshot ancora in coda, quindi si
+     * registra il miglior offerente di entrambi.
+     */
+    private record RecordingCallback(BlockingQueue<String> topBidders) implements ClientCallback {
+        @Override
+        public void onSystemMessage(String message) {
+        }
+
+        @Override
+        public void onAuctionUpdate(AuctionState state) {
+            if (state.topBidder() != null) {
+                topBidders.add(state.topBidder());
+            }
+        }
+
+        @Override
+        public void onAuctionDelta(AuctionDelta delta) {
+            if (delta.topBidder() != null) {
+                topBidders.add(delta.topBidder());
+            }
+        }
+
+        @Override
+        public void onBidOutcome(BidOutcome outcome) {
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package it.unibz.auction.engine;
+
+import it.unibz.auction.rmi.dto.AuctionItem;
+import it.unibz.auction.rmi.dto.AuctionState;
+import it.unibz.auction.rmi.dto.BidOutcome;
+import it.unibz.auction.rmi.exceptions.AuctionException;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.concurrent.locks.Lock;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Benchmark di contesa sul percorso di accettazione delle offerte.
+ * <p>
+ * Confronta il vecchio schema (campi mutabili protetti da un {@link ReentrantLock})
+ * con lo stato immutabile {@link RoundState} pubblicato via compare-and-set.
+ * Ogni thread legge il minimo corrente e offre esattamente quel valore, come
+ * farebbe un bidder automatico. Una seconda tabella distribuisce 64 bidder su
+ * un numero crescente di lotti per mostrare l'assenza di contesa tra lotti
+ * diversi. Non fa parte della suite di test:
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes it.unibz.auction.engine.BidContentionBenchmark [millisPerRun]
+ * </pre>
+ */
+public final class BidContentionBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 2, 4, 8, 16, 32, 64};
+    private static final int[] LOT_COUNTS = {1, 4, 16, 64};
+    private static final AuctionItem ITEM = AuctionItem.ofEuros("Bench", "Benchmark", 1.0, 0.01, 3600);
+
+    private BidContentionBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+
+        // riscaldamento JIT
+        run(i -> new LockedRound(), 8, 300);
+        run(i -> new CasRound(), 8, 300);
+
+        System.out.printf("%-8s %18s %18s %8s%n", "threads", "lock (bid/s)", "cas (bid/s)", "ratio");
+        for (int threads : THREAD_COUNTS) {
+            LockedRound locked = new LockedRound();
+            CasRound cas = new CasRound();
+            double lockedRate = run(i -> locked, threads, millis);
+            double casRate = run(i -> cas, threads, millis);
+            System.out.printf("%-8d %18.0f %18.0f %7.2fx%n", threads, lockedRate, casRate, casRate / lockedRate);
+        }
+
+        System.out.printf("%n%-8s %18s%n", "lots", "cas 64t (bid/s)");
+        for (int lots : LOT_COUNTS) {
+            CasRound[] rounds = new CasRound[lots];
+            for (int i = 0; i < lots; i++) {
+                rounds[i] = new CasRound();
+            }
+            double rate = run(i -> rounds[i % lots], 64, millis);
+            System.out.printf("%-8d %18.0f%n", lots, rate);
+        }
+    }
+
+    private static double run(IntFunction<Round> roundForThread, int threads, long millis)
+            throws InterruptedException {
+        LongAdder bids = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        long deadline = System.nanoTime() + millis * 1_000_000L + 50_000_000L;
+        for (int i = 0; i < threads; i++) {
+            String bidder = "bidder" + i;
+            Round round = roundForThread.apply(i);
+            workers[i] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException ex) {
+                    return;
+                }
+                long count = 0;
+                while (System.nanoTime() < deadline) {
+                    round.bid(bidder, round.minimum());
+                    count++;
+                }
+                bids.add(count);
+            });
+            workers[i].start();
+        }
+        long begin = System.nanoTime();
+        start.countDown();
+        for (Thread worker : workers) {
+            worker.join();
+        }
+        double seconds = (System.nanoTime() - begin) / 1e9;
+        return bids.sum() / seconds;
+    }
+
+    private interface Round {
+        long minimum();
+
+        BidOutcome bid(String bidder, long amount);
+    }
+
+    /**
+     * Replica della logica di {@code submitBid} basata su lock esclusivo.
+     */
+    private static final class LockedRound implements Round {
+        private final Lock stateLock = new ReentrantLock();
+        private final Instant roundEnd = Instant.now().plusSeconds(ITEM.durationSeconds());
+        private long currentPrice = ITEM.startPriceCents();
+        private String topBidder;
+
+        @Override
+        public long minimum() {
+            stateLock.lock();
+            try {
+                return currentPrice + ITEM.minIncrementCents();
+            } finally {
+                stateLock.unlock();
+            }
+        }
+
+        @Override
+        public BidOutcome bid(String bidder, long amount) {
+            stateLock.lock();
+            try {
+                long minimumRequired = currentPrice + ITEM.minIncrementCents();
+                if (amount < minimumRequired) {
+                    return new BidOutcome(false, amount, minimumRequired, "Offerta troppo bassa", snapshot());
+                }
+                currentPrice = amount;
+                topBidder = bidder;
+                return new BidOutcome(true, amount, minimumRequired, "Offerta accettata", snapshot());
+            } finally {
+                stateLock.unlock();
+            }
+        }
+
+        private AuctionState snapshot() {
+            return new AuctionState(1, 0, ITEM.name(), ITEM.description(), currentPrice, ITEM.minIncrementCents(),
+                    topBidder, roundEnd, true);
+        }
+    }
+
+    /**
+     * Stesso percorso di {@link AuctionEngine#bid(String, long, long)}.
+     */
+    private static final class CasRound implements Round {
+        private final Lot lot = new Lot(1, ITEM, Instant.now(), Duration.ZERO);
+
+        @Override
+        public long minimum() {
+            return lot.state().minimumRequired();
+        }
+
+        @Override
+        public BidOutcome bid(String bidder, long amount) {
+            try {
+                return lot.bid(bidder, amount).outcome();
+            } catch (AuctionException ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+    }
+}
@@ -0,0 +1,95 @@
+package it.unibz.auction.engine;
+
+import it.unibz.auction.rmi.dto.AuctionItem;
+import it.unibz.auction.rmi.dto.BidOutcome;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class LotTest {
+
+    // prezzo di partenza 100 €, incremento 5 €: primo minimo 10 500 centesimi
+    private static final AuctionItem ITEM = AuctionItem.ofEuros("Laptop", "Descrizione", 100.0, 5.0, 60);
+
+    @Test
+    void testBatchIsClearedWithOnePublication() throws Exception {
+        Lot lot = new Lot(1, ITEM, Instant.now(), Duration.ZERO);
+        RoundState opened = lot.state();
+
+        CompletableFuture<Lot.Decision> alice = lot.enqueue("alice", 10_600, false);
+        CompletableFuture<Lot.Decision> bob = lot.enqueue("bob", 12_000, false);
+        CompletableFuture<Lot.Decision> carol = lot.enqueue("carol", 12_000, false);
+        CompletableFuture<Lot.Decision> dave = lot.enqueue("dave", 9_000, false);
+        assertEquals(opened, lot.state(), "Le offerte accodate non devono toccare lo stato");
+
+        Lot.Clearing clearing = lot.clear();
+        assertEquals(opened.version() + 1, clearing.accepted().version());
+        assertEquals(12_000, clearing.accepted().currentPriceCents());
+        // a parità di importo prevale chi è arrivato prima
+        assertEquals("bob", clearing.accepted().topBidder());
+        assertFalse(bob.isDone(), "Gli esiti vanno confermati solo dopo il journal");
+
+        clearing.complete();
+        assertTrue(bob.get().outcome().accepted());
+        assertEquals(List.of(false, false, false),
+                List.of(alice, carol, dave).stream().map(f -> f.join().outcome().accepted()).toList());
+        assertNull(lot.clear(), "La coda deve essere vuota dopo il ciclo");
+    }
+
+    @Test
+    void testProxyBidsInOneBatchPriceAtSecondMaximum() {
+        Lot lot = new Lot(1, ITEM, Instant.now(), Duration.ZERO);
+
+        lot.enqueue("alice", 15_000, true);
+        lot.enqueue("bob", 20_000, true);
+        Lot.Clearing clearing = lot.clear();
+        clearing.complete();
+
+        assertEquals("bob", clearing.accepted().topBidder());
+        assertEquals(15_500, clearing.accepted().currentPriceCents());
+        BidOutcome[] outcomes = clearing.outcomes();
+        assertTrue(outcomes[0].accepted());
+        assertFalse(outcomes[1].accepted());
+    }
+
+    @Test
+    void testClosedLotRejectsPendingBids() {
+        Lot lot = new Lot(1, ITEM, Instant.now(), Duration.ZERO);
+        CompletableFuture<Lot.Decision> queued = lot.enqueue("alice", 11_000, false);
+
+        assertFalse(lot.closeIfDue(Instant.now().plusSeconds(3600)).active());
+        assertNull(lot.clear());
+        assertThrows(ExecutionException.class, queued::get);
+        assertTrue(lot.enqueue("bob", 12_000, false).isCompletedExceptionally());
+    }
+
+    @Test
+    void testEngineClearsOnTimerTicks() throws Exception {
+        AuctionEngine engine = new AuctionEngine(List.of(ITEM), 1);
+        engine.useBatchClearing(Duration.ofMillis(20));
+        try {
+            engine.start();
+            Lot lot = engine.featuredLot();
+
+            CompletableFuture<Lot.Decision> bid = CompletableFuture.supplyAsync(() -> {
+                try {
+                    return engine.bid("alice", lot.id(), 11_000);
+                } catch (Exception ex) {
+                    throw new RuntimeException(ex);
+                }
+            });
+            Lot.Decision decision = bid.get(2, TimeUnit.SECONDS);
+            assertTrue(decision.outcome().accepted());
+            assertEquals("alice", lot.state().topBidder());
+        } finally {
+            engine.shutdown();
+        }
+    }
+}
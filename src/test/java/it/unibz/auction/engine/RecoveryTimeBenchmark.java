@@ -0,0 +1,81 @@
+package it.unibz.auction.engine;
+
+import it.unibz.auction.rmi.dto.AuctionItem;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Instant;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.Stream;
+
+/**
+ * Tempo di riavvio del motore d'asta in funzione della storia accumulata: prima con
+ * il solo journal da rileggere per intero, poi dalla fotografia scritta
+ * all'arresto ordinato. La storia viene generata scrivendo direttamente sul
+ * journal, senza passare dal motore. Non fa parte della suite di test:
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes it.unibz.auction.engine.RecoveryTimeBenchmark [records]
+ * </pre>
+ */
+public final class RecoveryTimeBenchmark {
+
+    private static final List<AuctionItem> ITEMS = List.of(
+            AuctionItem.ofEuros("Bench", "Benchmark", 1.0, 0.01, 86_400),
+            AuctionItem.ofEuros("Next", "In coda", 1.0, 0.01, 86_400));
+
+    private RecoveryTimeBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int records = args.length > 0 ? Integer.parseInt(args[0]) : 2_000_000;
+        Path dir = Files.createTempDirectory("auction-recovery-bench");
+        try {
+            try (BidJournal journal = new BidJournal(dir, false)) {
+                RoundState state = RoundState.open(1, ITEMS.get(0), Instant.now());
+                journal.lotOpened(state);
+                for (int i = 1; i < records; i++) {
+                    state = state.withBid("bidder" + (i & 63), state.minimumRequired(), state.roundEnd());
+                    journal.lotUpdated(new Lot.Durable(state, 0));
+                }
+            }
+            System.out.printf("%-28s %10s %12s%n", "riavvio", "ms", "byte su disco");
+            long journalBytes = size(dir);
+            System.out.printf("%-28s %10.1f %12d%n", "solo journal (" + records + " record)",
+                    restartMillis(dir), journalBytes);
+            // l'arresto ordinato del riavvio precedente ha scritto una fotografia
+            long snapshotBytes = size(dir);
+            System.out.printf("%-28s %10.1f %12d%n", "da fotografia", restartMillis(dir), snapshotBytes);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    /**
+     * Dalla costruzione del motore fino al lotto di nuovo pronto ad accettare offerte.
+     */
+    private static double restartMillis(Path dir) throws Exception {
+        long begin = System.nanoTime();
+        AuctionEngine engine = new AuctionEngine(ITEMS, 1, dir);
+        engine.start();
+        engine.requireLot(1).snapshot();
+        double millis = (System.nanoTime() - begin) / 1e6;
+        engine.shutdown();
+        return millis;
+    }
+
+    private static long size(Path dir) throws Exception {
+        try (Stream<Path> files = Files.list(dir)) {
+            long total = 0;
+            for (Path file : files.toList()) {
+                total += Files.size(file);
+            }
+            return total;
+        }
+    }
+}
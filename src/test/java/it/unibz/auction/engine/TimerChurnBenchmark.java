@@ -0,0 +1,109 @@
+package it.unibz.auction.engine;
+
+import java.util.SplittableRandom;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Benchmark di arm/cancel sui timer di scadenza dei lotti.
+ * <p>
+ * Mantiene {@code liveTimers} scadenze armate (un timer per lotto) ed esegue un
+ * milione di cicli "cancella e riarma", come accade con le proroghe di chiusura
+ * morbida. Confronta {@link TimingWheel} con lo {@link ScheduledThreadPoolExecutor}
+ * usato in precedenza, sia con la configurazione di default sia con
+ * {@code removeOnCancelPolicy}. Non fa parte della suite di test:
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes it.unibz.auction.engine.TimerChurnBenchmark [cycles] [liveTimers]
+ * </pre>
+ */
+public final class TimerChurnBenchmark {
+
+    private static final Runnable NOOP = () -> { };
+
+    private TimerChurnBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int cycles = args.length > 0 ? Integer.parseInt(args[0]) : 1_000_000;
+        int liveTimers = args.length > 1 ? Integer.parseInt(args[1]) : 50_000;
+
+        for (int round = 0; round < 2; round++) {
+            System.out.printf("%n%s: %,d cicli arm/cancel con %,d timer attivi%n",
+                    round == 0 ? "Riscaldamento" : "Misura", cycles, liveTimers);
+            report("ScheduledThreadPoolExecutor", runExecutor(false, cycles, liveTimers), cycles);
+            report("STPE removeOnCancel", runExecutor(true, cycles, liveTimers), cycles);
+            report("TimingWheel", runWheel(cycles, liveTimers), cycles);
+        }
+    }
+
+    private static void report(String name, Result result, int cycles) {
+        System.out.printf("%-30s %10.1f ms %10.1f ns/ciclo %10.1f MB trattenuti%n", name, result.nanos() / 1e6,
+                (double) result.nanos() / cycles, result.retainedBytes() / (1024.0 * 1024.0));
+    }
+
+    private static long usedHeap() {
+        Runtime runtime = Runtime.getRuntime();
+        for (int i = 0; i < 3; i++) {
+            System.gc();
+        }
+        return runtime.totalMemory() - runtime.freeMemory();
+    }
+
+    private static Result runExecutor(boolean removeOnCancel, int cycles, int liveTimers) {
+        long baseline = usedHeap();
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1);
+        executor.setRemoveOnCancelPolicy(removeOnCancel);
+        try {
+            SplittableRandom random = new SplittableRandom(42);
+            Future<?>[] timers = new Future<?>[liveTimers];
+            for (int i = 0; i < liveTimers; i++) {
+                timers[i] = executor.schedule(NOOP, delayMillis(random), TimeUnit.MILLISECONDS);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < cycles; i++) {
+                int slot = random.nextInt(liveTimers);
+                timers[slot].cancel(false);
+                timers[slot] = executor.schedule(NOOP, delayMillis(random), TimeUnit.MILLISECONDS);
+            }
+            long elapsed = System.nanoTime() - start;
+            return new Result(elapsed, usedHeap() - baseline);
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    private static Result runWheel(int cycles, int liveTimers) throws InterruptedException {
+        long baseline = usedHeap();
+        TimingWheel wheel = new TimingWheel("bench-timer", 10, TimeUnit.MILLISECONDS, 256);
+        wheel.start();
+        try {
+            SplittableRandom random = new SplittableRandom(42);
+            TimingWheel.Timeout[] timers = new TimingWheel.Timeout[liveTimers];
+            for (int i = 0; i < liveTimers; i++) {
+                timers[i] = wheel.schedule(NOOP, delayMillis(random), TimeUnit.MILLISECONDS);
+            }
+            long start = System.nanoTime();
+            for (int i = 0; i < cycles; i++) {
+                int slot = random.nextInt(liveTimers);
+                timers[slot] = wheel.reschedule(timers[slot], NOOP, delayMillis(random), TimeUnit.MILLISECONDS);
+            }
+            long elapsed = System.nanoTime() - start;
+            // lascia al thread del timer un tick per applicare le cancellazioni accodate
+            Thread.sleep(50);
+            return new Result(elapsed, usedHeap() - baseline);
+        } finally {
+            wheel.shutdown();
+        }
+    }
+
+    private record Result(long nanos, long retainedBytes) {}
+
+    /**
+     * Scadenze tra 1 e 30 minuti, come lotti che chiudono nel corso della giornata.
+     */
+    private static long delayMillis(SplittableRandom random) {
+        return TimeUnit.MINUTES.toMillis(1) + random.nextLong(TimeUnit.MINUTES.toMillis(29));
+    }
+}
@@ -0,0 +1,58 @@
+package it.unibz.auction.engine;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TimingWheelTest {
+
+    // 1 ms per tick e 8 bucket per livello: 300 ms attraversano tre livelli
+    private final TimingWheel wheel = new TimingWheel("test-timer", 1, TimeUnit.MILLISECONDS, 8);
+
+    @AfterEach
+    void tearDown() {
+        wheel.shutdown();
+    }
+
+    @Test
+    void testTimeoutsFireInDeadlineOrderAcrossLevels() throws Exception {
+        List<Integer> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(3);
+        wheel.start();
+
+        // misurato prima di armare: le scadenze partono dall'istante di schedule
+        long started = System.nanoTime();
+        wheel.schedule(() -> { fired.add(300); done.countDown(); }, 300, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { fired.add(5); done.countDown(); }, 5, TimeUnit.MILLISECONDS);
+        wheel.schedule(() -> { fired.add(70); done.countDown(); }, 70, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of(5, 70, 300), fired);
+        assertTrue(TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started) >= 290);
+    }
+
+    @Test
+    void testCancelledAndRescheduledTimeouts() throws Exception {
+        List<String> fired = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        wheel.start();
+
+        TimingWheel.Timeout cancelled = wheel.schedule(() -> fired.add("cancelled"), 20, TimeUnit.MILLISECONDS);
+        TimingWheel.Timeout first = wheel.schedule(() -> fired.add("first"), 20, TimeUnit.MILLISECONDS);
+        assertTrue(cancelled.cancel());
+        assertFalse(cancelled.cancel());
+        TimingWheel.Timeout moved = wheel.reschedule(first, () -> { fired.add("moved"); done.countDown(); },
+                60, TimeUnit.MILLISECONDS);
+
+        assertTrue(done.await(2, TimeUnit.SECONDS));
+        assertEquals(List.of("moved"), fired);
+        assertTrue(moved.isExpired());
+        assertFalse(first.isExpired());
+    }
+}
@@ -0,0 +1,130 @@
+package it.unibz.auction.rmi;
+
+import it.unibz.auction.rmi.dto.AuctionDelta;
+import it.unibz.auction.rmi.dto.AuctionItem;
+import it.unibz.auction.rmi.dto.AuctionState;
+import it.unibz.auction.rmi.dto.BidOutcome;
+
+import java.net.ServerSocket;
+import java.rmi.RemoteException;
+import java.rmi.registry.LocateRegistry;
+import java.rmi.registry.Registry;
+import java.rmi.server.UnicastRemoteObject;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Latenza di un'offerta vista dal bidder: {@code submitBid} seguito dall'attesa
+ * della callback {@code onBidOutcome} contro la chiamata request/response
+ * {@code placeBid}. Server e client girano nella stessa JVM su loopback, quindi
+ * i valori assoluti sottostimano una rete reale, ma il rapporto tra i due
+ * percorsi resta indicativo. Non fa parte della suite di test:
+ * <pre>
+ * mvn test-compile
+ * java -Dauction.bids.ratePerSecond=1000000 -cp target/classes:target/test-classes it.unibz.auction.rmi.BidLatencyBenchmark [bids]
+ * </pre>
+ */
+public final class BidLatencyBenchmark {
+
+    private BidLatencyBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int bids = args.length > 0 ? Integer.parseInt(args[0]) : 5_000;
+
+        int port;
+        try (ServerSocket socket = new ServerSocket(0)) {
+            port = socket.getLocalPort();
+        }
+        Registry registry = LocateRegistry.createRegistry(port);
+        RMIAuctionServer server = new RMIAuctionServer(List.of(
+                AuctionItem.ofEuros("Bench", "Benchmark", 1.0, 0.01, 3600)));
+        registry.rebind("AuctionBench", server);
+        server.start();
+        AuctionService service = (AuctionService) registry.lookup("AuctionBench");
+        OutcomeCallback callback = new OutcomeCallback();
+        long session = service.registerClient("bencher", callback);
+
+        try {
+            // riscaldamento
+            measureCallback(service, session, callback, bids / 2);
+            measureDirect(service, session, bids / 2);
+
+            report("submitBid + onBidOutcome", measureCallback(service, session, callback, bids));
+            report("placeBid", measureDirect(service, session, bids));
+        } finally {
+            service.unregisterClient(session);
+            UnicastRemoteObject.unexportObject(callback, true);
+            server.shutdown();
+            UnicastRemoteObject.unexportObject(registry, true);
+        }
+    }
+
+    private static long[] measureCallback(AuctionService service, long session, OutcomeCallback callback, int bids)
+            throws Exception {
+        long[] samples = new long[bids];
+        for (int i = 0; i < bids; i++) {
+            AuctionState state = service.getCurrentState();
+            double amount = state.currentPrice() + state.minIncrement();
+            long start = System.nanoTime();
+            service.submitBid(session, amount);
+            BidOutcome outcome = callback.outcomes.poll(5, TimeUnit.SECONDS);
+            samples[i] = System.nanoTime() - start;
+            if (outcome == null) {
+                throw new IllegalStateException("Esito non ricevuto");
+            }
+        }
+        return samples;
+    }
+
+    private static long[] measureDirect(AuctionService service, long session, int bids) throws Exception {
+        long[] samples = new long[bids];
+        for (int i = 0; i < bids; i++) {
+            AuctionState state = service.getCurrentState();
+            double amount = state.currentPrice() + state.minIncrement();
+            long start = System.nanoTime();
+            service.placeBid(session, amount);
+            samples[i] = System.nanoTime() - start;
+        }
+        return samples;
+    }
+
+    private static void report(String name, long[] samples) {
+        long[] sorted = samples.clone();
+        Arrays.sort(sorted);
+        double mean = Arrays.stream(sorted).average().orElse(0);
+        System.out.printf("%-28s media %8.1f µs   p50 %8.1f µs   p99 %8.1f µs%n", name,
+                mean / 1e3, sorted[sorted.length / 2] / 1e3, sorted[(int) (sorted.length * 0.99)] / 1e3);
+    }
+
+    private static final class OutcomeCallback extends UnicastRemoteObject implements ClientCallback {
+        private final SynchronousQueue<BidOutcome> outcomes = new SynchronousQueue<>();
+
+        private OutcomeCallback() throws RemoteException {
+            super();
+        }
+
+        @Override
+        public void onSystemMessage(String message) {
+        }
+
+        @Override
+        public void onAuctionUpdate(AuctionState state) {
+        }
+
+        @Override
+        public void onAuctionDelta(AuctionDelta delta) {
+        }
+
+        @Override
+        public void onBidOutcome(BidOutcome outcome) {
+            try {
+                outcomes.put(outcome);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
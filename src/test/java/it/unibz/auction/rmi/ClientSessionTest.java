@@ -0,0 +1,120 @@
+package it.unibz.auction.rmi;
+
+import it.unibz.auction.engine.TokenBucket;
+import it.unibz.auction.rmi.dto.AuctionDelta;
+import it.unibz.auction.rmi.dto.AuctionState;
+import it.unibz.auction.rmi.dto.BidOutcome;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ClientSessionTest {
+
+    private static final TokenBucket CHAT_LIMIT = new TokenBucket(1, 5);
+    private static final TokenBucket BID_LIMIT = new TokenBucket(10, 20);
+
+    @Test
+    void testUpdatesForSameLotAreCoalesced() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        ClientSession session = new ClientSession("alice", callback, 8, OverflowPolicy.COALESCE, CHAT_LIMIT, BID_LIMIT);
+
+        assertEquals(ClientSession.EnqueueResult.SCHEDULE_DRAIN, session.enqueue(update("Laptop", 100)));
+        for (int i = 1; i <= 300; i++) {
+            assertEquals(ClientSession.EnqueueResult.QUEUED, session.enqueue(update("Laptop", 100 + i)));
+        }
+        session.drain();
+
+        assertEquals(1, callback.states.size());
+        assertEquals(400, callback.states.get(0).currentPriceCents());
+        assertEquals(300, session.droppedEvents());
+    }
+
+    @Test
+    void testDeltaIsMergedIntoPendingSnapshot() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        ClientSession session = new ClientSession("alice", callback, 8, OverflowPolicy.COALESCE, CHAT_LIMIT, BID_LIMIT);
+
+        session.enqueue(update("Laptop", 100));
+        session.enqueue(new ServerEvent.AuctionChange(new AuctionDelta(6, 101, 150, "bob", null)));
+        session.drain();
+        session.enqueue(new ServerEvent.AuctionChange(new AuctionDelta(6, 102, 160, "carol", null)));
+        session.drain();
+
+        // lo snapshot in coda non va perso: la variazione viene applicata allo snapshot
+        assertEquals(1, callback.states.size());
+        assertEquals(150, callback.states.get(0).currentPriceCents());
+        assertEquals("bob", callback.states.get(0).topBidder());
+        assertEquals("desc", callback.states.get(0).itemDescription());
+        assertEquals(1, callback.deltas.size());
+    }
+
+    @Test
+    void testCoalescePolicyEvictsSystemMessagesFirst() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        ClientSession session = new ClientSession("alice", callback, 2, OverflowPolicy.COALESCE, CHAT_LIMIT, BID_LIMIT);
+
+        session.enqueue(new ServerEvent.SystemMessage("uno"));
+        session.enqueue(new ServerEvent.SystemMessage("due"));
+        session.enqueue(update("Laptop", 120));
+        session.drain();
+
+        assertEquals(List.of("due"), callback.messages);
+        assertEquals(1, callback.states.size());
+    }
+
+    @Test
+    void testAuctionEventsPreemptQueuedText() throws Exception {
+        RecordingCallback callback = new RecordingCallback();
+        ClientSession session = new ClientSession("alice", callback, 8, OverflowPolicy.COALESCE, CHAT_LIMIT, BID_LIMIT);
+
+        session.enqueue(new ServerEvent.SystemMessage("chat 1"));
+        session.enqueue(new ServerEvent.SystemMessage("chat 2"));
+        session.enqueue(update("Laptop", 120));
+        session.drain();
+
+        assertEquals(List.of("state Laptop", "chat 1", "chat 2"), callback.order);
+    }
+
+    @Test
+    void testDisconnectPolicyReportsOverflow() {
+        ClientSession session = new ClientSession("alice", new RecordingCallback(), 1, OverflowPolicy.DISCONNECT, CHAT_LIMIT, BID_LIMIT);
+
+        session.enqueue(new ServerEvent.SystemMessage("uno"));
+        assertEquals(ClientSession.EnqueueResult.OVERFLOW, session.enqueue(new ServerEvent.SystemMessage("due")));
+    }
+
+    private static ServerEvent update(String item, long price) {
+        return new ServerEvent.AuctionUpdate(price, new AuctionState(item.length(), price, item, "desc", price, 500, null, null, true));
+    }
+
+    private static class RecordingCallback implements ClientCallback {
+        private final List<String> messages = new ArrayList<>();
+        private final List<AuctionState> states = new ArrayList<>();
+        private final List<AuctionDelta> deltas = new ArrayList<>();
+        private final List<String> order = new ArrayList<>();
+
+        @Override
+        public void onSystemMessage(String message) {
+            messages.add(message);
+            order.add(message);
+        }
+
+        @Override
+        public void onAuctionUpdate(AuctionState state) {
+            states.add(state);
+            order.add("state " + state.itemName());
+        }
+
+        @Override
+        public void onAuctionDelta(AuctionDelta delta) {
+            deltas.add(delta);
+        }
+
+        @Override
+        public void onBidOutcome(BidOutcome outcome) {
+        }
+    }
+}
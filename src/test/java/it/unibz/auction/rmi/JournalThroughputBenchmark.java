@@ -0,0 +1,129 @@
+package it.unibz.auction.rmi;
+
+import it.unibz.auction.rmi.dto.AuctionDelta;
+import it.unibz.auction.rmi.dto.AuctionItem;
+import it.unibz.auction.rmi.dto.AuctionState;
+import it.unibz.auction.rmi.dto.BidOutcome;
+import it.unibz.auction.rmi.exceptions.AuctionException;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.stream.Stream;
+
+/**
+ * Offerte accettate al secondo con e senza journal. Ogni thread chiama
+ * {@code placeBidCents} direttamente sul server (senza passare dalla rete) offrendo
+ * il minimo corrente; con il journal attivo la risposta arriva solo dopo il
+ * group commit che rende l'offerta durevole. Per misurare il journal senza
+ * {@code fsync} basta aggiungere {@code -Dauction.journal.fsync=false}.
+ * Non fa parte della suite di test:
+ * <pre>
+ * mvn test-compile
+ * java -Dauction.bids.ratePerSecond=1000000 -cp target/classes:target/test-classes it.unibz.auction.rmi.JournalThroughputBenchmark [millisPerRun]
+ * </pre>
+ */
+public final class JournalThroughputBenchmark {
+
+    private static final int[] THREAD_COUNTS = {1, 4, 16, 64};
+    private static final List<AuctionItem> ITEMS = List.of(AuctionItem.ofEuros("Bench", "Benchmark", 1.0, 0.01, 3600));
+
+    private JournalThroughputBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) : 1000;
+
+        // riscaldamento JIT
+        run(null, 8, 300);
+        withJournal(dir -> run(dir, 8, 300));
+
+        System.out.printf("fsync=%s%n", System.getProperty("auction.journal.fsync", "true"));
+        System.out.printf("%-8s %20s %20s %8s%n", "threads", "memoria (bid/s)", "journal (bid/s)", "ratio");
+        for (int threads : THREAD_COUNTS) {
+            double memory = run(null, threads, millis);
+            double durable = withJournal(dir -> run(dir, threads, millis));
+            System.out.printf("%-8d %20.0f %20.0f %7.2fx%n", threads, memory, durable, durable / memory);
+        }
+    }
+
+    private static double withJournal(Run run) throws Exception {
+        Path dir = Files.createTempDirectory("auction-journal-bench");
+        try {
+            return run.apply(dir);
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static double run(Path journalDir, int threads, long millis) throws Exception {
+        RMIAuctionServer server = new RMIAuctionServer(ITEMS, 1, journalDir);
+        server.start();
+        LongAdder accepted = new LongAdder();
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        long deadline = System.nanoTime() + millis * 1_000_000L + 50_000_000L;
+        try {
+            for (int i = 0; i < threads; i++) {
+                String bidder = "bidder" + i;
+                long session = server.registerClient(bidder, new NoopCallback());
+                workers[i] = new Thread(() -> {
+                    try {
+                        start.await();
+                        long count = 0;
+                        while (System.nanoTime() < deadline) {
+                            AuctionState state = server.getCurrentState();
+                            BidOutcome outcome = server.placeBidCents(session, 1, state.minimumRequiredCents());
+                            if (outcome.accepted()) {
+                                count++;
+                            }
+                        }
+                        accepted.add(count);
+                    } catch (InterruptedException | AuctionException ex) {
+                        throw new IllegalStateException(ex);
+                    }
+                });
+                workers[i].start();
+            }
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread worker : workers) {
+                worker.join();
+            }
+            double seconds = (System.nanoTime() - begin) / 1e9;
+            return accepted.sum() / seconds;
+        } finally {
+            server.shutdown();
+        }
+    }
+
+    @FunctionalInterface
+    private interface Run {
+        double apply(Path journalDir) throws Exception;
+    }
+
+    private static final class NoopCallback implements ClientCallback {
+        @Override
+        public void onSystemMessage(String message) {
+        }
+
+        @Override
+        public void onAuctionUpdate(AuctionState state) {
+        }
+
+        @Override
+        public void onAuctionDelta(AuctionDelta delta) {
+        }
+
+        @Override
+        public void onBidOutcome(BidOutcome outcome) {
+        }
+    }
+}
@@ -1,20 +1,35 @@
 package it.unibz.auction.rmi;
 
+import it.unibz.auction.rmi.dto.AuctionDelta;
 import it.unibz.auction.rmi.dto.AuctionItem;
 import it.unibz.auction.rmi.dto.AuctionState;
 import it.unibz.auction.rmi.dto.BidOutcome;
+import it.unibz.auction.rmi.dto.BidRequest;
+import it.unibz.auction.rmi.exceptions.AuctionException;
 import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 
 import java.net.ServerSocket;
+import java.nio.file.Files;
+import java.nio.file.Path;
 import java.rmi.registry.LocateRegistry;
 import java.rmi.registry.Registry;
 import java.rmi.server.UnicastRemoteObject;
+import java.time.temporal.ChronoUnit;
+import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicReference;
+import java.util.stream.Stream;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -28,8 +43,8 @@ class RMIAuctionServerIT {
     void setUp() throws Exception {
         registry = LocateRegistry.createRegistry(findFreePort());
         server = new RMIAuctionServer(List.of(
-                new AuctionItem("TestItem", "Descrizione", 100.0, 5.0, 10),
-                new AuctionItem("SecondItem", "Descrizione 2", 200.0, 10.0, 10)
+                AuctionItem.ofEuros("TestItem", "Descrizione", 100.0, 5.0, 10),
+                AuctionItem.ofEuros("SecondItem", "Descrizione 2", 200.0, 10.0, 10)
         ));
         registry.rebind("AuctionServiceTest", server);
         stub = (AuctionService) registry.lookup("AuctionServiceTest");
@@ -38,13 +53,6 @@ class RMIAuctionServerIT {
 
     @AfterEach
     void tearDown() throws Exception {
-        if (stub != null) {
-            try {
-                stub.unregisterClient("alice");
-                stub.unregisterClient("bob");
-            } catch (Exception ignored) {
-            }
-        }
         if (server != null) {
             server.shutdown();
         }
@@ -65,7 +73,7 @@ class RMIAuctionServerIT {
         AtomicReference<BidOutcome> lastOutcome = new AtomicReference<>();
 
         TestCallback callback = new TestCallback(updateLatch, outcomeLatch, lastState, lastOutcome);
-        stub.registerClient("alice", callback);
+        long aliceSession = stub.registerClient("alice", callback);
 
         assertTrue(updateLatch.await(2, TimeUnit.SECONDS), "Lo stato iniziale non è stato ricevuto");
         AuctionState initial = lastState.get();
@@ -73,7 +81,7 @@ class RMIAuctionServerIT {
         assertTrue(initial.active());
         double minimum = initial.currentPrice() + initial.minIncrement();
 
-        stub.submitBid("alice", minimum);
+        stub.submitBid(aliceSession, minimum);
 
         assertTrue(outcomeLatch.await(2, TimeUnit.SECONDS), "Il risultato dell'offerta non è stato ricevuto");
         BidOutcome outcome = lastOutcome.get();
@@ -88,6 +96,425 @@ class RMIAuctionServerIT {
         callback.close();
     }
 
+    @Test
+    void testAcceptedBidIsPushedAsDelta() throws Exception {
+        CountDownLatch updateLatch = new CountDownLatch(1);
+        AtomicReference<AuctionState> bobState = new AtomicReference<>();
+        TestCallback bob = new TestCallback(updateLatch, new CountDownLatch(1), bobState, new AtomicReference<>());
+        stub.registerClient("bob", bob);
+        assertTrue(updateLatch.await(2, TimeUnit.SECONDS), "Lo stato iniziale non è stato ricevuto");
+        AuctionState initial = bobState.get();
+        assertEquals("Descrizione", initial.itemDescription());
+
+        TestCallback alice = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                new AtomicReference<>(), new AtomicReference<>());
+        long aliceSession = stub.registerClient("alice", alice);
+        BidOutcome outcome = stub.placeBidCents(aliceSession, initial.lotId(), initial.minimumRequiredCents());
+        assertTrue(outcome.accepted());
+
+        assertTrue(bob.deltaLatch.await(2, TimeUnit.SECONDS), "La variazione non è stata ricevuta");
+        AuctionDelta delta = bob.lastDelta.get();
+        assertEquals(initial.version() + 1, delta.version());
+        assertEquals("alice", delta.topBidder());
+        // la variazione applicata allo stato locale coincide con lo stato completo del server
+        assertEquals(stub.getCurrentState(initial.lotId()), bobState.get());
+
+        assertNull(stub.getStateSince(initial.lotId(), delta.version()));
+        assertEquals(bobState.get(), stub.getStateSince(initial.lotId(), initial.version()));
+
+        alice.close();
+        bob.close();
+    }
+
+    @Test
+    void testSlowClientDoesNotStallOthers() throws Exception {
+        CountDownLatch release = new CountDownLatch(1);
+        SlowCallback slow = new SlowCallback(release);
+        stub.registerClient("bob", slow);
+
+        CountDownLatch updateLatch = new CountDownLatch(1);
+        CountDownLatch outcomeLatch = new CountDownLatch(1);
+        AtomicReference<AuctionState> lastState = new AtomicReference<>();
+        AtomicReference<BidOutcome> lastOutcome = new AtomicReference<>();
+        TestCallback callback = new TestCallback(updateLatch, outcomeLatch, lastState, lastOutcome);
+
+        long started = System.nanoTime();
+        long aliceSession = stub.registerClient("alice", callback);
+        assertTrue(updateLatch.await(2, TimeUnit.SECONDS), "Lo stato iniziale non è stato ricevuto");
+        AuctionState initial = lastState.get();
+        stub.submitBid(aliceSession, initial.currentPrice() + initial.minIncrement());
+        assertTrue(outcomeLatch.await(2, TimeUnit.SECONDS), "Il risultato dell'offerta non è stato ricevuto");
+        assertTrue(TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - started) < 2,
+                "Un client lento ha rallentato gli altri partecipanti");
+
+        release.countDown();
+        callback.close();
+        slow.close();
+    }
+
+    @Test
+    void testConcurrentLotsAcceptIndependentBids() throws Exception {
+        RMIAuctionServer multiLot = new RMIAuctionServer(List.of(
+                AuctionItem.ofEuros("LotA", "Primo lotto", 10.0, 1.0, 10),
+                AuctionItem.ofEuros("LotB", "Secondo lotto", 20.0, 2.0, 10),
+                AuctionItem.ofEuros("LotC", "In coda", 30.0, 3.0, 10)
+        ), 2);
+        try {
+            multiLot.start();
+            List<AuctionState> lots = multiLot.getActiveLots();
+            assertEquals(List.of("LotA", "LotB"), lots.stream().map(AuctionState::itemName).toList());
+
+            TestCallback callback = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                    new AtomicReference<>(), new AtomicReference<>());
+            long carolSession = multiLot.registerClient("carol", callback);
+            long lotB = lots.get(1).lotId();
+            multiLot.submitBid(carolSession, lotB, 25.0);
+
+            assertEquals("carol", multiLot.getCurrentState(lotB).topBidder());
+            assertEquals(25.0, multiLot.getCurrentState(lotB).currentPrice());
+            assertNull(multiLot.getCurrentState(lots.get(0).lotId()).topBidder());
+            callback.close();
+        } finally {
+            multiLot.shutdown();
+        }
+    }
+
+    @Test
+    void testBatchedBidsAreAppliedInOrder() throws Exception {
+        TestCallback callback = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                new AtomicReference<>(), new AtomicReference<>());
+        long aliceSession = stub.registerClient("alice", callback);
+        AuctionState initial = stub.getCurrentState();
+        long lotId = initial.lotId();
+
+        List<BidOutcome> outcomes = stub.submitBids(aliceSession, List.of(
+                BidRequest.ofEuros(lotId, initial.currentPrice()),
+                BidRequest.ofEuros(lotId, initial.currentPrice() + 5.0),
+                BidRequest.ofEuros(lotId, initial.currentPrice() + 7.0),
+                BidRequest.ofEuros(lotId, initial.currentPrice() + 12.0),
+                BidRequest.ofEuros(999, 1000.0)
+        ));
+
+        assertEquals(List.of(false, true, false, true, false),
+                outcomes.stream().map(BidOutcome::accepted).toList());
+        AuctionState state = stub.getCurrentState(lotId);
+        assertEquals(initial.currentPrice() + 12.0, state.currentPrice());
+        assertEquals("alice", state.topBidder());
+        callback.close();
+    }
+
+    @Test
+    void testMinimumBidIsComparedExactly() throws Exception {
+        // con i double 0.10 + 0.20 = 0.30000000000000004 e un'offerta di 0.30 veniva rifiutata
+        RMIAuctionServer cents = new RMIAuctionServer(List.of(
+                AuctionItem.ofEuros("Penny", "Prezzi in centesimi", 0.10, 0.20, 10)), 1);
+        try {
+            cents.start();
+            TestCallback callback = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                    new AtomicReference<>(), new AtomicReference<>());
+            long carolSession = cents.registerClient("carol", callback);
+
+            BidOutcome legacy = cents.placeBid(carolSession, 0.30);
+            assertTrue(legacy.accepted());
+            assertEquals(30, legacy.amountCents());
+            BidOutcome exact = cents.placeBidCents(carolSession, 50);
+            assertTrue(exact.accepted());
+            assertEquals(0.50, exact.stateSnapshot().currentPrice());
+            callback.close();
+        } finally {
+            cents.shutdown();
+        }
+    }
+
+    @Test
+    void testBidFloodIsThrottledPerClient() throws Exception {
+        TestCallback alice = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                new AtomicReference<>(), new AtomicReference<>());
+        long aliceSession = stub.registerClient("alice", alice);
+        TestCallback bob = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                new AtomicReference<>(), new AtomicReference<>());
+        long bobSession = stub.registerClient("bob", bob);
+
+        AuctionState state = stub.getCurrentState();
+        long underbid = state.minimumRequiredCents() - 1;
+        AuctionException throttled = null;
+        for (int i = 0; i < 200 && throttled == null; i++) {
+            try {
+                assertFalse(stub.placeBidCents(aliceSession, state.lotId(), underbid).accepted());
+            } catch (AuctionException ex) {
+                throttled = ex;
+            }
+        }
+        assertNotNull(throttled, "Le offerte di alice non sono state limitate");
+        // il limite è per client: bob offre normalmente
+        assertTrue(stub.placeBidCents(bobSession, state.lotId(), state.minimumRequiredCents()).accepted());
+
+        alice.close();
+        bob.close();
+    }
+
+    @Test
+    void testSessionHandleIdentifiesTheBidder() throws Exception {
+        TestCallback alice = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                new AtomicReference<>(), new AtomicReference<>());
+        long aliceSession = stub.registerClient("alice", alice);
+        AuctionState state = stub.getCurrentState();
+
+        // stesso slot, parte casuale diversa: l'handle non viene accettato
+        long forged = aliceSession ^ (1L << 40);
+        assertThrows(AuctionException.class, () -> stub.placeBidCents(forged, state.lotId(), state.minimumRequiredCents()));
+        BidOutcome outcome = stub.placeBidCents(aliceSession, state.lotId(), state.minimumRequiredCents());
+        assertEquals("alice", outcome.stateSnapshot().topBidder());
+
+        stub.unregisterClient(aliceSession);
+        TestCallback bob = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                new AtomicReference<>(), new AtomicReference<>());
+        long bobSession = stub.registerClient("bob", bob);
+        assertEquals((int) aliceSession, (int) bobSession, "Lo slot liberato non è stato riutilizzato");
+        assertThrows(AuctionException.class, () -> stub.renewLease(aliceSession));
+        stub.renewLease(bobSession);
+
+        alice.close();
+        bob.close();
+    }
+
+    @Test
+    void testRetriedRequestIdIsAppliedOnce() throws Exception {
+        TestCallback alice = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                new AtomicReference<>(), new AtomicReference<>());
+        long aliceSession = stub.registerClient("alice", alice);
+        AuctionState state = stub.getCurrentState();
+        long lotId = state.lotId();
+
+        BidOutcome first = stub.placeBidOnce(aliceSession, 1, lotId, state.minimumRequiredCents());
+        assertTrue(first.accepted());
+        AuctionState applied = stub.getCurrentState(lotId);
+        // la risposta persa viene ripetuta: stesso esito, nessuna seconda transizione
+        assertEquals(first, stub.placeBidOnce(aliceSession, 1, lotId, state.minimumRequiredCents()));
+        assertEquals(applied, stub.getCurrentState(lotId));
+
+        // più offerte in volo insieme, ognuna con il proprio id
+        long increment = state.minIncrementCents();
+        List<CompletableFuture<BidOutcome>> inFlight = new ArrayList<>();
+        try (ExecutorService pipeline = Executors.newVirtualThreadPerTaskExecutor()) {
+            for (int i = 2; i <= 6; i++) {
+                long requestId = i;
+                long amount = applied.currentPriceCents() + increment * i;
+                inFlight.add(CompletableFuture.supplyAsync(() -> {
+                    try {
+                        return stub.placeBidOnce(aliceSession, requestId, lotId, amount);
+                    } catch (Exception ex) {
+                        throw new CompletionException(ex);
+                    }
+                }, pipeline));
+            }
+        }
+        long highest = inFlight.stream().map(CompletableFuture::join)
+                .filter(BidOutcome::accepted)
+                .mapToLong(BidOutcome::amountCents)
+                .max().orElseThrow();
+        assertEquals(applied.currentPriceCents() + increment * 6, highest);
+        assertEquals(highest, stub.getCurrentState(lotId).currentPriceCents());
+
+        alice.close();
+    }
+
+    @Test
+    void testProxyBidsAreResolvedInOneStep() throws Exception {
+        TestCallback alice = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                new AtomicReference<>(), new AtomicReference<>());
+        long aliceSession = stub.registerClient("alice", alice);
+        TestCallback bob = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                new AtomicReference<>(), new AtomicReference<>());
+        long bobSession = stub.registerClient("bob", bob);
+        AuctionState initial = stub.getCurrentState();
+        long lotId = initial.lotId();
+
+        // primo massimo: il prezzo sale di un solo incremento
+        assertTrue(stub.placeMaxBid(bobSession, 1, lotId, 20_000).accepted());
+        AuctionState state = stub.getCurrentState(lotId);
+        assertEquals(10_500, state.currentPriceCents());
+        assertEquals("bob", state.topBidder());
+
+        // il massimo di alice è inferiore: bob rilancia nella stessa transizione
+        BidOutcome outbid = stub.placeMaxBid(aliceSession, 1, lotId, 15_000);
+        assertFalse(outbid.accepted());
+        assertEquals(15_500, outbid.stateSnapshot().currentPriceCents());
+        assertEquals("bob", outbid.stateSnapshot().topBidder());
+        assertEquals(state.version() + 1, outbid.stateSnapshot().version());
+
+        // un'offerta semplice sotto il massimo di bob viene superata allo stesso modo
+        assertFalse(stub.placeBidOnce(aliceSession, 2, lotId, 19_000).accepted());
+        assertEquals(19_500, stub.getCurrentState(lotId).currentPriceCents());
+
+        // bob alza il proprio massimo senza cambiare il prezzo pubblicato; il lotto 0 è risolto dal server
+        AuctionState before = stub.getCurrentState(lotId);
+        assertTrue(stub.placeMaxBid(bobSession, 2, 0, 30_000).accepted());
+        assertEquals(before, stub.getCurrentState(lotId));
+
+        BidOutcome winning = stub.placeBidOnce(aliceSession, 3, 0, 31_000);
+        assertTrue(winning.accepted());
+        assertEquals("alice", winning.stateSnapshot().topBidder());
+        assertEquals(31_000, winning.stateSnapshot().currentPriceCents());
+
+        alice.close();
+        bob.close();
+    }
+
+    @Test
+    void testExpiredLeasesAreEvictedWithOneDeparture() throws Exception {
+        TestCallback alice = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                new AtomicReference<>(), new AtomicReference<>());
+        long aliceSession = stub.registerClient("alice", alice);
+        TestCallback bob = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                new AtomicReference<>(), new AtomicReference<>());
+        stub.registerClient("bob", bob);
+        long cutoff = System.nanoTime();
+        TestCallback carol = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                new AtomicReference<>(), new AtomicReference<>());
+        long carolSession = stub.registerClient("carol", carol);
+        stub.renewLease(carolSession);
+
+        assertEquals(2, server.evictExpiredLeases(cutoff));
+        assertThrows(AuctionException.class, () -> stub.renewLease(aliceSession));
+        assertThrows(AuctionException.class, () -> stub.placeBidCents(aliceSession, 1, 1_000_000));
+
+        String departure;
+        do {
+            departure = carol.messages.poll(2, TimeUnit.SECONDS);
+            assertNotNull(departure, "Le disconnessioni non sono state annunciate");
+            assertFalse(departure.contains("si è disconnesso"), "Disconnessione annunciata singolarmente: " + departure);
+        } while (!departure.contains("disconnessi"));
+        assertTrue(departure.contains("alice") && departure.contains("bob"), departure);
+        assertFalse(departure.contains("carol"), departure);
+
+        stub.unregisterClient(carolSession);
+        alice.close();
+        bob.close();
+        carol.close();
+    }
+
+    @Test
+    void testJournalResumesOpenLotsAfterCrash(@TempDir Path journalDir, @TempDir Path crashDir) throws Exception {
+        List<AuctionItem> items = List.of(
+                AuctionItem.ofEuros("LotA", "Primo lotto", 10.0, 1.0, 60),
+                AuctionItem.ofEuros("LotB", "Secondo lotto", 20.0, 2.0, 60),
+                AuctionItem.ofEuros("LotC", "In coda", 30.0, 3.0, 60)
+        );
+        AuctionState before;
+        RMIAuctionServer first = new RMIAuctionServer(items, 2, journalDir);
+        try {
+            first.start();
+            TestCallback callback = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                    new AtomicReference<>(), new AtomicReference<>());
+            long carolSession = first.registerClient("carol", callback);
+            first.placeBid(carolSession, 2, 25.0);
+            before = first.placeBid(carolSession, 2, 30.0).stateSnapshot();
+            callback.close();
+            // i file su disco prima dell'arresto ordinato, che scriverebbe una fotografia
+            copyDirectory(journalDir, crashDir);
+        } finally {
+            first.shutdown();
+        }
+
+        RMIAuctionServer restarted = new RMIAuctionServer(items, 2, crashDir);
+        try {
+            restarted.start();
+            List<AuctionState> lots = restarted.getActiveLots();
+            assertEquals(List.of("LotA", "LotB"), lots.stream().map(AuctionState::itemName).toList());
+            AuctionState after = restarted.getCurrentState(2);
+            assertEquals("carol", after.topBidder());
+            assertEquals(30.0, after.currentPrice());
+            assertEquals(before.roundEndTime().truncatedTo(ChronoUnit.MILLIS), after.roundEndTime());
+        } finally {
+            restarted.shutdown();
+        }
+    }
+
+    @Test
+    void testSnapshotCompactsJournal(@TempDir Path journalDir, @TempDir Path crashDir) throws Exception {
+        List<AuctionItem> items = List.of(
+                AuctionItem.ofEuros("LotA", "Primo lotto", 10.0, 1.0, 60),
+                AuctionItem.ofEuros("LotB", "Secondo lotto", 20.0, 2.0, 60)
+        );
+        RMIAuctionServer first = new RMIAuctionServer(items, 1, journalDir);
+        try {
+            first.start();
+            TestCallback callback = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                    new AtomicReference<>(), new AtomicReference<>());
+            long carolSession = first.registerClient("carol", callback);
+            first.placeBid(carolSession, 1, 15.0);
+            first.writeSnapshot();
+            first.placeBid(carolSession, 1, 18.0);
+            callback.close();
+            copyDirectory(journalDir, crashDir);
+        } finally {
+            first.shutdown();
+        }
+
+        try (Stream<Path> files = Files.list(crashDir)) {
+            assertEquals(List.of("journal-000002.log", "snapshot-000001.bin"),
+                    files.map(file -> file.getFileName().toString()).sorted().toList());
+        }
+
+        RMIAuctionServer restarted = new RMIAuctionServer(items, 1, crashDir);
+        try {
+            restarted.start();
+            AuctionState after = restarted.getCurrentState(1);
+            assertEquals("carol", after.topBidder());
+            assertEquals(18.0, after.currentPrice());
+            assertEquals(List.of("LotA"), restarted.getActiveLots().stream().map(AuctionState::itemName).toList());
+        } finally {
+            restarted.shutdown();
+        }
+    }
+
+    @Test
+    void testJournalKeepsProxyMaximumsAfterCrash(@TempDir Path journalDir, @TempDir Path crashDir) throws Exception {
+        List<AuctionItem> items = List.of(AuctionItem.ofEuros("LotA", "Primo lotto", 10.0, 1.0, 60));
+        RMIAuctionServer first = new RMIAuctionServer(items, 1, journalDir);
+        try {
+            first.start();
+            TestCallback callback = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                    new AtomicReference<>(), new AtomicReference<>());
+            long bobSession = first.registerClient("bob", callback);
+            long aliceSession = first.registerClient("alice", callback);
+            assertTrue(first.placeMaxBid(bobSession, 1, 1, 5_000).accepted());
+            assertFalse(first.placeBidOnce(aliceSession, 1, 1, 2_000).accepted());
+            // il massimo finisce nella fotografia, il rialzo successivo solo nel journal
+            first.writeSnapshot();
+            assertTrue(first.placeMaxBid(bobSession, 2, 1, 8_000).accepted());
+            callback.close();
+            copyDirectory(journalDir, crashDir);
+        } finally {
+            first.shutdown();
+        }
+
+        RMIAuctionServer restarted = new RMIAuctionServer(items, 1, crashDir);
+        try {
+            restarted.start();
+            TestCallback callback = new TestCallback(new CountDownLatch(1), new CountDownLatch(1),
+                    new AtomicReference<>(), new AtomicReference<>());
+            long aliceSession = restarted.registerClient("alice", callback);
+            BidOutcome outbid = restarted.placeBidOnce(aliceSession, 1, 1, 7_000);
+            assertFalse(outbid.accepted());
+            assertEquals("bob", outbid.stateSnapshot().topBidder());
+            assertEquals(7_100, outbid.stateSnapshot().currentPriceCents());
+            assertTrue(restarted.placeBidOnce(aliceSession, 2, 1, 8_100).accepted());
+            callback.close();
+        } finally {
+            restarted.shutdown();
+        }
+    }
+
+    private static void copyDirectory(Path source, Path target) throws Exception {
+        try (Stream<Path> files = Files.list(source)) {
+            for (Path file : files.toList()) {
+                Files.copy(file, target.resolve(file.getFileName()));
+            }
+        }
+    }
+
     private static int findFreePort() throws Exception {
         try (ServerSocket socket = new ServerSocket(0)) {
             return socket.getLocalPort();
@@ -99,6 +526,9 @@ class RMIAuctionServerIT {
         private final CountDownLatch outcomeLatch;
         private final AtomicReference<AuctionState> stateRef;
         private final AtomicReference<BidOutcome> outcomeRef;
+        final CountDownLatch deltaLatch = new CountDownLatch(1);
+        final AtomicReference<AuctionDelta> lastDelta = new AtomicReference<>();
+        final BlockingQueue<String> messages = new LinkedBlockingQueue<>();
 
         protected TestCallback(CountDownLatch updateLatch,
                                CountDownLatch outcomeLatch,
@@ -113,7 +543,7 @@ class RMIAuctionServerIT {
 
         @Override
         public void onSystemMessage(String message) {
-            // ignorato nel test
+            messages.add(message);
         }
 
         @Override
@@ -122,6 +552,14 @@ class RMIAuctionServerIT {
             updateLatch.countDown();
         }
 
+        @Override
+        public void onAuctionDelta(AuctionDelta delta) {
+            stateRef.updateAndGet(state -> state != null && state.lotId() == delta.lotId()
+                    ? state.withDelta(delta) : state);
+            lastDelta.set(delta);
+            deltaLatch.countDown();
+        }
+
         @Override
         public void onBidOutcome(BidOutcome outcome) {
             outcomeRef.set(outcome);
@@ -132,6 +570,45 @@ class RMIAuctionServerIT {
             UnicastRemoteObject.unexportObject(this, true);
         }
     }
-}
 
+    private static class SlowCallback extends UnicastRemoteObject implements ClientCallback {
+        private final CountDownLatch release;
+
+        protected SlowCallback(CountDownLatch release) throws java.rmi.RemoteException {
+            super();
+            this.release = release;
+        }
+
+        @Override
+        public void onSystemMessage(String message) {
+            awaitRelease();
+        }
+
+        @Override
+        public void onAuctionUpdate(AuctionState state) {
+            awaitRelease();
+        }
+
+        @Override
+        public void onAuctionDelta(AuctionDelta delta) {
+            awaitRelease();
+        }
 
+        @Override
+        public void onBidOutcome(BidOutcome outcome) {
+            awaitRelease();
+        }
+
+        private void awaitRelease() {
+            try {
+                release.await(5, TimeUnit.SECONDS);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+        }
+
+        void close() throws java.rmi.RemoteException {
+            UnicastRemoteObject.unexportObject(this, true);
+        }
+    }
+}
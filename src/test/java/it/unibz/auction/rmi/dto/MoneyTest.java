@@ -0,0 +1,32 @@
+package it.unibz.auction.rmi.dto;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class MoneyTest {
+
+    @Test
+    void testParseAcceptsBothSeparators() {
+        assertEquals(1250, Money.parse("12.5"));
+        assertEquals(1250, Money.parse(" 12,50 "));
+        assertEquals(100, Money.parse("1.000"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("1.005"));
+        assertThrows(NumberFormatException.class, () -> Money.parse("abc"));
+    }
+
+    @Test
+    void testDoubleConversionRoundsToNearestCent() {
+        assertEquals(30, Money.toCents(0.1 + 0.2));
+        assertEquals(0.3, Money.toDouble(30));
+        assertThrows(IllegalArgumentException.class, () -> Money.toCents(Double.NaN));
+        assertThrows(IllegalArgumentException.class, () -> Money.toCents(Double.POSITIVE_INFINITY));
+    }
+
+    @Test
+    void testFormatIsLocaleIndependent() {
+        assertEquals("0.05", Money.format(5));
+        assertEquals("1234.50", Money.format(123_450));
+        assertEquals("-0.10", Money.format(-10));
+    }
+}
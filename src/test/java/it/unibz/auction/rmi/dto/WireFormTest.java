@@ -0,0 +1,88 @@
+package it.unibz.auction.rmi.dto;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class WireFormTest {
+
+    private static final Instant END = Instant.ofEpochMilli(1_700_000_000_123L);
+
+    @Test
+    void testRoundTripPreservesAllFields() throws Exception {
+        AuctionItem item = new AuctionItem("Vaso", "Ceramica àèì", 50_000, 1_000, 90);
+        AuctionState state = new AuctionState(7, 3, "Vaso", "Ceramica àèì", 51_000, 1_000, "bob", END, true);
+        BidOutcome outcome = new BidOutcome(false, 100, 52_000, "Offerta troppo bassa", state);
+        AuctionState idle = new AuctionState(0, 0, null, null, 0, 0, null, null, false);
+        AuctionDelta delta = new AuctionDelta(7, 4, 52_000, "carol", END);
+
+        assertEquals(item, roundTrip(item));
+        assertEquals(state, roundTrip(state));
+        assertEquals(outcome, roundTrip(outcome));
+        assertEquals(idle, roundTrip(idle));
+        assertEquals(delta, roundTrip(delta));
+    }
+
+    @Test
+    void testDescriptionIsSentOncePerRecipient() throws Exception {
+        AuctionState state = new AuctionState(4_242, 1, "Quadro", "Olio su tela, ".repeat(20), 100, 10, null, END, true);
+        Set<Long> known = new HashSet<>();
+
+        byte[] first = encode(state, known);
+        byte[] second = encode(state, known);
+
+        assertTrue(second.length < first.length - 200, first.length + " -> " + second.length);
+        AuctionState received = (AuctionState) decode(first);
+        assertEquals(state, received);
+        // la descrizione omessa viene ricomposta dallo stato già ricevuto nella sessione
+        AuctionState compact = (AuctionState) decode(second);
+        assertNull(compact.itemDescription());
+        assertEquals(state, compact.withDescriptionOf(received));
+    }
+
+    @Test
+    void testCachedEncodingHonoursRecipientContext() throws Exception {
+        AuctionState shared = new AuctionState(4_243, 2, "Lampada", "Ottone, anni '50", 300, 10, "ann", END, true);
+
+        byte[] full = encode(shared, null);
+        byte[] compact = encode(shared, new HashSet<>(Set.of(4_243L)));
+
+        // la stessa istanza è servita dalla cache in entrambe le varianti
+        assertArrayEquals(full, encode(shared, null));
+        assertArrayEquals(compact, encode(shared, new HashSet<>(Set.of(4_243L))));
+        assertTrue(compact.length < full.length);
+        assertEquals(shared, decode(full));
+    }
+
+    private static Object roundTrip(Object value) throws Exception {
+        return decode(encode(value, null));
+    }
+
+    private static byte[] encode(Object value, Set<Long> known) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        if (known != null) {
+            ItemCatalog.enterRecipient(known);
+        }
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } finally {
+            ItemCatalog.exitRecipient();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object decode(byte[] bytes) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+}
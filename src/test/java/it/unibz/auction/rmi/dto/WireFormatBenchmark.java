@@ -0,0 +1,109 @@
+package it.unibz.auction.rmi.dto;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.Serializable;
+import java.time.Instant;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.function.Supplier;
+
+/**
+ * Dimensione e tempi di codifica/decodifica dei DTO nel formato compatto,
+ * confrontati con la serializzazione standard dei record (stessi campi, senza
+ * {@code writeReplace}). Ogni messaggio usa uno stream nuovo, come una chiamata
+ * RMI, quindi i descrittori di classe sono inclusi nella dimensione. Le righe
+ * "compatto" codificano ogni volta un'istanza nuova, le righe "in cache" la
+ * stessa istanza, come fa il server per tutti i destinatari di una versione;
+ * "ripetuto" misura un aggiornamento a un client che conosce già la
+ * descrizione dell'articolo. Non fa parte della suite di test:
+ * <pre>
+ * mvn test-compile
+ * java -cp target/classes:target/test-classes it.unibz.auction.rmi.dto.WireFormatBenchmark [iterations]
+ * </pre>
+ */
+public final class WireFormatBenchmark {
+
+    private static final String DESCRIPTION = "Vaso in ceramica dipinto a mano, fine Ottocento, lievi segni d'uso sulla base";
+    private static final Instant END = Instant.now().plusSeconds(60);
+
+    private WireFormatBenchmark() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int iterations = args.length > 0 ? Integer.parseInt(args[0]) : 200_000;
+
+        AuctionState state = new AuctionState(42, 7, "Vaso", DESCRIPTION, 123_450, 500, "alice", END, true);
+        BidOutcome outcome = new BidOutcome(true, 123_450, 122_950, "Offerta accettata", state);
+        LegacyState legacyState = new LegacyState(42, "Vaso", DESCRIPTION, 1234.5, 5.0, "alice", END, true);
+        LegacyOutcome legacyOutcome = new LegacyOutcome(true, 1234.5, 1229.5, "Offerta accettata", legacyState);
+
+        System.out.printf("%-28s %8s %14s %14s%n", "formato", "byte", "encode (ns)", "decode (ns)");
+        measure("AuctionState standard", () -> legacyState, null, iterations);
+        measure("AuctionState compatto", () -> copy(state), null, iterations);
+        measure("AuctionState in cache", () -> state, null, iterations);
+        measure("AuctionState ripetuto", () -> state, Set.of(42L), iterations);
+        measure("AuctionDelta compatto", () -> new AuctionDelta(42, 8, 123_950, "alice", END), null, iterations);
+        measure("BidOutcome standard", () -> legacyOutcome, null, iterations);
+        measure("BidOutcome compatto", () -> new BidOutcome(true, 123_450, 122_950, "Offerta accettata", copy(state)),
+                null, iterations);
+        measure("BidOutcome in cache", () -> outcome, null, iterations);
+    }
+
+    private static AuctionState copy(AuctionState s) {
+        return new AuctionState(s.lotId(), s.version(), s.itemName(), s.itemDescription(), s.currentPriceCents(),
+                s.minIncrementCents(), s.topBidder(), s.roundEndTime(), s.active());
+    }
+
+    private static void measure(String label, Supplier<Object> value, Set<Long> known, int iterations)
+            throws Exception {
+        byte[] encoded = encode(value.get(), known);
+        // riscaldamento JIT
+        for (int i = 0; i < iterations / 4; i++) {
+            decode(encode(value.get(), known));
+        }
+        long begin = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            encode(value.get(), known);
+        }
+        double encodeNanos = (System.nanoTime() - begin) / (double) iterations;
+        begin = System.nanoTime();
+        for (int i = 0; i < iterations; i++) {
+            decode(encoded);
+        }
+        double decodeNanos = (System.nanoTime() - begin) / (double) iterations;
+        System.out.printf("%-28s %8d %14.0f %14.0f%n", label, encoded.length, encodeNanos, decodeNanos);
+    }
+
+    private static byte[] encode(Object value, Set<Long> known) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+        if (known != null) {
+            // il destinatario conosce già la descrizione: il set non deve crescere tra le iterazioni
+            ItemCatalog.enterRecipient(new HashSet<>(known));
+        }
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(value);
+        } finally {
+            ItemCatalog.exitRecipient();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static Object decode(byte[] bytes) throws Exception {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes))) {
+            return in.readObject();
+        }
+    }
+
+    private record LegacyState(long lotId, String itemName, String itemDescription, double currentPrice,
+                               double minIncrement, String topBidder, Instant roundEndTime, boolean active)
+            implements Serializable {
+    }
+
+    private record LegacyOutcome(boolean accepted, double amount, double minimumRequired, String message,
+                                 LegacyState stateSnapshot) implements Serializable {
+    }
+}